@@ -5,6 +5,7 @@ import dk.mosberg.client.input.MagicKeyBindings;
 import dk.mosberg.client.network.ClientNetworkHandler;
 import dk.mosberg.client.network.StaffCastingHandler;
 import dk.mosberg.client.render.SpellProjectileEntityRenderer;
+import dk.mosberg.client.render.SpellVfx;
 import dk.mosberg.client.tooltip.ItemTooltips;
 import dk.mosberg.config.ClientConfig;
 import dk.mosberg.entity.MAMEntities;
@@ -34,6 +35,9 @@ public class MAMClient implements ClientModInitializer {
 		EntityRendererRegistry.register(MAMEntities.SPELL_PROJECTILE,
 				context -> new SpellProjectileEntityRenderer(context));
 
+		// Register client-side spell particles
+		SpellVfx.register();
+
 		// Register HUD overlay
 		ManaHudOverlay.register();
 
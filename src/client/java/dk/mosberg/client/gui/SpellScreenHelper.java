@@ -1,8 +1,8 @@
 package dk.mosberg.client.gui;
 
 import java.util.List;
+import dk.mosberg.client.network.ClientSpells;
 import dk.mosberg.spell.Spell;
-import dk.mosberg.spell.SpellRegistry;
 import dk.mosberg.spell.SpellSchool;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.api.Environment;
@@ -24,7 +24,7 @@ public class SpellScreenHelper {
      * Opens the spell selection screen for a given school and max tier.
      */
     public static void openSpellSelection(SpellSchool school, int maxTier) {
-        List<Spell> spells = SpellRegistry.getSpellsBySchoolAndMaxTier(school, maxTier);
+        List<Spell> spells = ClientSpells.getSpellsBySchoolAndMaxTier(school, maxTier);
         MinecraftClient.getInstance().setScreen(new SpellSelectionScreen(spells));
     }
 
@@ -32,7 +32,7 @@ public class SpellScreenHelper {
      * Opens the spell selection screen with all spells up to a max tier.
      */
     public static void openSpellSelection(int maxTier) {
-        List<Spell> spells = SpellRegistry.getSpellsByMaxTier(maxTier);
+        List<Spell> spells = ClientSpells.getSpellsByMaxTier(maxTier);
         MinecraftClient.getInstance().setScreen(new SpellSelectionScreen(spells));
     }
 
@@ -40,7 +40,7 @@ public class SpellScreenHelper {
      * Opens the spell selection screen with all available spells.
      */
     public static void openSpellSelection() {
-        List<Spell> spells = SpellRegistry.getAllSpells().stream().toList();
+        List<Spell> spells = ClientSpells.getAllSpells();
         MinecraftClient.getInstance().setScreen(new SpellSelectionScreen(spells));
     }
 }
@@ -14,6 +14,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import dk.mosberg.MAM;
+import dk.mosberg.client.network.ClientSpellIds;
 import dk.mosberg.network.SelectSpellPayload;
 import dk.mosberg.spell.Spell;
 import dk.mosberg.spell.SpellSchool;
@@ -224,7 +225,11 @@ public class SpellSelectionScreen extends Screen {
     }
 
     private void selectSpell(Spell spell) {
-        ClientPlayNetworking.send(new SelectSpellPayload(spell.getId()));
+        int rawId = ClientSpellIds.getRawId(spell.getId());
+        if (rawId < 0) {
+            return; // not known to the server
+        }
+        ClientPlayNetworking.send(new SelectSpellPayload(rawId));
 
         if (this.client != null && this.client.player != null) {
             this.client.player.sendMessage(Text.literal("✓ Selected: " + spell.getName()), true);
@@ -3,9 +3,9 @@ package dk.mosberg.client.input;
 import java.util.List;
 import dk.mosberg.MAM;
 import dk.mosberg.client.gui.SpellSelectionScreen;
+import dk.mosberg.client.network.ClientSpells;
 import dk.mosberg.item.SpellbookItem;
 import dk.mosberg.spell.Spell;
-import dk.mosberg.spell.SpellRegistry;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.api.Environment;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
@@ -116,7 +116,7 @@ public class MagicKeyBindings {
         }
 
         // Get spells with cached lookup
-        List<Spell> spells = SpellRegistry.getSpellsByMaxTier(spellbookTier);
+        List<Spell> spells = ClientSpells.getSpellsByMaxTier(spellbookTier);
         if (spells.isEmpty()) {
             player.sendMessage(Text.translatable("message.mam.no_spells"), true);
             return;
@@ -1,7 +1,9 @@
 package dk.mosberg.client.network;
 
+import dk.mosberg.mana.ManaPool;
 import dk.mosberg.mana.ManaPoolType;
 import dk.mosberg.mana.PlayerManaData;
+import dk.mosberg.network.ManaSyncPayload;
 
 /**
  * Client-side storage for synced mana data.
@@ -15,19 +17,29 @@ import dk.mosberg.mana.PlayerManaData;
 public class ClientManaData {
     private static final PlayerManaData clientMana = new PlayerManaData();
 
-    public static void updateFromServer(float personalMana, float personalMax, float auraMana,
-            float auraMax, float reserveMana, float reserveMax, String activePriority,
-            float personalRegen, float auraRegen, float reserveRegen) {
-        clientMana.updatePool(ManaPoolType.PERSONAL, Math.round(personalMax), personalMana,
-                personalRegen);
-        clientMana.updatePool(ManaPoolType.AURA, Math.round(auraMax), auraMana, auraRegen);
-        clientMana.updatePool(ManaPoolType.RESERVE, Math.round(reserveMax), reserveMana,
-                reserveRegen);
+    /**
+     * Applies a sync; values the payload leaves out keep what the last one said.
+     */
+    public static void updateFromServer(ManaSyncPayload payload) {
+        for (ManaPoolType type : ManaPoolType.values()) {
+            int i = type.ordinal();
+            ManaPool pool = clientMana.getPool(type);
+            int capacity = payload.has(ManaSyncPayload.capacityBit(i)) ? payload.capacity()[i]
+                    : pool.getMaxCapacity();
+            float mana = payload.has(ManaSyncPayload.manaBit(i))
+                    ? ManaSyncPayload.dequantizeMana(payload.mana()[i], capacity)
+                    : pool.getCurrentMana();
+            float regen = payload.has(ManaSyncPayload.regenBit(i))
+                    ? ManaSyncPayload.dequantizeRegen(payload.regen()[i])
+                    : pool.getRegenRate();
+            clientMana.updatePool(type, capacity, mana, regen);
+        }
 
-        try {
-            clientMana.setActivePriority(ManaPoolType.valueOf(activePriority));
-        } catch (IllegalArgumentException e) {
-            clientMana.setActivePriority(ManaPoolType.PERSONAL);
+        if (payload.has(ManaSyncPayload.PRIORITY_BIT)) {
+            ManaPoolType[] types = ManaPoolType.values();
+            clientMana.setActivePriority(payload.priority() < types.length
+                    ? types[payload.priority()]
+                    : ManaPoolType.PERSONAL);
         }
     }
 
@@ -1,16 +1,30 @@
 package dk.mosberg.client.network;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import dk.mosberg.MAM;
 import dk.mosberg.client.gui.SpellScreenHelper;
+import dk.mosberg.client.render.SpellVfx;
 import dk.mosberg.network.ManaSyncPayload;
 import dk.mosberg.network.OpenSpellBookPayload;
 import dk.mosberg.network.SelectedCooldownPayload;
+import dk.mosberg.network.SpellEffectPayload;
+import dk.mosberg.network.SpellIdTablePayload;
+import dk.mosberg.network.SpellManifestPayload;
+import dk.mosberg.network.SpellSyncPayload;
+import dk.mosberg.network.SpellSyncRequestPayload;
+import dk.mosberg.spell.Spell;
+import dk.mosberg.spell.SpellRegistry;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.util.Util;
 
 /**
  * Handles client-side network packet reception.
  *
- * TODO: Add disconnect handling (clear cached data on disconnect) TODO: Implement packet validation
+ * TODO: Implement packet validation
  * (checksums, version checks) TODO: Add packet re-ordering for out-of-order delivery TODO:
  * Implement bandwidth optimization (compression, delta encoding) TODO: Add packet history for
  * debugging/logs TODO: Implement custom packet handlers registration system TODO: Add telemetry for
@@ -23,10 +37,7 @@ public class ClientNetworkHandler {
         // Handle mana sync from server
         ClientPlayNetworking.registerGlobalReceiver(ManaSyncPayload.ID, (payload, context) -> {
             context.client().execute(() -> {
-                ClientManaData.updateFromServer(payload.personalMana(), payload.personalMax(),
-                        payload.auraMana(), payload.auraMax(), payload.reserveMana(),
-                        payload.reserveMax(), payload.activePriority(), payload.personalRegen(),
-                        payload.auraRegen(), payload.reserveRegen());
+                ClientManaData.updateFromServer(payload);
             });
         });
 
@@ -34,7 +45,7 @@ public class ClientNetworkHandler {
         ClientPlayNetworking.registerGlobalReceiver(SelectedCooldownPayload.ID,
                 (payload, context) -> {
                     context.client().execute(() -> {
-                        ClientSelectedCooldown.update(payload.spellId(),
+                        ClientSelectedCooldown.update(ClientSpellIds.getSpellId(payload.spellId()),
                                 payload.remainingSeconds());
                     });
                 });
@@ -46,6 +57,91 @@ public class ClientNetworkHandler {
             });
         });
 
+        // Handle spell raw id table (join and data pack reload)
+        ClientPlayNetworking.registerGlobalReceiver(SpellIdTablePayload.ID, (payload, context) -> {
+            context.client().execute(() -> {
+                ClientSpellIds.update(payload.spellIds());
+            });
+        });
+
+        // Spell sync: answer the join manifest from the disk cache, then take what the server sends
+        ClientPlayNetworking.registerGlobalReceiver(SpellManifestPayload.ID,
+                (payload, context) -> {
+                    context.client().execute(() -> {
+                        onSpellManifest(context.client(), payload.hash());
+                    });
+                });
+        ClientPlayNetworking.registerGlobalReceiver(SpellSyncPayload.ID, (payload, context) -> {
+            context.client().execute(() -> {
+                onSpellSync(context.client(), payload);
+            });
+        });
+
+        // Spell visuals: one packet per cast, particles built here
+        ClientPlayNetworking.registerGlobalReceiver(SpellEffectPayload.ID, (payload, context) -> {
+            context.client().execute(() -> {
+                SpellVfx.spawn(context.client(), payload);
+            });
+        });
+
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> {
+            client.execute(() -> {
+                ClientSpellIds.clear();
+                ClientSpells.clear();
+            });
+        });
+
         MAM.LOGGER.info("Registered client network handlers");
     }
+
+    private static void onSpellManifest(MinecraftClient client, long hash) {
+        if (ClientSpells.getHash() != hash) {
+            ClientSpellCache.currentServerKey(client).flatMap(ClientSpellCache::read)
+                    .ifPresent(cached -> {
+                        List<Spell> spells = SpellRegistry.decompressSpells(cached.spells());
+                        if (!spells.isEmpty()) {
+                            ClientSpells.replace(cached.hash(), spells);
+                        }
+                    });
+        }
+
+        // Whatever we hold now is our base: the server sends nothing, a delta or the full set
+        ClientPlayNetworking.send(new SpellSyncRequestPayload(ClientSpells.getHash()));
+        MAM.LOGGER.debug("Spell manifest {}: cached {}", Long.toHexString(hash),
+                ClientSpells.getHash() == hash ? "hit" : "miss");
+    }
+
+    private static void onSpellSync(MinecraftClient client, SpellSyncPayload payload) {
+        if (payload.isDelta() && payload.baseHash() != ClientSpells.getHash()) {
+            // We no longer hold the set this delta is based on; start over from scratch
+            ClientPlayNetworking.send(new SpellSyncRequestPayload(0L));
+            return;
+        }
+
+        List<Spell> spells = SpellRegistry.decompressSpells(payload.spells());
+        if (payload.isDelta()) {
+            ClientSpells.applyDelta(payload.hash(), spells, payload.removed());
+        } else {
+            ClientSpells.replace(payload.hash(), spells);
+        }
+        MAM.LOGGER.debug("Synced {} spells from server ({} {}, {} bytes)",
+                ClientSpells.getAllSpells().size(), payload.isDelta() ? "delta" : "full",
+                spells.size(), payload.spells().length);
+
+        // Cache the full set for the next connection; a delta is re-compressed off-thread
+        Optional<String> serverKey = ClientSpellCache.currentServerKey(client);
+        if (serverKey.isEmpty()) {
+            return;
+        }
+        long hash = payload.hash();
+        List<Spell> current = ClientSpells.getAllSpells();
+        byte[] full = payload.isDelta() ? null : payload.spells();
+        CompletableFuture.runAsync(() -> {
+            byte[] data = full != null ? full
+                    : SpellRegistry.compressSpells(current).orElse(null);
+            if (data != null) {
+                ClientSpellCache.write(serverKey.get(), new ClientSpellCache.Entry(hash, data));
+            }
+        }, Util.getIoWorkerExecutor());
+    }
 }
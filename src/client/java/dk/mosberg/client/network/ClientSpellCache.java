@@ -0,0 +1,102 @@
+package dk.mosberg.client.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import com.google.common.hash.Hashing;
+import dk.mosberg.MAM;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.ServerInfo;
+
+/**
+ * On-disk cache of the last spell set each server sent, so reconnecting to a server whose spells
+ * have not changed transfers nothing.
+ *
+ * <p>
+ * One file per server under {@code mam/spell_cache}, named by a hash of the server address (or the
+ * world name in singleplayer). The file holds the set hash followed by the compressed spells
+ * exactly as {@link dk.mosberg.spell.SpellRegistry#compressSpells} produced them.
+ */
+public class ClientSpellCache {
+    private static final Path CACHE_DIR =
+            FabricLoader.getInstance().getGameDir().resolve(MAM.MOD_ID).resolve("spell_cache");
+    private static final int MAGIC = 0x4D414D43; // "MAMC"
+    private static final int MAX_CACHE_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * A cached spell set: its hash and compressed spells.
+     */
+    public record Entry(long hash, byte[] spells) {
+    }
+
+    /**
+     * Key for the server the client is connected to, or empty if there is none.
+     */
+    public static Optional<String> currentServerKey(MinecraftClient client) {
+        ServerInfo entry = client.getCurrentServerEntry();
+        String key;
+        if (entry != null) {
+            key = "server:" + entry.address;
+        } else if (client.getServer() != null) {
+            key = "local:" + client.getServer().getSaveProperties().getLevelName();
+        } else {
+            return Optional.empty();
+        }
+        return Optional.of(
+                Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).toString());
+    }
+
+    public static Optional<Entry> read(String serverKey) {
+        Path file = CACHE_DIR.resolve(serverKey + ".bin");
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (InputStream in = Files.newInputStream(file);
+                DataInputStream data = new DataInputStream(in)) {
+            if (data.readInt() != MAGIC) {
+                return Optional.empty();
+            }
+            long hash = data.readLong();
+            int length = data.readInt();
+            if (length < 0 || length > MAX_CACHE_BYTES) {
+                return Optional.empty();
+            }
+            byte[] spells = new byte[length];
+            data.readFully(spells);
+            return Optional.of(new Entry(hash, spells));
+        } catch (IOException e) {
+            MAM.LOGGER.warn("Ignoring unreadable spell cache {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Replaces the cached set for a server. Written next to the target and moved into place.
+     */
+    public static void write(String serverKey, Entry entry) {
+        Path file = CACHE_DIR.resolve(serverKey + ".bin");
+        Path temp = CACHE_DIR.resolve(serverKey + ".bin.tmp");
+        try {
+            Files.createDirectories(CACHE_DIR);
+            try (OutputStream out = Files.newOutputStream(temp);
+                    DataOutputStream data = new DataOutputStream(out)) {
+                data.writeInt(MAGIC);
+                data.writeLong(entry.hash());
+                data.writeInt(entry.spells().length);
+                data.write(entry.spells());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            MAM.LOGGER.warn("Failed to write spell cache {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package dk.mosberg.client.network;
+
+import java.util.List;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.util.Identifier;
+
+/**
+ * Client-side copy of the server's spell raw id table. Spell payloads carry raw ids; this maps
+ * them back to spell ids and back again. Replaced whenever the server sends a new table and
+ * cleared on disconnect.
+ */
+public class ClientSpellIds {
+    private static List<Identifier> table = List.of();
+    private static Object2IntMap<Identifier> rawIds = emptyRawIds();
+
+    public static void update(List<Identifier> spellIds) {
+        Object2IntOpenHashMap<Identifier> ids = new Object2IntOpenHashMap<>(spellIds.size());
+        ids.defaultReturnValue(-1);
+        for (int i = 0; i < spellIds.size(); i++) {
+            ids.put(spellIds.get(i), i);
+        }
+        table = List.copyOf(spellIds);
+        rawIds = ids;
+    }
+
+    public static void clear() {
+        table = List.of();
+        rawIds = emptyRawIds();
+    }
+
+    /**
+     * Raw id for a spell id, or -1 if the server has not assigned one.
+     */
+    public static int getRawId(Identifier spellId) {
+        return rawIds.getInt(spellId);
+    }
+
+    /**
+     * Spell id for a raw id, or null if it is not in the current table.
+     */
+    public static Identifier getSpellId(int rawId) {
+        return rawId >= 0 && rawId < table.size() ? table.get(rawId) : null;
+    }
+
+    private static Object2IntMap<Identifier> emptyRawIds() {
+        Object2IntOpenHashMap<Identifier> ids = new Object2IntOpenHashMap<>();
+        ids.defaultReturnValue(-1);
+        return ids;
+    }
+}
@@ -0,0 +1,94 @@
+package dk.mosberg.client.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import dk.mosberg.spell.Spell;
+import dk.mosberg.spell.SpellSchool;
+import net.minecraft.util.Identifier;
+
+/**
+ * Client-side copy of the server's resolved spell set, filled by spell sync (see
+ * {@link ClientNetworkHandler}). The spell screens read from here rather than from the local
+ * {@link dk.mosberg.spell.SpellRegistry}, which only holds what this client loaded itself. Cleared
+ * on disconnect.
+ */
+public class ClientSpells {
+    private static final Comparator<Spell> BY_TIER = Comparator.comparingInt(Spell::getTier)
+            .thenComparing(spell -> spell.getId().toString());
+    private static final Comparator<Spell> BY_TIER_THEN_SCHOOL = Comparator
+            .comparingInt(Spell::getTier).thenComparing(spell -> spell.getSchool().toString())
+            .thenComparing(spell -> spell.getId().toString());
+
+    private static Map<Identifier, Spell> spells = Map.of();
+    private static List<Spell> sorted = List.of();
+    private static long hash = 0L;
+
+    /**
+     * Replaces the whole set.
+     */
+    public static void replace(long setHash, Collection<Spell> synced) {
+        Map<Identifier, Spell> next = new LinkedHashMap<>();
+        for (Spell spell : synced) {
+            next.put(spell.getId(), spell);
+        }
+        publish(setHash, next);
+    }
+
+    /**
+     * Applies a delta on top of the current set.
+     */
+    public static void applyDelta(long setHash, Collection<Spell> changed,
+            Collection<Identifier> removed) {
+        Map<Identifier, Spell> next = new LinkedHashMap<>(spells);
+        removed.forEach(next::remove);
+        for (Spell spell : changed) {
+            next.put(spell.getId(), spell);
+        }
+        publish(setHash, next);
+    }
+
+    public static void clear() {
+        spells = Map.of();
+        sorted = List.of();
+        hash = 0L;
+    }
+
+    /**
+     * Hash of the current set as announced by the server, or 0 if nothing is synced.
+     */
+    public static long getHash() {
+        return hash;
+    }
+
+    public static Optional<Spell> getSpell(Identifier id) {
+        return Optional.ofNullable(spells.get(id));
+    }
+
+    public static List<Spell> getAllSpells() {
+        return sorted;
+    }
+
+    public static List<Spell> getSpellsByMaxTier(int maxTier) {
+        return sorted.stream().filter(spell -> spell.getTier() <= maxTier)
+                .sorted(BY_TIER_THEN_SCHOOL).toList();
+    }
+
+    public static List<Spell> getSpellsBySchoolAndMaxTier(SpellSchool school, int maxTier) {
+        return sorted.stream()
+                .filter(spell -> spell.getSchool() == school && spell.getTier() <= maxTier)
+                .toList();
+    }
+
+    private static void publish(long setHash, Map<Identifier, Spell> next) {
+        List<Spell> list = new ArrayList<>(next.values());
+        list.sort(BY_TIER);
+        spells = Map.copyOf(next);
+        sorted = List.copyOf(list);
+        hash = setHash;
+    }
+}
@@ -35,8 +35,9 @@ public class StaffCastingHandler {
         }
 
         Identifier spellId = SpellbookItem.getSelectedSpell(stack);
-        if (spellId != null) {
-            ClientPlayNetworking.send(new CastSpellPayload(spellId));
+        int rawId = spellId != null ? ClientSpellIds.getRawId(spellId) : -1;
+        if (rawId >= 0) {
+            ClientPlayNetworking.send(new CastSpellPayload(rawId));
         }
         return ActionResult.PASS;
     };
@@ -0,0 +1,200 @@
+package dk.mosberg.client.render;
+
+import java.util.Optional;
+import dk.mosberg.client.network.ClientSpellIds;
+import dk.mosberg.client.network.ClientSpells;
+import dk.mosberg.config.ClientConfig;
+import dk.mosberg.entity.SpellProjectileEntity;
+import dk.mosberg.network.SpellEffectPayload;
+import dk.mosberg.spell.Spell;
+import dk.mosberg.spell.SpellEffectBudget;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.minecraft.block.Blocks;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.particle.ParticleManager;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.entity.Entity;
+import net.minecraft.particle.BlockStateParticleEffect;
+import net.minecraft.particle.DustParticleEffect;
+import net.minecraft.particle.ParticleEffect;
+import net.minecraft.particle.ParticleTypes;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.math.random.Random;
+
+/**
+ * Builds spell particles on the client.
+ *
+ * <p>
+ * Cast visuals arrive as one {@link SpellEffectPayload} each and are laid out here from the spell's
+ * {@link Spell.VfxData}: its particle type (falling back to the old per-kind particle when the
+ * spell has none or it needs data we cannot derive) and its particle count as the density. The
+ * payload's seed drives all jitter, so every client sees the same shape. Projectile trails are
+ * spawned every client tick from the projectile's tracked school and tier.
+ *
+ * <p>
+ * Counts are thinned with distance from the player ({@link SpellEffectBudget#lodCount}) and all
+ * spell particles share {@link ClientConfig#spellParticleBudget} per tick, so a sky full of
+ * projectiles degrades to sparser trails instead of stalling the particle engine.
+ */
+@Environment(EnvType.CLIENT)
+public class SpellVfx {
+    private static final int RING_POINTS = 20;
+    private static final int RITUAL_POINTS = 36;
+
+    private static SpellEffectBudget.Allowance allowance = newAllowance();
+
+    public static void register() {
+        ClientTickEvents.END_WORLD_TICK.register(SpellVfx::spawnTrails);
+    }
+
+    public static void spawn(MinecraftClient client, SpellEffectPayload payload) {
+        if (client.world == null || client.player == null) {
+            return;
+        }
+        Optional<Spell> spell = Optional.ofNullable(ClientSpellIds.getSpellId(payload.spellId()))
+                .flatMap(ClientSpells::getSpell);
+        Optional<Spell.VfxData> vfx = spell.flatMap(Spell::getVfxOptional);
+        ParticleEffect effect = vfx.flatMap(SpellVfx::particleFor)
+                .orElseGet(() -> defaultParticle(payload.kind()));
+        int density = vfx.map(Spell.VfxData::particleCount).orElse(0);
+
+        ParticleManager particles = client.particleManager;
+        Random random = Random.create(payload.seed());
+        Vec3d origin = payload.origin();
+        double distance = distanceTo(client.player.getEyePos(), payload);
+        switch (payload.kind()) {
+            case RING -> ring(particles, effect, origin, payload.radius(),
+                    budgeted(Math.max(RING_POINTS, density), distance), random);
+            case RITUAL -> ring(particles, effect, origin, payload.radius(),
+                    budgeted(Math.max(RITUAL_POINTS, density), distance), random);
+            case BEAM -> {
+                double spacing = payload.direction().length();
+                if (spacing > 0) {
+                    int points = budgeted(MathHelper.ceil(payload.radius() / spacing), distance);
+                    beam(particles, effect, origin, payload.direction().multiply(1 / spacing),
+                            payload.radius(), points, random);
+                }
+            }
+            case BURST -> burst(particles, effect, origin, payload.radius(),
+                    budgeted(Math.max(1, density), distance), random);
+        }
+    }
+
+    private static int budgeted(int count, double distance) {
+        return allowance.take(SpellEffectBudget.lodCount(count, distance));
+    }
+
+    /**
+     * Distance from the viewer to the effect; for beams, to the nearest point on the beam.
+     */
+    private static double distanceTo(Vec3d viewer, SpellEffectPayload payload) {
+        if (payload.kind() != SpellEffectPayload.Kind.BEAM
+                || payload.direction().lengthSquared() == 0) {
+            return viewer.distanceTo(payload.origin());
+        }
+        Vec3d unit = payload.direction().normalize();
+        double along = MathHelper.clamp(viewer.subtract(payload.origin()).dotProduct(unit), 0,
+                payload.radius());
+        return viewer.distanceTo(payload.origin().add(unit.multiply(along)));
+    }
+
+    private static void ring(ParticleManager particles, ParticleEffect effect, Vec3d center,
+            float radius, int points, Random random) {
+        double phase = random.nextDouble() * 2 * Math.PI / points;
+        for (int i = 0; i < points; i++) {
+            double angle = phase + (2 * Math.PI * i) / points;
+            particles.addParticle(effect, center.x + Math.cos(angle) * radius, center.y,
+                    center.z + Math.sin(angle) * radius, 0, 0, 0);
+        }
+    }
+
+    private static void beam(ParticleManager particles, ParticleEffect effect, Vec3d start,
+            Vec3d direction, float length, int points, Random random) {
+        if (points <= 0) {
+            return;
+        }
+        double spacing = length / points;
+        for (int i = 0; i < points; i++) {
+            Vec3d pos = start.add(direction.multiply(i * spacing));
+            particles.addParticle(effect, pos.x + random.nextGaussian() * 0.05,
+                    pos.y + random.nextGaussian() * 0.05, pos.z + random.nextGaussian() * 0.05, 0,
+                    0, 0);
+        }
+    }
+
+    private static void burst(ParticleManager particles, ParticleEffect effect, Vec3d center,
+            float spread, int count, Random random) {
+        for (int i = 0; i < count; i++) {
+            particles.addParticle(effect, center.x + random.nextGaussian() * spread,
+                    center.y + random.nextGaussian() * spread,
+                    center.z + random.nextGaussian() * spread, random.nextGaussian() * 0.05,
+                    random.nextGaussian() * 0.05, random.nextGaussian() * 0.05);
+        }
+    }
+
+    private static void spawnTrails(ClientWorld world) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.player != null) {
+            spawnTrails(world, client.particleManager, client.player.getEyePos());
+        }
+        // Next tick's cast effects and trails start from a fresh budget
+        allowance = newAllowance();
+    }
+
+    private static void spawnTrails(ClientWorld world, ParticleManager particles, Vec3d viewer) {
+        Random random = world.getRandom();
+        for (Entity entity : world.getEntities()) {
+            if (allowance.isSpent()) {
+                return;
+            }
+            if (!(entity instanceof SpellProjectileEntity projectile)) {
+                continue;
+            }
+            double distance = viewer.distanceTo(
+                    new Vec3d(projectile.getX(), projectile.getY(), projectile.getZ()));
+            ParticleEffect effect = projectile.getTrailParticle();
+            for (int i = allowance.take(projectile.getTrailParticleCount(distance)); i > 0; i--) {
+                particles.addParticle(effect, projectile.getX() + random.nextGaussian() * 0.05,
+                        projectile.getBodyY(0.5) + random.nextGaussian() * 0.05,
+                        projectile.getZ() + random.nextGaussian() * 0.05,
+                        random.nextGaussian() * 0.02, random.nextGaussian() * 0.02,
+                        random.nextGaussian() * 0.02);
+            }
+        }
+    }
+
+    /**
+     * The particle named by the spell's VFX, if it can be built from the VFX data alone.
+     */
+    private static Optional<ParticleEffect> particleFor(Spell.VfxData vfx) {
+        Identifier id = Identifier.tryParse(vfx.particleType());
+        if (id == null) {
+            return Optional.empty();
+        }
+        return switch (id.getPath()) {
+            case "block" -> Optional.of(new BlockStateParticleEffect(ParticleTypes.BLOCK,
+                    Blocks.DIRT.getDefaultState()));
+            case "dust" -> Optional.of(new DustParticleEffect(vfx.getColorInt(), 1.0f));
+            default -> Registries.PARTICLE_TYPE.getOptionalValue(id)
+                    .filter(ParticleEffect.class::isInstance).map(ParticleEffect.class::cast);
+        };
+    }
+
+    private static SpellEffectBudget.Allowance newAllowance() {
+        return new SpellEffectBudget.Allowance(ClientConfig.getInstance().spellParticleBudget);
+    }
+
+    private static ParticleEffect defaultParticle(SpellEffectPayload.Kind kind) {
+        return switch (kind) {
+            case RING -> ParticleTypes.FLAME;
+            case RITUAL -> ParticleTypes.ENCHANT;
+            case BEAM -> ParticleTypes.END_ROD;
+            case BURST -> ParticleTypes.CRIT;
+        };
+    }
+}
@@ -32,6 +32,7 @@ public class ClientConfig {
     public int hudOffsetY = 0;
     public float hudScale = 1.0f;
     public String hudMode = "DETAILED"; // DETAILED or COMPACT
+    public int spellParticleBudget = 512; // Client-built spell particles per tick
 
     public static ClientConfig getInstance() {
         if (INSTANCE == null) {
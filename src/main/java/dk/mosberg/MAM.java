@@ -2,6 +2,7 @@ package dk.mosberg;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import dk.mosberg.command.MAMCommands;
 import dk.mosberg.config.ServerConfig;
 import dk.mosberg.entity.MAMEntities;
 import dk.mosberg.item.MAMDataComponents;
@@ -15,11 +16,22 @@ import dk.mosberg.network.OpenSpellBookPayload;
 import dk.mosberg.network.SelectSpellPayload;
 import dk.mosberg.network.SelectedCooldownPayload;
 import dk.mosberg.network.ServerNetworkHandler;
+import dk.mosberg.network.SpellEffectPayload;
+import dk.mosberg.network.SpellIdTablePayload;
+import dk.mosberg.network.SpellManifestPayload;
+import dk.mosberg.network.SpellSyncPayload;
+import dk.mosberg.network.SpellSyncRequestPayload;
 import dk.mosberg.spell.CastTypeAnimationRegistry;
 import dk.mosberg.spell.HybridSchoolRegistry;
+import dk.mosberg.spell.SpellCastLog;
+import dk.mosberg.spell.SpellCastQueue;
+import dk.mosberg.spell.SpellCastScheduler;
+import dk.mosberg.spell.SpellEffectBudget;
 import dk.mosberg.spell.SpellMigrationRegistry;
+import dk.mosberg.spell.SpellModifierStack;
 import dk.mosberg.spell.SpellRegistry;
 import dk.mosberg.spell.SpellSchool;
+import dk.mosberg.spell.SpellSpatialIndex;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.itemgroup.v1.ItemGroupEvents;
 import net.minecraft.item.Item;
@@ -140,6 +152,12 @@ public class MAM implements ModInitializer {
 
 		// Register spell system
 		SpellRegistry.register();
+		SpellCastQueue.register();
+		SpellCastLog.register();
+		SpellCastScheduler.register();
+		SpellModifierStack.register();
+		SpellSpatialIndex.register();
+		SpellEffectBudget.register();
 
 		// Register spell system extensions
 		HybridSchoolRegistry.registerDefaults();
@@ -152,8 +170,16 @@ public class MAM implements ModInitializer {
 		SelectSpellPayload.register();
 		OpenSpellBookPayload.register();
 		SelectedCooldownPayload.register();
+		SpellIdTablePayload.register();
+		SpellManifestPayload.register();
+		SpellSyncRequestPayload.register();
+		SpellSyncPayload.register();
+		SpellEffectPayload.register();
 		ServerNetworkHandler.register();
 
+		// Register commands
+		MAMCommands.register();
+
 		// Load server config
 		ServerConfig.getInstance();
 
@@ -0,0 +1,298 @@
+package dk.mosberg.command;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import dk.mosberg.MAM;
+import dk.mosberg.mana.ManaRegenerationHandler;
+import dk.mosberg.mana.ManaStore;
+import dk.mosberg.mana.PlayerCastingData;
+import dk.mosberg.spell.Spell;
+import dk.mosberg.spell.SpellCastLog;
+import dk.mosberg.spell.SpellCastScheduler;
+import dk.mosberg.spell.SpellCaster;
+import dk.mosberg.spell.SpellRegistry;
+import dk.mosberg.spell.SpellTimingWheel;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.random.Random;
+
+/**
+ * Headless replay of a cast stream through the casting and mana logic, run with
+ * {@code /mam benchmark replay}.
+ *
+ * <p>
+ * Each fake player is a bare {@link PlayerCastingData} without gear. Casts are settled by
+ * {@link SpellCaster#charge}, channel for {@link SpellCastScheduler#castTicks} on a private
+ * {@link SpellTimingWheel} with the scheduler's concentration checks, and finish through
+ * {@link SpellCaster#finishCaster} like {@link SpellCaster#executeCast} does; the world effects are
+ * skipped, as there is no world. Each tick ends with
+ * {@link ManaRegenerationHandler#regenEfficiency} for the player's synthetic surroundings and
+ * {@link PlayerCastingData#tick()}, skipping dormant players; awake players hold a slot in a
+ * {@link ManaStore} of the run's own, advanced once per tick like {@link ManaStore#server()}. A
+ * player who comes under attack while channeling is interrupted.
+ *
+ * <p>
+ * Every random roll comes from the seed and the casting clock advances 50 ms per tick, so a
+ * stream replayed twice must end in the same state. The report compares the final NBT and outcome
+ * counts of two runs and times the second one. A third run ticks the players with
+ * {@link ManaRegenerationHandler#tickPlayers} across worker threads and must match the first.
+ */
+final class CastReplay {
+    private static final long MILLIS_PER_TICK = 50;
+    private static final float CAST_CHANCE = 0.05f; // Per player per tick, synthetic streams
+    private static final int ENVIRONMENT_INTERVAL = 100; // Ticks between surroundings changes
+    private static final float[] TEMPERATURES = {0.0f, 0.8f, 2.0f}; // Cold, temperate, hot
+    private static final int LOG_TAIL_TICKS = 200; // Replayed after the last logged cast
+
+    record Event(int tick, int player, Spell spell) {
+    }
+
+    /**
+     * Casts in tick order, for {@code players} players over {@code ticks} ticks.
+     */
+    record CastStream(List<Event> events, int players, int ticks) {
+    }
+
+    /**
+     * @param allocatedBytes Bytes allocated while ticking, or -1 if the JVM cannot tell
+     * @param finalState Each fake player's casting data as saved after the last tick
+     */
+    record Run(long nanos, long allocatedBytes, Map<SpellCastLog.Result, Integer> outcomes,
+            List<NbtCompound> finalState) {
+    }
+
+    /**
+     * @param run The timed second run
+     * @param deterministic Whether both runs ended in the same state
+     * @param parallelMatches Whether ticking players in parallel ended in the same state too
+     */
+    record Report(CastStream stream, Run run, boolean deterministic, boolean parallelMatches) {
+        double ticksPerSecond() {
+            return stream.ticks() * 1_000_000_000.0 / Math.max(1, run.nanos());
+        }
+    }
+
+    private static final class FakePlayer {
+        final PlayerCastingData castingData = new PlayerCastingData();
+        final List<SpellTimingWheel.Task> tasks = new ArrayList<>();
+        final Random surroundings;
+        final float temperature;
+        boolean sneaking;
+        boolean inCombat;
+        boolean submerged;
+        boolean lowHealth;
+
+        FakePlayer(Random random, long[] tick) {
+            castingData.setRandom(random.split());
+            castingData.setClock(() -> tick[0] * MILLIS_PER_TICK);
+            castingData.getManaData().setTickSource(() -> tick[0]);
+            surroundings = random.split();
+            temperature = TEMPERATURES[surroundings.nextInt(TEMPERATURES.length)];
+        }
+    }
+
+    private CastReplay() {
+    }
+
+    /**
+     * Random casts of every loaded spell, each player trying one on about one tick in twenty.
+     */
+    static CastStream synthetic(int players, int ticks, long seed) {
+        List<Spell> spells = new ArrayList<>(SpellRegistry.getAllSpells());
+        spells.sort(Comparator.comparingInt(Spell::getRawId));
+        List<Event> events = new ArrayList<>();
+        if (!spells.isEmpty()) {
+            Random random = Random.create(seed);
+            for (int tick = 1; tick <= ticks; tick++) {
+                for (int player = 0; player < players; player++) {
+                    if (random.nextFloat() < CAST_CHANCE) {
+                        events.add(new Event(tick, player,
+                                spells.get(random.nextInt(spells.size()))));
+                    }
+                }
+            }
+        }
+        return new CastStream(events, players, ticks);
+    }
+
+    /**
+     * The attempts in a {@link SpellCastLog} excerpt, one fake player per logged player, spaced by
+     * wall-clock time. Interrupts are dropped, as the replay decides those itself, and so are
+     * spells no longer loaded.
+     */
+    static CastStream fromLog(List<SpellCastLog.Entry> entries) {
+        Map<UUID, Integer> players = new LinkedHashMap<>();
+        List<Event> events = new ArrayList<>();
+        long start = entries.isEmpty() ? 0 : entries.get(0).timeMillis();
+        for (SpellCastLog.Entry entry : entries) {
+            if (entry.result() == SpellCastLog.Result.INTERRUPTED) {
+                continue;
+            }
+            Spell spell = SpellRegistry.getSpell(entry.spellId()).orElse(null);
+            if (spell == null) {
+                continue;
+            }
+            int player = players.computeIfAbsent(entry.playerId(), id -> players.size());
+            int tick = 1 + (int) Math.max(0, (entry.timeMillis() - start) / MILLIS_PER_TICK);
+            events.add(new Event(tick, player, spell));
+        }
+        events.sort(Comparator.comparingInt(Event::tick));
+        int ticks = events.isEmpty() ? 0 : events.get(events.size() - 1).tick() + LOG_TAIL_TICKS;
+        return new CastStream(events, players.size(), ticks);
+    }
+
+    /**
+     * Replays the stream twice with the same seed and compares the outcomes, then once more with
+     * the end-of-tick update in parallel.
+     */
+    static Report replay(CastStream stream, long seed) {
+        Run first = run(stream, seed, false);
+        Run second = run(stream, seed, false);
+        Run parallel = run(stream, seed, true);
+        boolean deterministic = matches("Cast replay", first, second, seed);
+        boolean parallelMatches = matches("Parallel cast replay", first, parallel, seed);
+        return new Report(stream, second, deterministic, parallelMatches);
+    }
+
+    /**
+     * Whether two runs ended in the same state, logging where they first differ if not.
+     */
+    private static boolean matches(String name, Run expected, Run actual, long seed) {
+        if (expected.outcomes().equals(actual.outcomes())
+                && expected.finalState().equals(actual.finalState())) {
+            return true;
+        }
+        for (int i = 0; i < expected.finalState().size(); i++) {
+            if (!expected.finalState().get(i).equals(actual.finalState().get(i))) {
+                MAM.LOGGER.warn("{} diverged for fake player {} (seed {}): {} vs {}", name, i,
+                        seed, expected.finalState().get(i), actual.finalState().get(i));
+                break;
+            }
+        }
+        MAM.LOGGER.warn("{} outcomes (seed {}): {} vs {}", name, seed, expected.outcomes(),
+                actual.outcomes());
+        return false;
+    }
+
+    private static Run run(CastStream stream, long seed, boolean parallel) {
+        long[] currentTick = {0};
+        Random random = Random.create(~seed);
+        List<FakePlayer> players = new ArrayList<>(stream.players());
+        for (int i = 0; i < stream.players(); i++) {
+            players.add(new FakePlayer(random, currentTick));
+        }
+        SpellTimingWheel wheel = new SpellTimingWheel();
+        Map<SpellCastLog.Result, Integer> outcomes = new EnumMap<>(SpellCastLog.Result.class);
+        List<Event> events = stream.events();
+        List<PlayerCastingData> awake = new ArrayList<>(players.size());
+        ManaStore store = new ManaStore();
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        int next = 0;
+        for (int tick = 1; tick <= stream.ticks(); tick++) {
+            // Start of tick: the cast queue drains, then the scheduler runs what came due
+            while (next < events.size() && events.get(next).tick() <= tick) {
+                Event event = events.get(next++);
+                cast(wheel, players.get(event.player()), event.spell(), outcomes);
+            }
+            wheel.advance();
+
+            // World tick: surroundings change and attacks interrupt channeling
+            if (tick % ENVIRONMENT_INTERVAL == 0) {
+                for (FakePlayer player : players) {
+                    updateSurroundings(player, outcomes);
+                }
+            }
+
+            // End of tick: regeneration, skipping dormant players like the handler does
+            currentTick[0] = tick;
+            store.advance(tick);
+            awake.clear();
+            for (FakePlayer player : players) {
+                if (player.castingData.isDormant()) {
+                    player.castingData.getManaData().releaseSlot();
+                    continue;
+                }
+                player.castingData.getManaData()
+                        .setEfficiencyModifier(ManaRegenerationHandler.regenEfficiency(
+                                player.inCombat, player.sneaking, player.temperature,
+                                player.submerged, player.lowHealth));
+                player.castingData.getManaData().claimSlot(store);
+                awake.add(player.castingData);
+            }
+            ManaRegenerationHandler.tickPlayers(awake, parallel);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+
+        List<NbtCompound> finalState = new ArrayList<>(players.size());
+        for (FakePlayer player : players) {
+            finalState.add(player.castingData.writeNbt(new NbtCompound()));
+        }
+        long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new Run(nanos, allocated, outcomes, finalState);
+    }
+
+    private static void cast(SpellTimingWheel wheel, FakePlayer player, Spell spell,
+            Map<SpellCastLog.Result, Integer> outcomes) {
+        PlayerCastingData castingData = player.castingData;
+        float cooldownMultiplier =
+                castingData.getManaData().getActivePriority().getCooldownModifier();
+        SpellCaster.Charge charge =
+                SpellCaster.charge(castingData, spell, 1.0f, cooldownMultiplier, () -> true);
+        outcomes.merge(charge.result(), 1, Integer::sum);
+        if (charge.result() != SpellCastLog.Result.CAST) {
+            return;
+        }
+
+        int castTicks = SpellCastScheduler.castTicks(spell, castingData);
+        if (castTicks <= 0) {
+            SpellCaster.finishCaster(castingData, spell);
+            return;
+        }
+        for (int tick = SpellCastScheduler.CHANNEL_CHECK_INTERVAL; tick < castTicks;
+                tick += SpellCastScheduler.CHANNEL_CHECK_INTERVAL) {
+            player.tasks.add(wheel.schedule(tick, () -> castingData
+                    .maintainConcentration(SpellCastScheduler.CHANNEL_CONCENTRATION)));
+        }
+        player.tasks.add(wheel.schedule(castTicks, () -> {
+            player.tasks.clear();
+            SpellCaster.finishCaster(castingData, spell);
+        }));
+    }
+
+    private static void updateSurroundings(FakePlayer player,
+            Map<SpellCastLog.Result, Integer> outcomes) {
+        Random random = player.surroundings;
+        boolean attacked = !player.inCombat && random.nextFloat() < 0.2f;
+        player.inCombat = attacked || (player.inCombat && random.nextFloat() < 0.5f);
+        player.sneaking = random.nextFloat() < 0.3f;
+        player.submerged = random.nextFloat() < 0.1f;
+        player.lowHealth = random.nextFloat() < 0.1f;
+
+        if (attacked && !player.tasks.isEmpty()) {
+            player.tasks.forEach(SpellTimingWheel.Task::cancel);
+            player.tasks.clear();
+            player.castingData.interruptCasting();
+            outcomes.merge(SpellCastLog.Result.INTERRUPTED, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Bytes allocated so far by this thread, or -1 if the JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()
+                && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,444 @@
+package dk.mosberg.command;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.LongArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import dk.mosberg.MAM;
+import dk.mosberg.config.ServerConfig;
+import dk.mosberg.mana.ManaAttachments;
+import dk.mosberg.mana.ManaStore;
+import dk.mosberg.mana.PlayerCastingData;
+import dk.mosberg.mana.RegenContext;
+import dk.mosberg.network.PacketRateLimiter;
+import dk.mosberg.network.PacketRateLimiter.PacketKind;
+import dk.mosberg.network.ServerNetworkHandler;
+import dk.mosberg.spell.SpellCastLog;
+import dk.mosberg.spell.SpellCastQueue;
+import dk.mosberg.spell.SpellCastScheduler;
+import dk.mosberg.spell.Spell;
+import dk.mosberg.spell.SpellEffectBudget;
+import dk.mosberg.spell.SpellModifierStack;
+import dk.mosberg.spell.SpellRegistry;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.argument.EntityArgumentType;
+import net.minecraft.command.argument.IdentifierArgumentType;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.Util;
+
+/**
+ * Operator commands under {@code /mam}.
+ *
+ * <ul>
+ * <li>{@code /mam packets} - spell packet rate limit counters and cast queue depth
+ * <li>{@code /mam packets reset} - resets those counters
+ * <li>{@code /mam effects} - spell particle and sound budget counters since the last call
+ * <li>{@code /mam casts} - casts channeling and tasks waiting in the spell scheduler
+ * <li>{@code /mam regen} - players skipped by mana regeneration, and regen context cache counters
+ * since the last call
+ * <li>{@code /mam modifiers <player> <spell>} - the player's stat multipliers for a spell and
+ * where each one comes from
+ * <li>{@code /mam castlog show <player|all> [fromMinutesAgo] [toMinutesAgo]} - the latest logged
+ * cast attempts in that window (default the last hour)
+ * <li>{@code /mam castlog stats} - cast log writer throughput and backpressure
+ * <li>{@code /mam benchmark spatial [casters]} - times spell area queries with and without the
+ * spatial index around the source (default 50 casters)
+ * <li>{@code /mam benchmark replay [players] [ticks] [seed]} - replays a seeded synthetic cast
+ * stream twice through the casting and mana logic with fake players; reports ticks per second,
+ * allocation and whether both runs ended alike (default 100 players, 6000 ticks)
+ * <li>{@code /mam benchmark replay log [minutesAgo]} - the same for the cast log since then
+ * <li>{@code /mam benchmark bundle} - loads the current spell packs through the full pipeline and
+ * from a spell bundle, and times both
+ * </ul>
+ */
+public class MAMCommands {
+    private static final int DEFAULT_CASTERS = 50;
+    private static final int DEFAULT_LOG_MINUTES = 60;
+    private static final int MAX_LOG_LINES = 20;
+    private static final int DEFAULT_REPLAY_PLAYERS = 100;
+    private static final int DEFAULT_REPLAY_TICKS = 6000;
+    private static final long DEFAULT_REPLAY_SEED = 1L;
+    private static final int MAX_REPLAY_EVENTS = 1_000_000;
+    private static final DateTimeFormatter LOG_TIME =
+            DateTimeFormatter.ofPattern("MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    public static void register() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
+            dispatcher.register(CommandManager.literal(MAM.MOD_ID)
+                    .requires(source -> source.hasPermissionLevel(2))
+                    .then(CommandManager.literal("packets").executes(MAMCommands::showPacketStats)
+                            .then(CommandManager.literal("reset")
+                                    .executes(MAMCommands::resetPacketStats)))
+                    .then(CommandManager.literal("effects")
+                            .executes(MAMCommands::showEffectStats))
+                    .then(CommandManager.literal("casts").executes(MAMCommands::showCastStats))
+                    .then(CommandManager.literal("regen").executes(MAMCommands::showRegenStats))
+                    .then(CommandManager.literal("modifiers").then(CommandManager
+                            .argument("player", EntityArgumentType.player())
+                            .then(CommandManager
+                                    .argument("spell", IdentifierArgumentType.identifier())
+                                    .suggests((context, builder) -> CommandSource
+                                            .suggestIdentifiers(SpellRegistry.getIdTable(),
+                                                    builder))
+                                    .executes(MAMCommands::showModifiers))))
+                    .then(CommandManager.literal("castlog")
+                            .then(CommandManager.literal("stats")
+                                    .executes(MAMCommands::showCastLogStats))
+                            .then(CommandManager.literal("show")
+                                    .then(castLogRange(CommandManager.literal("all")))
+                                    .then(castLogRange(CommandManager.argument("player",
+                                            StringArgumentType.word())))))
+                    .then(CommandManager.literal("benchmark").then(CommandManager
+                            .literal("spatial")
+                            .executes(context -> benchmarkSpatial(context, DEFAULT_CASTERS))
+                            .then(CommandManager
+                                    .argument("casters", IntegerArgumentType.integer(1, 1000))
+                                    .executes(context -> benchmarkSpatial(context,
+                                            IntegerArgumentType.getInteger(context,
+                                                    "casters")))))
+                            .then(CommandManager.literal("replay")
+                                    .executes(context -> benchmarkReplay(context,
+                                            DEFAULT_REPLAY_PLAYERS, DEFAULT_REPLAY_TICKS,
+                                            DEFAULT_REPLAY_SEED))
+                                    .then(CommandManager.literal("log")
+                                            .executes(context -> benchmarkReplayLog(context,
+                                                    DEFAULT_LOG_MINUTES))
+                                            .then(CommandManager
+                                                    .argument("minutes",
+                                                            IntegerArgumentType.integer(1))
+                                                    .executes(context -> benchmarkReplayLog(
+                                                            context, IntegerArgumentType
+                                                                    .getInteger(context,
+                                                                            "minutes")))))
+                                    .then(replayArguments()))
+                            .then(CommandManager.literal("bundle")
+                                    .executes(MAMCommands::benchmarkBundle))));
+        });
+
+        MAM.LOGGER.info("Registered MAM commands");
+    }
+
+    private static int showPacketStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        ServerConfig config = ServerConfig.getInstance();
+
+        source.sendFeedback(() -> Text.literal(String.format("Spell packet rate limit: %s",
+                config.enablePacketRateLimit ? "enabled" : "disabled")), false);
+        for (PacketKind kind : PacketKind.values()) {
+            long accepted = PacketRateLimiter.getAccepted(kind);
+            long dropped = PacketRateLimiter.getDropped(kind);
+            source.sendFeedback(() -> Text.literal(String.format("  %s: %d accepted, %d dropped",
+                    kind.name().toLowerCase(), accepted, dropped)), false);
+        }
+        source.sendFeedback(() -> Text.literal(String.format(
+                "Cast queue: %d waiting, peak %d per tick; %d players tracked",
+                SpellCastQueue.getDepth(), SpellCastQueue.getPeakDepth(),
+                PacketRateLimiter.getTrackedPlayers())), false);
+        return 1;
+    }
+
+    private static int showEffectStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        ServerConfig config = ServerConfig.getInstance();
+        long requested = SpellEffectBudget.getParticlesRequested();
+        long sent = SpellEffectBudget.getParticlesSent();
+
+        source.sendFeedback(() -> Text.literal(String.format(
+                "Spell effect budget: %s, %d particles per player per tick",
+                config.enableEffectBudget ? "enabled" : "disabled",
+                config.particleBudgetPerPlayer)), false);
+        source.sendFeedback(() -> Text.literal(String.format(
+                "  particles: %d requested, %d sent to players", requested, sent)), false);
+        source.sendFeedback(() -> Text.literal(String.format("  sounds: %d played, %d merged",
+                SpellEffectBudget.getSoundsPlayed(), SpellEffectBudget.getSoundsMerged())), false);
+        SpellEffectBudget.resetCounters();
+        return 1;
+    }
+
+    private static int showCastStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        source.sendFeedback(() -> Text.literal(String.format(
+                "Cast times: %s; %d casts in flight, %d scheduled tasks",
+                ServerConfig.getInstance().enableCastTimes ? "enabled" : "disabled",
+                SpellCastScheduler.getInFlight(), SpellCastScheduler.getScheduled())), false);
+        return 1;
+    }
+
+    private static int showRegenStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        List<ServerPlayerEntity> players = source.getServer().getPlayerManager().getPlayerList();
+        long dormant = players.stream().filter(player -> player
+                .getAttachedOrCreate(ManaAttachments.PLAYER_CASTING, PlayerCastingData::new)
+                .isDormant()).count();
+        long hits = RegenContext.getBiomeHits();
+        long misses = RegenContext.getBiomeMisses();
+
+        source.sendFeedback(() -> Text.literal(String.format(
+                "Mana regen: %d of %d players dormant; %d store slots in use (%s)", dormant,
+                players.size(), ManaStore.server().getSlotsInUse(),
+                ManaStore.isVectorized() ? "Vector API" : "plain loop")), false);
+        source.sendFeedback(() -> Text.literal(String.format(
+                "  biome lookups: %d cached, %d looked up (%.1f%% hits); %d efficiency updates",
+                hits, misses, 100.0 * hits / Math.max(1, hits + misses),
+                RegenContext.getRecomputes())), false);
+        RegenContext.resetCounters();
+
+        // Against what the fixed-interval full payload cost: nine floats and the priority's name
+        int interval = ServerConfig.getInstance().manaSyncIntervalTicks;
+        double seconds = ServerNetworkHandler.getManaSyncTicks() / 20.0;
+        double fullBytes = 0;
+        if (interval > 0) {
+            for (ServerPlayerEntity player : players) {
+                String priority = player
+                        .getAttachedOrCreate(ManaAttachments.PLAYER_CASTING,
+                                PlayerCastingData::new)
+                        .getManaData().getActivePriority().name();
+                fullBytes += (9 * Float.BYTES + 1 + priority.length()) * 20.0 / interval;
+            }
+        }
+        double perPlayerSecond = ServerNetworkHandler.getManaSyncBytes()
+                / Math.max(1.0, seconds) / Math.max(1, players.size());
+        double fullPerPlayerSecond = fullBytes / Math.max(1, players.size());
+        source.sendFeedback(() -> Text.literal(String.format(
+                "  mana sync: %d sent, %d unchanged; %.1f B/player/s (full every %d ticks: %.1f)",
+                ServerNetworkHandler.getManaSyncsSent(),
+                ServerNetworkHandler.getManaSyncsSkipped(), perPlayerSecond, interval,
+                fullPerPlayerSecond)), false);
+        ServerNetworkHandler.resetManaSyncCounters();
+        return 1;
+    }
+
+    private static int showModifiers(CommandContext<ServerCommandSource> context)
+            throws CommandSyntaxException {
+        ServerCommandSource source = context.getSource();
+        ServerPlayerEntity player = EntityArgumentType.getPlayer(context, "player");
+        Identifier spellId = IdentifierArgumentType.getIdentifier(context, "spell");
+        Spell spell = SpellRegistry.getSpell(spellId).orElse(null);
+        if (spell == null) {
+            source.sendError(Text.literal("Unknown spell: " + spellId));
+            return 0;
+        }
+
+        PlayerCastingData castingData =
+                player.getAttachedOrCreate(ManaAttachments.PLAYER_CASTING, PlayerCastingData::new);
+        SpellModifierStack.Resolved modifiers =
+                castingData.getModifierStack().get(player, castingData, spell);
+        source.sendFeedback(() -> Text.literal(String.format("%s casting %s (%s, %s):",
+                player.getName().getString(), spellId, spell.getSchool().name().toLowerCase(),
+                spell.getCastType().getDisplayName())), false);
+        for (SpellModifierStack.Stat stat : SpellModifierStack.Stat.values()) {
+            source.sendFeedback(() -> Text.literal(String.format("  %s: x%.3f",
+                    stat.getDisplayName(), modifiers.get(stat))), false);
+            for (SpellModifierStack.Modifier modifier : modifiers.getModifiers()) {
+                if (modifier.stat() == stat) {
+                    source.sendFeedback(() -> Text.literal(String.format("    x%.3f from %s",
+                            modifier.multiplier(), modifier.source())), false);
+                }
+            }
+        }
+        source.sendFeedback(() -> Text.literal(String.format(
+                "  per cast: concentration x%.2f, combo x%.2f, fatigue x%.2f",
+                castingData.getConcentrationPowerMultiplier(), castingData.getComboMultiplier(),
+                castingData.getEffectivenessMultiplier())), false);
+        return 1;
+    }
+
+    private static int showCastLogStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        if (!SpellCastLog.isRunning()) {
+            source.sendFeedback(() -> Text.literal("Cast log: disabled"), false);
+            return 1;
+        }
+        SpellCastLog.Stats stats = SpellCastLog.getStats();
+        source.sendFeedback(() -> Text.literal(String.format(
+                "Cast log: %d recorded, %d written, %d dropped", stats.recorded(), stats.written(),
+                stats.dropped())), false);
+        source.sendFeedback(() -> Text.literal(String.format(
+                "  buffer: %d / %d waiting, peak %d; %d KiB in %d files", stats.buffered(),
+                stats.capacity(), stats.peakBuffered(), stats.bytesWritten() / 1024,
+                stats.filesWritten())), false);
+        return 1;
+    }
+
+    /**
+     * Adds the optional {@code [fromMinutesAgo] [toMinutesAgo]} arguments of
+     * {@code /mam castlog show} to a player argument or the {@code all} literal.
+     */
+    private static <T extends ArgumentBuilder<ServerCommandSource, T>> T castLogRange(T target) {
+        return target.executes(context -> showCastLog(context, DEFAULT_LOG_MINUTES, 0))
+                .then(CommandManager.argument("from", IntegerArgumentType.integer(0))
+                        .executes(context -> showCastLog(context,
+                                IntegerArgumentType.getInteger(context, "from"), 0))
+                        .then(CommandManager.argument("to", IntegerArgumentType.integer(0))
+                                .executes(context -> showCastLog(context,
+                                        IntegerArgumentType.getInteger(context, "from"),
+                                        IntegerArgumentType.getInteger(context, "to")))));
+    }
+
+    private static int showCastLog(CommandContext<ServerCommandSource> context, int fromMinutes,
+            int toMinutes) {
+        ServerCommandSource source = context.getSource();
+        // Null for "all"
+        String player = context.getNodes().stream()
+                .anyMatch(node -> "player".equals(node.getNode().getName()))
+                        ? StringArgumentType.getString(context, "player")
+                        : null;
+        long now = System.currentTimeMillis();
+        long from = now - Math.max(fromMinutes, toMinutes) * 60_000L;
+        long to = now - Math.min(fromMinutes, toMinutes) * 60_000L;
+
+        // The files are read off the server thread and the result is reported back on it
+        CompletableFuture
+                .supplyAsync(() -> SpellCastLog.read(player, from, to, MAX_LOG_LINES))
+                .thenAcceptAsync(entries -> reportCastLog(source, player, entries),
+                        source.getServer());
+        return 1;
+    }
+
+    private static void reportCastLog(ServerCommandSource source, String player,
+            List<SpellCastLog.Entry> entries) {
+        if (entries.isEmpty()) {
+            source.sendFeedback(() -> Text.literal(
+                    "No logged casts" + (player != null ? " for " + player : "")), false);
+            return;
+        }
+        for (SpellCastLog.Entry entry : entries) {
+            source.sendFeedback(() -> Text.literal(String.format(
+                    "[%s] %s %s %s, %.1f mana at %.0f %.0f %.0f (tick %d)",
+                    LOG_TIME.format(Instant.ofEpochMilli(entry.timeMillis())), entry.playerName(),
+                    entry.spellId(), entry.result().name().toLowerCase(), entry.manaConsumed(),
+                    entry.x(), entry.y(), entry.z(), entry.tick())), false);
+        }
+    }
+
+    private static int benchmarkSpatial(CommandContext<ServerCommandSource> context,
+            int casters) {
+        ServerCommandSource source = context.getSource();
+        SpatialIndexBenchmark.Result result =
+                SpatialIndexBenchmark.run(source.getWorld(), source.getPosition(), casters);
+        if (result.casters() == 0) {
+            source.sendError(Text.literal("No living entities to use as casters"));
+            return 0;
+        }
+
+        source.sendFeedback(() -> Text.literal(String.format(
+                "%d casters, %d living entities: direct %.1f µs, indexed %.1f µs per tick"
+                        + " (%.1fx); hits %d / %d",
+                result.casters(), result.entities(), result.directNanos() / 1_000.0,
+                result.indexedNanos() / 1_000.0,
+                result.directNanos() / (double) Math.max(1, result.indexedNanos()),
+                result.directHits(), result.indexedHits())), false);
+        source.sendFeedback(() -> Text.literal(String.format(
+                "Single homing lookup: direct %.1f µs, indexed %.1f µs",
+                result.singleDirectNanos() / 1_000.0, result.singleIndexedNanos() / 1_000.0)),
+                false);
+        return 1;
+    }
+
+    /**
+     * The {@code [players] [ticks] [seed]} arguments of {@code /mam benchmark replay}.
+     */
+    private static ArgumentBuilder<ServerCommandSource, ?> replayArguments() {
+        return CommandManager.argument("players", IntegerArgumentType.integer(1, 1000))
+                .executes(context -> benchmarkReplay(context,
+                        IntegerArgumentType.getInteger(context, "players"),
+                        DEFAULT_REPLAY_TICKS, DEFAULT_REPLAY_SEED))
+                .then(CommandManager.argument("ticks", IntegerArgumentType.integer(1, 72000))
+                        .executes(context -> benchmarkReplay(context,
+                                IntegerArgumentType.getInteger(context, "players"),
+                                IntegerArgumentType.getInteger(context, "ticks"),
+                                DEFAULT_REPLAY_SEED))
+                        .then(CommandManager.argument("seed", LongArgumentType.longArg())
+                                .executes(context -> benchmarkReplay(context,
+                                        IntegerArgumentType.getInteger(context, "players"),
+                                        IntegerArgumentType.getInteger(context, "ticks"),
+                                        LongArgumentType.getLong(context, "seed")))));
+    }
+
+    private static int benchmarkReplay(CommandContext<ServerCommandSource> context, int players,
+            int ticks, long seed) {
+        ServerCommandSource source = context.getSource();
+        // The fake players share nothing with the server, so the replay runs off its thread
+        CompletableFuture
+                .supplyAsync(() -> CastReplay.replay(CastReplay.synthetic(players, ticks, seed),
+                        seed))
+                .thenAcceptAsync(report -> reportReplay(source, report, seed),
+                        source.getServer());
+        return 1;
+    }
+
+    private static int benchmarkBundle(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        SpellRegistry.benchmarkLoad(source.getServer().getResourceManager(),
+                Util.getMainWorkerExecutor()).thenAcceptAsync(timing -> {
+                    source.sendFeedback(() -> Text.literal(String.format(
+                            "%d spell files: reading %.1f ms, then full pipeline %.1f ms"
+                                    + " (%d spells) vs bundle %.1f ms (%d spells)",
+                            timing.files(), timing.readNanos() / 1_000_000.0,
+                            timing.fullNanos() / 1_000_000.0, timing.fullSpells(),
+                            timing.bundleNanos() / 1_000_000.0, timing.bundleSpells())), false);
+                }, source.getServer());
+        return 1;
+    }
+
+    private static int benchmarkReplayLog(CommandContext<ServerCommandSource> context,
+            int minutes) {
+        ServerCommandSource source = context.getSource();
+        long now = System.currentTimeMillis();
+        CompletableFuture
+                .supplyAsync(() -> CastReplay.replay(CastReplay.fromLog(SpellCastLog.read(null,
+                        now - minutes * 60_000L, now, MAX_REPLAY_EVENTS)), DEFAULT_REPLAY_SEED))
+                .thenAcceptAsync(report -> reportReplay(source, report, DEFAULT_REPLAY_SEED),
+                        source.getServer());
+        return 1;
+    }
+
+    private static void reportReplay(ServerCommandSource source, CastReplay.Report report,
+            long seed) {
+        CastReplay.CastStream stream = report.stream();
+        if (stream.events().isEmpty()) {
+            source.sendError(Text.literal("No casts to replay"));
+            return;
+        }
+        CastReplay.Run run = report.run();
+        source.sendFeedback(() -> Text.literal(String.format(
+                "%d casts by %d players over %d ticks (seed %d): %.0f ticks/s, %.1f ms, %s",
+                stream.events().size(), stream.players(), stream.ticks(), seed,
+                report.ticksPerSecond(), run.nanos() / 1_000_000.0,
+                run.allocatedBytes() < 0 ? "allocation unknown"
+                        : String.format("%.1f MB allocated", run.allocatedBytes() / 1048576.0))),
+                false);
+        source.sendFeedback(() -> Text.literal("  Outcomes: " + run.outcomes()), false);
+        if (report.deterministic()) {
+            source.sendFeedback(() -> Text.literal("  Both runs ended in the same state"), false);
+        } else {
+            source.sendError(Text.literal("Replay diverged between runs; see the server log"));
+        }
+        if (report.parallelMatches()) {
+            source.sendFeedback(() -> Text.literal("  Parallel tick ended in the same state"),
+                    false);
+        } else {
+            source.sendError(
+                    Text.literal("Parallel tick diverged from serial; see the server log"));
+        }
+    }
+
+    private static int resetPacketStats(CommandContext<ServerCommandSource> context) {
+        PacketRateLimiter.resetCounters();
+        SpellCastQueue.resetPeakDepth();
+        context.getSource().sendFeedback(() -> Text.literal("Spell packet counters reset"), true);
+        return 1;
+    }
+}
@@ -0,0 +1,154 @@
+package dk.mosberg.command;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import dk.mosberg.spell.SpellSpatialIndex;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * In-game benchmark for {@link SpellSpatialIndex}, run with {@code /mam benchmark spatial}.
+ *
+ * <p>
+ * Picks the living entities nearest to the command source as casters (stand in a crowded mob farm
+ * for the intended case) and, for each, runs the area queries one cast makes: an AoE radius, a
+ * ritual radius, two synergy player lookups, the synergy area and a beam. One round does this for
+ * every caster, first with direct {@code getEntitiesByClass}/{@code getPlayers} calls and then
+ * through a fresh index (cell filling included), like one busy tick. It also times a quiet tick:
+ * a single homing projectile's nearest-target lookup, direct and through a fresh index.
+ */
+final class SpatialIndexBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+    private static final double AOE_RADIUS = 6.0;
+    private static final double RITUAL_RADIUS = 9.0;
+    private static final double SYNERGY_RANGE = 10.0;
+    private static final double BEAM_RANGE = 30.0;
+    private static final double HOMING_RANGE = 16.0;
+
+    record Result(int entities, int casters, long directNanos, long indexedNanos, long directHits,
+            long indexedHits, long singleDirectNanos, long singleIndexedNanos) {
+    }
+
+    private SpatialIndexBenchmark() {
+    }
+
+    static Result run(ServerWorld world, Vec3d origin, int casterCount) {
+        List<LivingEntity> all = new ArrayList<>();
+        for (Entity entity : world.iterateEntities()) {
+            if (entity instanceof LivingEntity living && !living.isRemoved()) {
+                all.add(living);
+            }
+        }
+        all.sort(Comparator.comparingDouble(entity -> entity.squaredDistanceTo(origin)));
+        List<LivingEntity> casters = all.subList(0, Math.min(casterCount, all.size()));
+        if (casters.isEmpty()) {
+            return new Result(all.size(), 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            direct(world, casters);
+            indexed(world, casters);
+            singleDirect(world, casters.get(0));
+            singleIndexed(world, casters.get(0));
+        }
+
+        long directNanos = 0;
+        long indexedNanos = 0;
+        long directHits = 0;
+        long indexedHits = 0;
+        long singleDirectNanos = 0;
+        long singleIndexedNanos = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            directHits += direct(world, casters);
+            directNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            indexedHits += indexed(world, casters);
+            indexedNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            singleDirect(world, casters.get(0));
+            singleDirectNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            singleIndexed(world, casters.get(0));
+            singleIndexedNanos += System.nanoTime() - start;
+        }
+        return new Result(all.size(), casters.size(), directNanos / ROUNDS, indexedNanos / ROUNDS,
+                directHits / ROUNDS, indexedHits / ROUNDS, singleDirectNanos / ROUNDS,
+                singleIndexedNanos / ROUNDS);
+    }
+
+    private static LivingEntity singleDirect(ServerWorld world, LivingEntity caster) {
+        return world.getEntitiesByClass(LivingEntity.class,
+                caster.getBoundingBox().expand(HOMING_RANGE), entity -> entity != caster
+                        && entity.squaredDistanceTo(caster) <= HOMING_RANGE * HOMING_RANGE)
+                .stream()
+                .min(Comparator.comparingDouble(entity -> entity.squaredDistanceTo(caster)))
+                .orElse(null);
+    }
+
+    private static LivingEntity singleIndexed(ServerWorld world, LivingEntity caster) {
+        Vec3d position = new Vec3d(caster.getX(), caster.getY(), caster.getZ());
+        List<LivingEntity> closest = SpellSpatialIndex.build(world).nearest(position, HOMING_RANGE,
+                1, entity -> entity != caster);
+        return closest.isEmpty() ? null : closest.get(0);
+    }
+
+    private static long direct(ServerWorld world, List<LivingEntity> casters) {
+        long hits = 0;
+        for (LivingEntity caster : casters) {
+            hits += world.getEntitiesByClass(LivingEntity.class,
+                    caster.getBoundingBox().expand(AOE_RADIUS), entity -> entity != caster
+                            && entity.squaredDistanceTo(caster) <= AOE_RADIUS * AOE_RADIUS)
+                    .size();
+            hits += world.getEntitiesByClass(LivingEntity.class,
+                    caster.getBoundingBox().expand(RITUAL_RADIUS), entity -> entity != caster
+                            && entity.squaredDistanceTo(caster) <= RITUAL_RADIUS * RITUAL_RADIUS)
+                    .size();
+            for (int i = 0; i < 2; i++) {
+                hits += world.getPlayers(p -> p != caster
+                        && p.squaredDistanceTo(caster) <= SYNERGY_RANGE * SYNERGY_RANGE).size();
+            }
+            hits += world.getEntitiesByClass(LivingEntity.class,
+                    caster.getBoundingBox().expand(SYNERGY_RANGE), entity -> entity != caster
+                            && entity.squaredDistanceTo(caster) <= SYNERGY_RANGE * SYNERGY_RANGE)
+                    .size();
+
+            Vec3d start = caster.getEyePos();
+            Vec3d end = start.add(caster.getRotationVector().multiply(BEAM_RANGE));
+            hits += world.getEntitiesByClass(LivingEntity.class, new Box(start, end).expand(0.5),
+                    entity -> entity != caster && (entity.getBoundingBox().expand(0.5)
+                            .contains(start)
+                            || entity.getBoundingBox().expand(0.5).raycast(start, end)
+                                    .isPresent()))
+                    .size();
+        }
+        return hits;
+    }
+
+    private static long indexed(ServerWorld world, List<LivingEntity> casters) {
+        SpellSpatialIndex index = SpellSpatialIndex.build(world);
+        long hits = 0;
+        for (LivingEntity caster : casters) {
+            Vec3d position = new Vec3d(caster.getX(), caster.getY(), caster.getZ());
+            hits += index.inRadius(position, AOE_RADIUS, entity -> entity != caster).size();
+            hits += index.inRadius(position, RITUAL_RADIUS, entity -> entity != caster).size();
+            for (int i = 0; i < 2; i++) {
+                hits += index.playersInRadius(position, SYNERGY_RANGE, p -> p != caster).size();
+            }
+            hits += index.inRadius(position, SYNERGY_RANGE, entity -> entity != caster).size();
+
+            Vec3d start = caster.getEyePos();
+            Vec3d end = start.add(caster.getRotationVector().multiply(BEAM_RANGE));
+            hits += index.alongRay(start, end, 0.5, entity -> entity != caster).size();
+        }
+        return hits;
+    }
+}
@@ -31,6 +31,35 @@ public class ServerConfig {
     public boolean enableCooldownSyncPackets = true; // Toggle cooldown sync packets
     public int cooldownSyncIntervalTicks = 5; // Separate cooldown sync cadence
 
+    public boolean enableSpellBundleCache = true; // Reuse resolved spells across restarts
+
+    // Per-player token buckets for client spell packets (burst = bucket size)
+    public boolean enablePacketRateLimit = true;
+    public float castPacketsPerSecond = 10.0f;
+    public int castPacketBurst = 20;
+    public float selectPacketsPerSecond = 5.0f;
+    public int selectPacketBurst = 10;
+
+    public float beamParticleSpacing = 0.5f; // Blocks between beam particles
+    public int beamMaxPierce = -1; // Default for spells without maxPierce; negative = no limit
+
+    // Merge spell particles per chunk, scale them with distance and drop duplicate sounds
+    public boolean enableEffectBudget = true;
+    public int particleBudgetPerPlayer = 512; // Spell particles sent to one player per tick
+
+    // Spells channel for their castTime before taking effect; damage or moving interrupts them
+    public boolean enableCastTimes = true;
+
+    // Binary audit log of cast attempts under logs/mam-casts
+    public boolean enableCastLog = true;
+    public int castLogBufferSize = 8192; // Attempts held for the writer; rounded to a power of 2
+    public int castLogMaxFileKb = 8192; // Uncompressed size before starting a new file
+    public int castLogMaxFiles = 20; // Oldest files are deleted beyond this
+
+    // Tick players' mana and cooldowns across worker threads once enough of them are awake
+    public boolean enableParallelManaTick = false;
+    public int parallelManaTickThreshold = 64; // Awake players needed before going parallel
+
     public static ServerConfig getInstance() {
         if (INSTANCE == null) {
             INSTANCE = load();
@@ -68,6 +97,34 @@ public class ServerConfig {
                 Boolean.parseBoolean(props.getProperty("enableCooldownSyncPackets", "true"));
         config.cooldownSyncIntervalTicks =
                 Integer.parseInt(props.getProperty("cooldownSyncIntervalTicks", "5"));
+        config.enableSpellBundleCache =
+                Boolean.parseBoolean(props.getProperty("enableSpellBundleCache", "true"));
+        config.enablePacketRateLimit =
+                Boolean.parseBoolean(props.getProperty("enablePacketRateLimit", "true"));
+        config.castPacketsPerSecond =
+                Float.parseFloat(props.getProperty("castPacketsPerSecond", "10.0"));
+        config.castPacketBurst = Integer.parseInt(props.getProperty("castPacketBurst", "20"));
+        config.selectPacketsPerSecond =
+                Float.parseFloat(props.getProperty("selectPacketsPerSecond", "5.0"));
+        config.selectPacketBurst = Integer.parseInt(props.getProperty("selectPacketBurst", "10"));
+        config.beamParticleSpacing =
+                Float.parseFloat(props.getProperty("beamParticleSpacing", "0.5"));
+        config.beamMaxPierce = Integer.parseInt(props.getProperty("beamMaxPierce", "-1"));
+        config.enableEffectBudget =
+                Boolean.parseBoolean(props.getProperty("enableEffectBudget", "true"));
+        config.particleBudgetPerPlayer =
+                Integer.parseInt(props.getProperty("particleBudgetPerPlayer", "512"));
+        config.enableCastTimes =
+                Boolean.parseBoolean(props.getProperty("enableCastTimes", "true"));
+        config.enableCastLog = Boolean.parseBoolean(props.getProperty("enableCastLog", "true"));
+        config.castLogBufferSize =
+                Integer.parseInt(props.getProperty("castLogBufferSize", "8192"));
+        config.castLogMaxFileKb = Integer.parseInt(props.getProperty("castLogMaxFileKb", "8192"));
+        config.castLogMaxFiles = Integer.parseInt(props.getProperty("castLogMaxFiles", "20"));
+        config.enableParallelManaTick =
+                Boolean.parseBoolean(props.getProperty("enableParallelManaTick", "false"));
+        config.parallelManaTickThreshold =
+                Integer.parseInt(props.getProperty("parallelManaTickThreshold", "64"));
 
         // Save if file didn't exist
         if (!Files.exists(CONFIG_PATH)) {
@@ -89,6 +146,23 @@ public class ServerConfig {
         props.setProperty("manaSyncIntervalTicks", String.valueOf(manaSyncIntervalTicks));
         props.setProperty("enableCooldownSyncPackets", String.valueOf(enableCooldownSyncPackets));
         props.setProperty("cooldownSyncIntervalTicks", String.valueOf(cooldownSyncIntervalTicks));
+        props.setProperty("enableSpellBundleCache", String.valueOf(enableSpellBundleCache));
+        props.setProperty("enablePacketRateLimit", String.valueOf(enablePacketRateLimit));
+        props.setProperty("castPacketsPerSecond", String.valueOf(castPacketsPerSecond));
+        props.setProperty("castPacketBurst", String.valueOf(castPacketBurst));
+        props.setProperty("selectPacketsPerSecond", String.valueOf(selectPacketsPerSecond));
+        props.setProperty("selectPacketBurst", String.valueOf(selectPacketBurst));
+        props.setProperty("beamParticleSpacing", String.valueOf(beamParticleSpacing));
+        props.setProperty("beamMaxPierce", String.valueOf(beamMaxPierce));
+        props.setProperty("enableEffectBudget", String.valueOf(enableEffectBudget));
+        props.setProperty("particleBudgetPerPlayer", String.valueOf(particleBudgetPerPlayer));
+        props.setProperty("enableCastTimes", String.valueOf(enableCastTimes));
+        props.setProperty("enableCastLog", String.valueOf(enableCastLog));
+        props.setProperty("castLogBufferSize", String.valueOf(castLogBufferSize));
+        props.setProperty("castLogMaxFileKb", String.valueOf(castLogMaxFileKb));
+        props.setProperty("castLogMaxFiles", String.valueOf(castLogMaxFiles));
+        props.setProperty("enableParallelManaTick", String.valueOf(enableParallelManaTick));
+        props.setProperty("parallelManaTickThreshold", String.valueOf(parallelManaTickThreshold));
 
         try {
             Files.createDirectories(CONFIG_PATH.getParent());
@@ -6,7 +6,13 @@ import java.util.Set;
 import java.util.UUID;
 import dk.mosberg.MAM;
 import dk.mosberg.spell.Spell;
+import dk.mosberg.spell.SpellCastScheduler;
+import dk.mosberg.spell.SpellEffectBudget;
+import dk.mosberg.spell.SpellRegistry;
 import dk.mosberg.spell.SpellSchool;
+import dk.mosberg.spell.SpellSpatialIndex;
+import dk.mosberg.spell.SpellStatTable;
+import dk.mosberg.spell.SpellTimingWheel;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.entity.Entity;
@@ -29,6 +35,7 @@ import net.minecraft.registry.RegistryKey;
 import net.minecraft.registry.RegistryKeys;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvent;
 import net.minecraft.sound.SoundEvents;
 import net.minecraft.storage.ReadView;
 import net.minecraft.storage.WriteView;
@@ -54,6 +61,8 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
             DataTracker.registerData(SpellProjectileEntity.class, TrackedDataHandlerRegistry.BYTE);
     private static final TrackedData<ItemStack> ITEM = DataTracker
             .registerData(SpellProjectileEntity.class, TrackedDataHandlerRegistry.ITEM_STACK);
+    private static final TrackedData<Byte> TIER_TRACKER =
+            DataTracker.registerData(SpellProjectileEntity.class, TrackedDataHandlerRegistry.BYTE);
 
     private SpellSchool school = SpellSchool.FIRE;
     private float damage = 2.0f;
@@ -89,6 +98,7 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
     private boolean detonationEnabled = false;
     private int detonationDelay = 0; // ticks until explosion
     private float detonationRadius = 3.0f;
+    private SpellTimingWheel.Task detonationTask; // Server side, once the fuse is lit
     private boolean proximityTrigger = false;
     private float proximityRange = 2.0f;
 
@@ -104,11 +114,13 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
         super(MAMEntities.SPELL_PROJECTILE, world);
         this.setOwner(owner);
         setSchool(spell.getSchool());
-        this.damage = spell.getDamage();
+        SpellStatTable stats = SpellRegistry.getStats();
+        this.damage = stats.getDamage(spell);
         this.knockback = spell.getKnockback();
-        this.tier = spell.getTier();
+        setTier(spell.getTier());
         float speed = Math.max(0.05f, spell.getProjectileSpeed());
-        this.maxAge = Math.min(200, Math.max(40, Math.round((spell.getRange() / speed) * 20f)));
+        this.maxAge =
+                Math.min(200, Math.max(40, Math.round((stats.getRange(spell) / speed) * 20f)));
 
         // Spawn a little in front of the caster to avoid self-collision
         Vec3d look = owner.getRotationVec(1.0F);
@@ -182,6 +194,7 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
         // Use safe defaults here; subclass fields are not initialized yet during super constructor
         builder.add(SCHOOL_TRACKER, (byte) SpellSchool.FIRE.ordinal());
         builder.add(ITEM, new ItemStack(MAM.PROJECTILE_FIRE));
+        builder.add(TIER_TRACKER, (byte) 1);
     }
 
     private ItemStack getDefaultItemStack() {
@@ -209,6 +222,15 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
         updateItemStack();
     }
 
+    private void setTier(int tier) {
+        this.tier = tier;
+        this.getDataTracker().set(TIER_TRACKER, (byte) tier);
+    }
+
+    public int getTier() {
+        return this.getDataTracker().get(TIER_TRACKER);
+    }
+
     public SpellSchool getSchool() {
         byte idx = this.getDataTracker().get(SCHOOL_TRACKER);
         SpellSchool[] values = SpellSchool.values();
@@ -230,13 +252,14 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
             return;
         }
 
-        // Detonation countdown
-        if (detonationEnabled && detonationDelay > 0) {
-            detonationDelay--;
-            if (detonationDelay <= 0) {
-                explode();
-                return;
-            }
+        // Light the fuse once; the scheduler sets it off, so nothing counts down per tick
+        if (detonationEnabled && detonationDelay > 0 && detonationTask == null
+                && !this.getEntityWorld().isClient()) {
+            detonationTask = SpellCastScheduler.schedule(detonationDelay, () -> {
+                if (!this.isRemoved()) {
+                    explode();
+                }
+            });
         }
 
         // Proximity trigger check
@@ -269,11 +292,9 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
         float drag = this.isTouchingWater() ? 0.8f : 0.99f;
         this.setVelocity(velocity.multiply(drag));
 
-        // Trail effects
+        // Trail effects (particles are spawned client-side, see getTrailParticle)
         applyTrailEffects();
 
-        spawnParticles();
-
         // Play trail sound periodically
         if (age % 20 == 0) {
             playTrailSound();
@@ -373,45 +394,31 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
         }
     }
 
-    private void spawnParticles() {
-        // Server-side spawn so it replicates to all clients without client imports
-        if (!(this.getEntityWorld() instanceof ServerWorld serverWorld)) {
-            return;
-        }
-
-        ParticleEffect effect;
-        int count;
-        switch (getSchool()) {
-            case FIRE -> {
-                effect = ParticleTypes.FLAME;
-                count = scaledTrailCount();
-            }
-            case WATER -> {
-                effect = ParticleTypes.SPLASH;
-                count = scaledTrailCount();
-            }
-            case AIR -> {
-                effect = ParticleTypes.CLOUD;
-                count = scaledTrailCount();
-            }
-            case EARTH -> {
-                effect = new BlockStateParticleEffect(ParticleTypes.BLOCK,
-                        Blocks.DIRT.getDefaultState());
-                count = scaledTrailCount();
-            }
-            default -> {
-                effect = ParticleTypes.CRIT;
-                count = Math.max(1, scaledTrailCount() - 1);
-            }
-        }
+    /**
+     * Trail particle for this projectile's school. The trail is spawned by each client every tick
+     * from the tracked school and tier, so it costs no packets.
+     */
+    public ParticleEffect getTrailParticle() {
+        return switch (getSchool()) {
+            case FIRE -> ParticleTypes.FLAME;
+            case WATER -> ParticleTypes.SPLASH;
+            case AIR -> ParticleTypes.CLOUD;
+            case EARTH -> new BlockStateParticleEffect(ParticleTypes.BLOCK,
+                    Blocks.DIRT.getDefaultState());
+        };
+    }
 
-        serverWorld.spawnParticles(effect, this.getX(), this.getBodyY(0.5), this.getZ(), count,
-                0.05, 0.05, 0.05, 0.02);
+    /**
+     * Trail particles per tick for a viewer {@code distance} blocks away, scaled down with distance
+     * by {@link SpellEffectBudget#lodCount}.
+     */
+    public int getTrailParticleCount(double distance) {
+        return SpellEffectBudget.lodCount(scaledTrailCount(), distance);
     }
 
     private int scaledTrailCount() {
         // Scale trail particle count per tier: tier1=2, tier2=3-4, tier3=5-8, tier4=9-12
-        return switch (this.tier) {
+        return switch (getTier()) {
             case 1 -> 2;
             case 2 -> 4;
             case 3 -> 7;
@@ -451,9 +458,9 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
             }
         }
 
-        int count = scaledImpactCount(baseCount);
-        serverWorld.spawnParticles(effect, this.getX(), this.getBodyY(0.5), this.getZ(), count, 0.3,
-                0.3, 0.3, 0.05);
+        // Merged and scaled per viewer by the effect budget
+        SpellEffectBudget.spawnParticles(serverWorld, effect, this.getX(), this.getBodyY(0.5),
+                this.getZ(), scaledImpactCount(baseCount), 0.3, 0.3, 0.3, 0.05);
     }
 
     private int scaledImpactCount(int base) {
@@ -486,25 +493,11 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
         }
 
         Vec3d currentPos = new Vec3d(this.getX(), this.getY(), this.getZ());
-        Box searchBox = new Box(currentPos.subtract(homingRadius, homingRadius, homingRadius),
-                currentPos.add(homingRadius, homingRadius, homingRadius));
-        @SuppressWarnings("null")
-        List<LivingEntity> entities = serverWorld.getEntitiesByClass(LivingEntity.class, searchBox,
-                entity -> entity != this.getOwner() && entity.isAlive()
+        List<LivingEntity> closest = SpellSpatialIndex.of(serverWorld).nearest(currentPos,
+                homingRadius, 1, entity -> entity != this.getOwner() && entity.isAlive()
                         && !hitEntities.contains(entity.getUuid()));
 
-        LivingEntity closest = null;
-        double closestDist = Double.MAX_VALUE;
-
-        for (LivingEntity entity : entities) {
-            double dist = this.squaredDistanceTo(entity);
-            if (dist < closestDist) {
-                closest = entity;
-                closestDist = dist;
-            }
-        }
-
-        return closest;
+        return closest.isEmpty() ? null : closest.get(0);
     }
 
     private Vec3d applyTrajectory(Vec3d velocity) {
@@ -546,8 +539,7 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
         if (frostTrail) {
             // Apply slowness to nearby entities
             Box areaBox = new Box(currentPos.subtract(2, 2, 2), currentPos.add(2, 2, 2));
-            @SuppressWarnings("null")
-            List<LivingEntity> nearby = serverWorld.getEntitiesByClass(LivingEntity.class, areaBox,
+            List<LivingEntity> nearby = SpellSpatialIndex.of(serverWorld).inBox(areaBox,
                     entity -> entity != this.getOwner());
 
             for (LivingEntity entity : nearby) {
@@ -567,8 +559,7 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
             // Ignite entities
             Box areaBox =
                     new Box(currentPos.subtract(1.5, 1.5, 1.5), currentPos.add(1.5, 1.5, 1.5));
-            @SuppressWarnings("null")
-            List<LivingEntity> nearby = serverWorld.getEntitiesByClass(LivingEntity.class, areaBox,
+            List<LivingEntity> nearby = SpellSpatialIndex.of(serverWorld).inBox(areaBox,
                     entity -> entity != this.getOwner());
 
             for (LivingEntity entity : nearby) {
@@ -590,11 +581,16 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
         Vec3d currentPos = new Vec3d(this.getX(), this.getY(), this.getZ());
         Box searchBox = new Box(currentPos.subtract(proximityRange, proximityRange, proximityRange),
                 currentPos.add(proximityRange, proximityRange, proximityRange));
-        @SuppressWarnings("null")
-        List<LivingEntity> nearby = serverWorld.getEntitiesByClass(LivingEntity.class, searchBox,
+        return SpellSpatialIndex.of(serverWorld).anyInBox(searchBox,
                 entity -> entity != this.getOwner());
+    }
 
-        return !nearby.isEmpty();
+    @Override
+    public void remove(Entity.RemovalReason reason) {
+        if (detonationTask != null) {
+            detonationTask.cancel();
+        }
+        super.remove(reason);
     }
 
     private void explode() {
@@ -618,29 +614,11 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
 
         Vec3d targetPos =
                 new Vec3d(currentTarget.getX(), currentTarget.getY(), currentTarget.getZ());
-        Box searchBox = new Box(targetPos.subtract(chainRadius, chainRadius, chainRadius),
-                targetPos.add(chainRadius, chainRadius, chainRadius));
-        @SuppressWarnings("null")
-        List<LivingEntity> entities = serverWorld.getEntitiesByClass(LivingEntity.class, searchBox,
-                entity -> entity != this.getOwner() && entity != currentTarget
+        List<LivingEntity> closest = SpellSpatialIndex.of(serverWorld).nearest(targetPos,
+                chainRadius, 1, entity -> entity != this.getOwner() && entity != currentTarget
                         && !hitEntities.contains(entity.getUuid()) && entity.isAlive());
 
-        if (entities.isEmpty()) {
-            return null;
-        }
-
-        LivingEntity closest = entities.get(0);
-        double closestDist = currentTarget.squaredDistanceTo(closest);
-
-        for (LivingEntity entity : entities) {
-            double dist = currentTarget.squaredDistanceTo(entity);
-            if (dist < closestDist) {
-                closest = entity;
-                closestDist = dist;
-            }
-        }
-
-        return closest;
+        return closest.isEmpty() ? null : closest.get(0);
     }
 
     private void chainToTarget(LivingEntity target) {
@@ -653,60 +631,46 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
 
         // Spawn chain effect particles
         if (this.getEntityWorld() instanceof ServerWorld serverWorld) {
-            serverWorld.spawnParticles(ParticleTypes.ELECTRIC_SPARK, this.getX(), this.getY(),
-                    this.getZ(), 20, 0.3, 0.3, 0.3, 0.1);
+            SpellEffectBudget.spawnParticles(serverWorld, ParticleTypes.ELECTRIC_SPARK,
+                    this.getX(), this.getY(), this.getZ(), 20, 0.3, 0.3, 0.3, 0.1);
         }
     }
 
     private void playSpawnSound() {
-        if (!(this.getEntityWorld() instanceof ServerWorld serverWorld)) {
-            return;
-        }
-
         switch (school) {
-            case FIRE -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.ITEM_FIRECHARGE_USE, SoundCategory.PLAYERS, 0.5f, 1.0f);
-            case WATER -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.ENTITY_BOAT_PADDLE_WATER, SoundCategory.PLAYERS, 0.5f, 1.2f);
-            case AIR -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.ENTITY_BREEZE_SHOOT, SoundCategory.PLAYERS, 0.5f, 1.3f);
-            case EARTH -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.BLOCK_GRAVEL_BREAK, SoundCategory.PLAYERS, 0.5f, 0.8f);
+            case FIRE -> playBudgetedSound(SoundEvents.ITEM_FIRECHARGE_USE, 0.5f, 1.0f);
+            case WATER -> playBudgetedSound(SoundEvents.ENTITY_BOAT_PADDLE_WATER, 0.5f, 1.2f);
+            case AIR -> playBudgetedSound(SoundEvents.ENTITY_BREEZE_SHOOT, 0.5f, 1.3f);
+            case EARTH -> playBudgetedSound(SoundEvents.BLOCK_GRAVEL_BREAK, 0.5f, 0.8f);
         }
     }
 
     private void playTrailSound() {
-        if (!(this.getEntityWorld() instanceof ServerWorld serverWorld)) {
-            return;
-        }
-
         switch (school) {
-            case FIRE -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.BLOCK_FIRE_AMBIENT, SoundCategory.PLAYERS, 0.2f, 1.5f);
-            case WATER -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.AMBIENT_UNDERWATER_LOOP_ADDITIONS_ULTRA_RARE, SoundCategory.PLAYERS,
-                    0.1f, 2.0f);
-            case AIR -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.ITEM_ELYTRA_FLYING, SoundCategory.PLAYERS, 0.1f, 1.8f);
+            case FIRE -> playBudgetedSound(SoundEvents.BLOCK_FIRE_AMBIENT, 0.2f, 1.5f);
+            case WATER -> playBudgetedSound(
+                    SoundEvents.AMBIENT_UNDERWATER_LOOP_ADDITIONS_ULTRA_RARE, 0.1f, 2.0f);
+            case AIR -> playBudgetedSound(SoundEvents.ITEM_ELYTRA_FLYING, 0.1f, 1.8f);
             case EARTH -> {
             } // Earth is silent
         }
     }
 
     private void playImpactSound() {
-        if (!(this.getEntityWorld() instanceof ServerWorld serverWorld)) {
-            return;
+        switch (school) {
+            case FIRE -> playBudgetedSound(SoundEvents.ENTITY_GENERIC_EXPLODE.value(), 0.4f, 1.5f);
+            case WATER -> playBudgetedSound(SoundEvents.ENTITY_GENERIC_SPLASH, 0.6f, 1.0f);
+            case AIR -> playBudgetedSound(SoundEvents.ENTITY_BREEZE_HURT, 0.5f, 1.2f);
+            case EARTH -> playBudgetedSound(SoundEvents.BLOCK_STONE_BREAK, 0.6f, 0.9f);
         }
+    }
 
-        switch (school) {
-            case FIRE -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.ENTITY_GENERIC_EXPLODE, SoundCategory.PLAYERS, 0.4f, 1.5f);
-            case WATER -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.ENTITY_GENERIC_SPLASH, SoundCategory.PLAYERS, 0.6f, 1.0f);
-            case AIR -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.ENTITY_BREEZE_HURT, SoundCategory.PLAYERS, 0.5f, 1.2f);
-            case EARTH -> serverWorld.playSound(null, this.getX(), this.getY(), this.getZ(),
-                    SoundEvents.BLOCK_STONE_BREAK, SoundCategory.PLAYERS, 0.6f, 0.9f);
+    private void playBudgetedSound(SoundEvent sound, float volume, float pitch) {
+        // Mass spells fire many projectiles at once; the budget drops identical nearby sounds
+        if (this.getEntityWorld() instanceof ServerWorld serverWorld) {
+            SpellEffectBudget.playSound(serverWorld,
+                    new Vec3d(this.getX(), this.getY(), this.getZ()), sound, SoundCategory.PLAYERS,
+                    volume, pitch);
         }
     }
 
@@ -742,7 +706,10 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
         view.putFloat("TrajectoryFrequency", trajectoryFrequency);
 
         view.putBoolean("DetonationEnabled", detonationEnabled);
-        view.putInt("DetonationDelay", detonationDelay);
+        // Save what is left of a lit fuse so it resumes where it was
+        view.putInt("DetonationDelay", detonationTask != null
+                ? (int) Math.max(1, detonationTask.remainingTicks())
+                : detonationDelay);
         view.putFloat("DetonationRadius", detonationRadius);
         view.putBoolean("ProximityTrigger", proximityTrigger);
         view.putFloat("ProximityRange", proximityRange);
@@ -763,7 +730,7 @@ public class SpellProjectileEntity extends ProjectileEntity implements FlyingIte
 
         this.damage = view.getFloat("Damage", this.damage);
         this.knockback = view.getFloat("Knockback", this.knockback);
-        this.tier = view.getInt("Tier", this.tier);
+        setTier(view.getInt("Tier", this.tier));
         this.age = view.getInt("Age", this.age);
 
         // Advanced behaviors
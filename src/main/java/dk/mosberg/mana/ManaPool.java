@@ -6,11 +6,16 @@ package dk.mosberg.mana;
  * Features implemented: temporary capacity modifiers, conditional regeneration (biome/dimension),
  * drain effects, overfill mechanics (150% max), efficiency tracking, resonance effects, critical
  * threshold checking, and corruption mechanics for stale mana.
+ *
+ * <p>
+ * A view of one pool of a {@link PlayerManaData}: current mana, capacity and regen rate live in
+ * whichever {@link ManaStore} slot the player has at the moment, and are read from there on every
+ * call. The bookkeeping that does not regenerate stays here.
  */
 public class ManaPool {
-    private final int baseMaxCapacity;
-    private float currentMana;
-    private final float baseRegenRate;
+    private final PlayerManaData owner;
+    private final int pool; // Ordinal of the pool type
+    private int baseMaxCapacity;
     private float temporaryCapacityModifier = 0; // Added capacity from buffs
     private float drainRate = 0; // Mana drain per tick
     private float efficiencyModifier = 1.0f; // Resonance effect
@@ -18,16 +23,42 @@ public class ManaPool {
     private float totalManaWasted = 0; // Mana wasted due to overfill regen
     private int ticksSinceLastUse = 0; // Tracks stale/corruption effect
 
-    public ManaPool(int maxCapacity, float regenRate) {
-        this.baseMaxCapacity = maxCapacity;
-        this.currentMana = maxCapacity;
-        this.baseRegenRate = regenRate;
+    ManaPool(PlayerManaData owner, int pool) {
+        this.owner = owner;
+        this.pool = pool;
     }
 
-    public ManaPool(int maxCapacity, float currentMana, float regenRate) {
+    /**
+     * Replaces the pool with a new one of the given capacity, mana (at most the capacity) and regen
+     * rate, dropping modifiers and statistics.
+     */
+    void load(int maxCapacity, float currentMana, float regenRate) {
         this.baseMaxCapacity = maxCapacity;
-        this.currentMana = Math.min(currentMana, maxCapacity);
-        this.baseRegenRate = regenRate;
+        this.temporaryCapacityModifier = 0;
+        this.drainRate = 0;
+        this.efficiencyModifier = 1.0f;
+        resetEfficiencyTracking();
+        ManaStore store = owner.store();
+        int index = index();
+        store.capacity[index] = maxCapacity;
+        store.current[index] = Math.min(currentMana, maxCapacity);
+        store.setRegen(index, regenRate);
+    }
+
+    private int index() {
+        return owner.slot() * ManaStore.POOLS + pool;
+    }
+
+    private float current() {
+        return owner.store().current[index()];
+    }
+
+    private void setCurrent(float mana) {
+        owner.store().current[index()] = mana;
+    }
+
+    private void updateCapacity() {
+        owner.store().capacity[index()] = getMaxCapacity();
     }
 
     /**
@@ -38,8 +69,9 @@ public class ManaPool {
      */
     public boolean consume(float amount) {
         float adjustedAmount = amount / efficiencyModifier;
+        float currentMana = current();
         if (currentMana >= adjustedAmount) {
-            currentMana -= adjustedAmount;
+            setCurrent(currentMana - adjustedAmount);
             totalManaConsumed += amount; // Track actual consumption
             ticksSinceLastUse = 0; // Reset stale counter
             // Improve efficiency with repeated use (resonance effect)
@@ -66,8 +98,9 @@ public class ManaPool {
         ticksSinceLastUse++;
 
         int effectiveMaxCapacity = getMaxCapacity();
+        float currentMana = current();
         if (currentMana < effectiveMaxCapacity) {
-            float netRegen = baseRegenRate - drainRate;
+            float netRegen = getRegenRate() - drainRate;
 
             // Apply environmental modifier (biome/dimension effects)
             netRegen *= environmentalModifier;
@@ -76,10 +109,10 @@ public class ManaPool {
             float corruptionPenalty = getCorruptionModifier();
             netRegen *= corruptionPenalty;
 
-            currentMana = Math.min(currentMana + netRegen, effectiveMaxCapacity);
+            setCurrent(Math.min(currentMana + netRegen, effectiveMaxCapacity));
         } else if (currentMana >= effectiveMaxCapacity) {
             // Track wasted regen (efficiency metric)
-            totalManaWasted += baseRegenRate;
+            totalManaWasted += getRegenRate();
         }
 
         // Slowly decay efficiency when not in use
@@ -162,9 +195,9 @@ public class ManaPool {
         int effectiveMaxCapacity = getMaxCapacity();
         if (allowOverfill) {
             // Allow overfill up to 150% of max capacity
-            currentMana = Math.min(currentMana + amount, effectiveMaxCapacity * 1.5f);
+            setCurrent(Math.min(current() + amount, effectiveMaxCapacity * 1.5f));
         } else {
-            currentMana = Math.min(currentMana + amount, effectiveMaxCapacity);
+            setCurrent(Math.min(current() + amount, effectiveMaxCapacity));
         }
     }
 
@@ -183,7 +216,7 @@ public class ManaPool {
      * @param amount New mana value (clamped to 0-max)
      */
     public void set(float amount) {
-        this.currentMana = Math.max(0, Math.min(amount, getMaxCapacity()));
+        setCurrent(Math.max(0, Math.min(amount, getMaxCapacity())));
     }
 
     /**
@@ -194,13 +227,13 @@ public class ManaPool {
      */
     public float restore(float amount) {
         int maxCapacity = getMaxCapacity();
-        float newMana = currentMana + amount;
+        float newMana = current() + amount;
 
         if (newMana > maxCapacity) {
-            currentMana = maxCapacity;
+            setCurrent(maxCapacity);
             return newMana - maxCapacity; // Return overflow
         } else {
-            currentMana = newMana;
+            setCurrent(newMana);
             return 0f; // No overflow
         }
     }
@@ -210,6 +243,7 @@ public class ManaPool {
      */
     public void addTemporaryCapacity(float amount) {
         this.temporaryCapacityModifier += amount;
+        updateCapacity();
     }
 
     /**
@@ -233,10 +267,11 @@ public class ManaPool {
         this.temporaryCapacityModifier = 0;
         this.drainRate = 0;
         this.efficiencyModifier = 1.0f;
+        updateCapacity();
     }
 
     public float getCurrentMana() {
-        return currentMana;
+        return current();
     }
 
     public int getMaxCapacity() {
@@ -248,7 +283,7 @@ public class ManaPool {
     }
 
     public float getRegenRate() {
-        return baseRegenRate;
+        return owner.store().regen[index()];
     }
 
     public float getEfficiencyModifier() {
@@ -257,15 +292,15 @@ public class ManaPool {
 
     public float getPercentage() {
         int effectiveMax = getMaxCapacity();
-        return effectiveMax > 0 ? currentMana / effectiveMax : 0;
+        return effectiveMax > 0 ? current() / effectiveMax : 0;
     }
 
     public boolean isEmpty() {
-        return currentMana <= 0;
+        return current() <= 0;
     }
 
     public boolean isFull() {
-        return currentMana >= getMaxCapacity();
+        return current() >= getMaxCapacity();
     }
 
     /**
@@ -279,7 +314,7 @@ public class ManaPool {
      * Check if mana is overfilled beyond base capacity.
      */
     public boolean isOverfilled() {
-        return currentMana > baseMaxCapacity;
+        return current() > baseMaxCapacity;
     }
 
     /**
@@ -1,22 +1,50 @@
 package dk.mosberg.mana;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import dk.mosberg.MAM;
 import dk.mosberg.config.ServerConfig;
 import dk.mosberg.item.SpellbookItem;
 import dk.mosberg.network.ServerNetworkHandler;
+import dk.mosberg.spell.SpellRegistry;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
-import net.minecraft.server.world.ServerWorld;
-import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.biome.Biome;
 
 /**
  * Handles server-side mana regeneration and cooldown ticking for all players. Applies conditional
  * regen modifiers based on environment, player state, and combat status.
+ *
+ * <p>
+ * Mana regenerates lazily against {@link #getTick()}, so players whose casting data is
+ * {@link PlayerCastingData#isDormant() dormant} (idle with full mana) are not ticked; they only get
+ * the selected-cooldown sync. Awake players keep their mana in a slot of
+ * {@link ManaStore#server()}, which regenerates all of them at the start of the tick in one pass
+ * over its arrays; going dormant or offline gives the slot back. On a sync tick only players
+ * whose mana data changed since the last one are synced, and
+ * {@link ServerNetworkHandler#syncManaToClient} sends them only what changed.
+ *
+ * <p>
+ * Each tick reads the world for every awake player on the server thread first, then ticks their
+ * casting data, then sends syncs. With {@link ServerConfig#enableParallelManaTick} the middle step
+ * is spread over worker threads once {@link ServerConfig#parallelManaTickThreshold} players are
+ * awake; {@code /mam benchmark replay} checks that this ends in the same state as ticking them
+ * one by one.
  */
 public class ManaRegenerationHandler {
+    private static long tick; // Server thread only
+
+    // Reused each tick; server thread only
+    private static final List<ServerPlayerEntity> AWAKE_PLAYERS = new ArrayList<>();
+    private static final List<PlayerCastingData> AWAKE_DATA = new ArrayList<>();
+
+    private static ForkJoinPool tickPool; // Created on first parallel tick
 
     @SuppressWarnings("null")
     public static void register() {
@@ -24,41 +52,86 @@ public class ManaRegenerationHandler {
 
         // Initial sync on join
         ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+            // No regeneration while offline
+            handler.getPlayer()
+                    .getAttachedOrCreate(ManaAttachments.PLAYER_CASTING, PlayerCastingData::new)
+                    .getManaData().resume();
             ServerNetworkHandler.syncManaToClient(handler.getPlayer());
         });
 
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            PlayerCastingData castingData =
+                    handler.getPlayer().getAttached(ManaAttachments.PLAYER_CASTING);
+            if (castingData != null) {
+                castingData.getManaData().releaseSlot();
+            }
+        });
+
+        // Spells a player knew or had on cooldown may be back after a reload
+        ServerLifecycleEvents.END_DATA_PACK_RELOAD.register((server, resourceManager, success) -> {
+            if (success) {
+                resolveUnloadedSpells(server);
+            }
+        });
+
         final int syncInterval = Math.max(0, config.manaSyncIntervalTicks);
         final boolean syncEnabled = config.enableManaSyncPackets && syncInterval > 0;
         final int cooldownInterval = Math.max(0, config.cooldownSyncIntervalTicks);
         final boolean cooldownEnabled = config.enableCooldownSyncPackets && cooldownInterval > 0;
 
+        final boolean parallelEnabled = config.enableParallelManaTick;
+        final int parallelThreshold = Math.max(1, config.parallelManaTickThreshold);
+
         ServerTickEvents.END_SERVER_TICK.register(server -> {
+            tick++;
+            ManaStore.server().advance(tick);
             int currentTick = (int) (server.getOverworld().getTime() % Integer.MAX_VALUE);
+            boolean manaSyncTick = syncEnabled && currentTick % syncInterval == 0;
+            boolean cooldownSyncTick = cooldownEnabled && currentTick % cooldownInterval == 0;
 
+            // World reads stay on the server thread: collect who needs ticking and their modifiers
+            AWAKE_PLAYERS.clear();
+            AWAKE_DATA.clear();
             for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
                 PlayerCastingData castingData = Objects.requireNonNull(
                         player.getAttachedOrCreate(ManaAttachments.PLAYER_CASTING,
                                 PlayerCastingData::new),
                         "Player casting data attachment should always exist");
 
+                if (castingData.isDormant()) {
+                    castingData.getManaData().releaseSlot();
+                    if (manaSyncTick && castingData.getManaData().consumeSyncFlag()) {
+                        ServerNetworkHandler.syncManaToClient(player);
+                    }
+                    // The client does not count cooldowns down itself, so it still needs the last
+                    // one reaching zero and any change of selected spell
+                    if (cooldownSyncTick) {
+                        syncSelectedCooldown(player, castingData);
+                    }
+                    continue;
+                }
+
                 // Apply conditional regen modifiers
                 applyConditionalModifiers(player, castingData);
+                castingData.getManaData().claimSlot(ManaStore.server());
+                AWAKE_PLAYERS.add(player);
+                AWAKE_DATA.add(castingData);
+            }
+
+            // Tick mana regen and cooldown timers
+            tickPlayers(AWAKE_DATA,
+                    parallelEnabled && AWAKE_DATA.size() >= parallelThreshold);
 
-                // Tick mana regen and cooldown timers
-                castingData.tick();
+            for (int i = 0; i < AWAKE_PLAYERS.size(); i++) {
+                ServerPlayerEntity player = AWAKE_PLAYERS.get(i);
+                PlayerCastingData castingData = AWAKE_DATA.get(i);
 
-                if (syncEnabled && currentTick % syncInterval == 0) {
+                if (manaSyncTick && castingData.getManaData().consumeSyncFlag()) {
                     ServerNetworkHandler.syncManaToClient(player);
                 }
 
-                if (cooldownEnabled && currentTick % cooldownInterval == 0) {
-                    var selectedSpell = getSelectedSpellId(player);
-                    if (selectedSpell != null) {
-                        float remaining = castingData.getCooldownTracker()
-                                .getRemainingCooldown(selectedSpell);
-                        ServerNetworkHandler.syncSelectedCooldownToClient(player, selectedSpell,
-                                remaining);
-                    }
+                if (cooldownSyncTick) {
+                    syncSelectedCooldown(player, castingData);
                 }
             }
         });
@@ -66,17 +139,100 @@ public class ManaRegenerationHandler {
         MAM.LOGGER.info("Registered mana regeneration and cooldown handler");
     }
 
+    private static void syncSelectedCooldown(ServerPlayerEntity player,
+            PlayerCastingData castingData) {
+        var selectedSpell = getSelectedSpellId(player);
+        int rawId = selectedSpell != null ? SpellRegistry.getRawId(selectedSpell) : -1;
+        if (rawId >= 0) {
+            float remaining = castingData.getCooldownTracker().getRemainingCooldown(rawId);
+            ServerNetworkHandler.syncSelectedCooldownToClient(player, rawId, remaining);
+        }
+    }
+
+    /**
+     * Lets every online player's casting data pick up spells that were not loaded before; see
+     * {@link PlayerCastingData#resolveUnloadedSpells()}. Offline players do so when they are
+     * loaded.
+     */
+    public static void resolveUnloadedSpells(MinecraftServer server) {
+        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+            PlayerCastingData castingData = player.getAttached(ManaAttachments.PLAYER_CASTING);
+            if (castingData != null) {
+                castingData.resolveUnloadedSpells();
+            }
+        }
+    }
+
     /**
-     * Applies conditional mana regeneration modifiers based on player state.
+     * Runs {@link PlayerCastingData#tick()} for each player, split into one chunk per worker of a
+     * shared pool when {@code parallel}, and returns once all are done. The tick only touches the
+     * player's own data, so the result is the same either way; everything that reads the world
+     * must happen before, and syncs after.
+     */
+    public static void tickPlayers(List<PlayerCastingData> players, boolean parallel) {
+        if (!parallel || players.size() < 2) {
+            players.forEach(PlayerCastingData::tick);
+            return;
+        }
+
+        ForkJoinPool pool = getTickPool();
+        int chunks = Math.min(pool.getParallelism(), players.size());
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            List<PlayerCastingData> chunk = players.subList(players.size() * i / chunks,
+                    players.size() * (i + 1) / chunks);
+            tasks.add(pool.submit(() -> chunk.forEach(PlayerCastingData::tick)));
+        }
+        tasks.forEach(ForkJoinTask::join);
+    }
+
+    private static synchronized ForkJoinPool getTickPool() {
+        if (tickPool == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            tickPool = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread thread =
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("MAM mana tick " + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return tickPool;
+    }
+
+    /**
+     * Server ticks since startup, counted at the end of each tick; the clock lazy regeneration is
+     * measured against.
+     */
+    public static long getTick() {
+        return tick;
+    }
+
+    /**
+     * Applies conditional mana regeneration modifiers based on player state, if it changed since
+     * the last tick; see {@link RegenContext}.
      */
     private static void applyConditionalModifiers(ServerPlayerEntity player,
             PlayerCastingData castingData) {
-        PlayerManaData manaData = castingData.getManaData();
+        RegenContext context = castingData.getRegenContext();
+        if (context.update(player)) {
+            castingData.getManaData().setEfficiencyModifier(context.efficiency());
+        }
+    }
+
+    /**
+     * The regen efficiency for a player in the given situation. Kept free of the player and world
+     * so the cast replay can drive it with synthetic players.
+     *
+     * @param inCombat Attacked within the last 5 seconds
+     * @param temperature Temperature of the biome the player stands in
+     * @param lowHealth Below 30% health
+     */
+    public static float regenEfficiency(boolean inCombat, boolean sneaking, float temperature,
+            boolean submerged, boolean lowHealth) {
         float efficiencyModifier = 1.0f;
 
         // Check safe zone vs combat (no recent damage)
-        boolean inCombat = player.age - player.getLastAttackTime() < 100; // 5 seconds
-        if (!inCombat && player.isSneaking()) {
+        if (!inCombat && sneaking) {
             // Meditation mode: +50% regen when sneaking and not in combat
             efficiencyModifier *= 1.5f;
         } else if (inCombat) {
@@ -84,32 +240,26 @@ public class ManaRegenerationHandler {
             efficiencyModifier *= 0.75f;
         }
 
-        // Check environment
-        ServerWorld world = (ServerWorld) player.getEntityWorld();
-        BlockPos pos = player.getBlockPos();
-
         // Biome-based modifiers
-        Biome biome = world.getBiome(pos).value();
-        if (biome.getTemperature() > 1.5f) {
+        if (temperature > 1.5f) {
             // Hot biomes: -10% regen
             efficiencyModifier *= 0.9f;
-        } else if (biome.getTemperature() < 0.2f) {
+        } else if (temperature < 0.2f) {
             // Cold biomes: +10% regen
             efficiencyModifier *= 1.1f;
         }
 
         // Underwater: +20% regen (water conducts mana)
-        if (player.isSubmergedInWater()) {
+        if (submerged) {
             efficiencyModifier *= 1.2f;
         }
 
         // Low health: -50% regen (body prioritizes healing)
-        if (player.getHealth() < player.getMaxHealth() * 0.3f) {
+        if (lowHealth) {
             efficiencyModifier *= 0.5f;
         }
 
-        // Apply the calculated modifier
-        manaData.setEfficiencyModifier(efficiencyModifier);
+        return efficiencyModifier;
     }
 
     /**
@@ -0,0 +1,287 @@
+package dk.mosberg.mana;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import dk.mosberg.MAM;
+
+/**
+ * The regenerating mana values of many players in flat primitive arrays, one slot per player;
+ * {@link PlayerManaData} and {@link ManaPool} read and write their numbers here.
+ *
+ * <p>
+ * Per pool, at {@code slot * POOLS + pool ordinal}: current mana, capacity, base regen rate, regen
+ * rate after the player's efficiency, drain effect and burnout counter. Per slot: the efficiency,
+ * the tick the values are current as of, and whether they changed since the client was last sent
+ * them. Callers index the arrays directly but must not hold on to them, as claiming a slot may
+ * replace them with larger ones.
+ *
+ * <p>
+ * {@link #server()} holds every awake online player. {@link #advance} moves all of its slots one
+ * tick forward in a single pass over the arrays, with the Vector API when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} and a plain loop otherwise; both give the same
+ * result. Free slots have zero capacity and zero mana, which the pass leaves alone. Dormant and
+ * offline players give their slot back and keep their values in a private one-slot store, which
+ * catches up in closed form whenever it is read ({@link #settle}).
+ *
+ * <p>
+ * Slots are claimed and freed on the server thread only, never while
+ * {@link ManaRegenerationHandler#tickPlayers} runs; during that, each worker thread writes only
+ * the slots of the players it ticks.
+ */
+public final class ManaStore {
+    static final int POOLS = ManaPoolType.values().length;
+    static final float DRAIN_DECAY = 0.01f; // Drain lost per tick
+
+    private static final ManaStore SERVER = new ManaStore(64);
+    private static final Kernel KERNEL = loadKernel();
+
+    // Per pool
+    float[] current;
+    float[] capacity;
+    float[] regen;
+    float[] rate; // regen * efficiency, what one tick adds
+    float[] drain;
+    int[] burnout;
+
+    // Per slot
+    float[] efficiency;
+    long[] updated;
+    boolean[] dirty;
+
+    private final BitSet occupied = new BitSet();
+    private long advancedTo = Long.MIN_VALUE;
+
+    /**
+     * One tick of regeneration, drain decay and burnout decay for the pools in {@code [from, to)}.
+     */
+    interface Kernel {
+        void advance(ManaStore store, int from, int to);
+    }
+
+    /**
+     * A store for players not tied to the server, like the fake players of a cast replay.
+     */
+    public ManaStore() {
+        this(64);
+    }
+
+    ManaStore(int slots) {
+        current = new float[slots * POOLS];
+        capacity = new float[slots * POOLS];
+        regen = new float[slots * POOLS];
+        rate = new float[slots * POOLS];
+        drain = new float[slots * POOLS];
+        burnout = new int[slots * POOLS];
+        efficiency = new float[slots];
+        updated = new long[slots];
+        dirty = new boolean[slots];
+    }
+
+    /**
+     * The store of every awake online player.
+     */
+    public static ManaStore server() {
+        return SERVER;
+    }
+
+    /**
+     * Whether {@link #advance} runs on the Vector API.
+     */
+    public static boolean isVectorized() {
+        return !(KERNEL instanceof ScalarKernel);
+    }
+
+    public int getSlotsInUse() {
+        return occupied.cardinality();
+    }
+
+    /**
+     * Brings every claimed slot up to {@code tick}: any that fell more than one tick behind first
+     * catch up to the tick before in closed form, then all take the last tick in one pass. Does
+     * nothing if the store already reached {@code tick}.
+     */
+    public void advance(long tick) {
+        if (tick <= advancedTo) {
+            return;
+        }
+        advancedTo = tick;
+        int used = occupied.length();
+        for (int slot = occupied.nextSetBit(0); slot >= 0; slot = occupied.nextSetBit(slot + 1)) {
+            settle(slot, tick - 1);
+        }
+        KERNEL.advance(this, 0, used * POOLS);
+        Arrays.fill(updated, 0, used, tick);
+    }
+
+    /**
+     * Brings one slot up to {@code tick} in closed form: each elapsed tick, drains fall by
+     * {@link #DRAIN_DECAY}, burnout counters by one, and every pool regains its rate times
+     * (1 - drain), capped at capacity. Overfill beyond capacity is lost, as with a single tick.
+     */
+    void settle(int slot, long tick) {
+        long elapsed = tick - updated[slot];
+        if (elapsed <= 0) {
+            return;
+        }
+        updated[slot] = tick;
+
+        for (int i = slot * POOLS; i < (slot + 1) * POOLS; i++) {
+            float drained = drain[i];
+            if (current[i] != capacity[i]) {
+                // The drain is above zero for the first `lossTicks` ticks; subtract what it took
+                long lossTicks = drained > 0
+                        ? Math.min(elapsed, (long) Math.ceil(drained / DRAIN_DECAY) - 1)
+                        : 0;
+                double lost = lossTicks * (double) drained
+                        - DRAIN_DECAY * lossTicks * (lossTicks + 1) / 2.0;
+                double gain = rate[i] * (elapsed - Math.max(0, lost));
+                float next = (float) Math.max(0, Math.min(current[i] + gain, capacity[i]));
+                if (next != current[i]) {
+                    current[i] = next;
+                    dirty[slot] = true;
+                }
+            }
+            if (drained > 0) {
+                drain[i] = Math.max(0, drained - DRAIN_DECAY * elapsed);
+                dirty[slot] = true; // The synced regen rate includes the drain
+            }
+            if (burnout[i] > 0) {
+                burnout[i] = (int) Math.max(0, burnout[i] - elapsed);
+            }
+        }
+    }
+
+    void setRegen(int index, float regenRate) {
+        regen[index] = regenRate;
+        rate[index] = regenRate * efficiency[index / POOLS];
+    }
+
+    void setEfficiency(int slot, float modifier) {
+        efficiency[slot] = modifier;
+        for (int i = slot * POOLS; i < (slot + 1) * POOLS; i++) {
+            rate[i] = regen[i] * modifier;
+        }
+    }
+
+    /**
+     * Whether the slot changed since the last call, clearing the flag.
+     */
+    boolean takeDirty(int slot) {
+        boolean result = dirty[slot];
+        dirty[slot] = false;
+        return result;
+    }
+
+    /**
+     * Takes the lowest free slot, growing the arrays if there is none.
+     */
+    int claim() {
+        int slot = occupied.nextClearBit(0);
+        if (slot >= updated.length) {
+            grow(Math.max(updated.length * 2, slot + 1));
+        }
+        occupied.set(slot);
+        return slot;
+    }
+
+    /**
+     * Gives a slot back, zeroing it so {@link #advance} passes over it without effect.
+     */
+    void free(int slot) {
+        occupied.clear(slot);
+        int from = slot * POOLS;
+        int to = from + POOLS;
+        Arrays.fill(current, from, to, 0f);
+        Arrays.fill(capacity, from, to, 0f);
+        Arrays.fill(regen, from, to, 0f);
+        Arrays.fill(rate, from, to, 0f);
+        Arrays.fill(drain, from, to, 0f);
+        Arrays.fill(burnout, from, to, 0);
+        efficiency[slot] = 0f;
+        dirty[slot] = false;
+    }
+
+    /**
+     * Copies one slot's values, flags included, into a slot of another store.
+     */
+    static void copy(ManaStore from, int fromSlot, ManaStore to, int toSlot) {
+        int source = fromSlot * POOLS;
+        int target = toSlot * POOLS;
+        System.arraycopy(from.current, source, to.current, target, POOLS);
+        System.arraycopy(from.capacity, source, to.capacity, target, POOLS);
+        System.arraycopy(from.regen, source, to.regen, target, POOLS);
+        System.arraycopy(from.rate, source, to.rate, target, POOLS);
+        System.arraycopy(from.drain, source, to.drain, target, POOLS);
+        System.arraycopy(from.burnout, source, to.burnout, target, POOLS);
+        to.efficiency[toSlot] = from.efficiency[fromSlot];
+        to.updated[toSlot] = from.updated[fromSlot];
+        to.dirty[toSlot] = from.dirty[fromSlot];
+    }
+
+    private void grow(int slots) {
+        current = Arrays.copyOf(current, slots * POOLS);
+        capacity = Arrays.copyOf(capacity, slots * POOLS);
+        regen = Arrays.copyOf(regen, slots * POOLS);
+        rate = Arrays.copyOf(rate, slots * POOLS);
+        drain = Arrays.copyOf(drain, slots * POOLS);
+        burnout = Arrays.copyOf(burnout, slots * POOLS);
+        efficiency = Arrays.copyOf(efficiency, slots);
+        updated = Arrays.copyOf(updated, slots);
+        dirty = Arrays.copyOf(dirty, slots);
+    }
+
+    /**
+     * The Vector API kernel if its module is in the boot layer, else the plain loop. The vector
+     * class is only loaded by name once the module is known to be there, so nothing links against
+     * the incubator classes without it.
+     */
+    private static Kernel loadKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarKernel();
+        }
+        try {
+            Kernel kernel = (Kernel) Class.forName("dk.mosberg.mana.VectorManaKernel")
+                    .getDeclaredConstructor().newInstance();
+            MAM.LOGGER.info("Mana regeneration uses the Vector API");
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            MAM.LOGGER.warn("Vector API present but unusable, using the plain mana loop", e);
+            return new ScalarKernel();
+        }
+    }
+
+    /**
+     * The plain loop; also finishes the tail the vector kernel's lanes do not cover.
+     */
+    static final class ScalarKernel implements Kernel {
+        @Override
+        public void advance(ManaStore store, int from, int to) {
+            float[] current = store.current;
+            float[] capacity = store.capacity;
+            float[] rate = store.rate;
+            float[] drain = store.drain;
+            int[] burnout = store.burnout;
+            boolean[] dirty = store.dirty;
+
+            for (int i = from; i < to; i++) {
+                float drained = drain[i];
+                float mana = current[i];
+                if (mana != capacity[i]) { // Overfill is clipped too
+                    float gain = rate[i] * (1f - Math.max(0f, drained - DRAIN_DECAY));
+                    float next = Math.max(0f, Math.min(mana + gain, capacity[i]));
+                    if (next != mana) {
+                        current[i] = next;
+                        dirty[i / POOLS] = true;
+                    }
+                }
+                drain[i] = Math.max(0f, drained - DRAIN_DECAY);
+                if (drained > 0) {
+                    dirty[i / POOLS] = true;
+                }
+                if (burnout[i] > 0) {
+                    burnout[i]--;
+                }
+            }
+        }
+    }
+}
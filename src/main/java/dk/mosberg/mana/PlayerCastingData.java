@@ -1,6 +1,7 @@
 package dk.mosberg.mana;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -8,12 +9,16 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.UUID;
+import java.util.function.LongSupplier;
 import dk.mosberg.spell.SpellCooldownTracker;
+import dk.mosberg.spell.SpellModifierStack;
+import dk.mosberg.spell.SpellRegistry;
 import dk.mosberg.spell.SpellSchool;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtList;
 import net.minecraft.nbt.NbtString;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.math.random.Random;
 
 /**
  * Combines mana and cooldown tracking into a single player attachment with advanced casting
@@ -27,6 +32,13 @@ import net.minecraft.util.Identifier;
 public class PlayerCastingData {
     private final PlayerManaData manaData;
     private final SpellCooldownTracker cooldownTracker;
+    private final SpellModifierStack modifierStack = new SpellModifierStack(); // not saved
+    private final RegenContext regenContext = new RegenContext(); // not saved
+
+    // Backfire rolls and the wall clock behind combo, rhythm and synergy timing; replaceable so a
+    // replay can run deterministically
+    private Random random = Random.create();
+    private LongSupplier clock = System::currentTimeMillis;
 
     // Casting state tracking
     private CastingState castingState = CastingState.IDLE;
@@ -52,6 +64,10 @@ public class PlayerCastingData {
     // Spell memory
     private final List<Identifier> memorizedSpells = new ArrayList<>(10); // Max 10 memorized
 
+    // Learned spells, indexed by raw spell id
+    private final BitSet knownSpells = new BitSet();
+    private final List<String> unloadedKnownSpells = new ArrayList<>(); // kept for saving
+
     // Fatigue system
     private float fatigueLevel = 0f; // 0-100, higher = more tired
     private int recentCastCount = 0; // Casts in last 100 ticks
@@ -61,6 +77,7 @@ public class PlayerCastingData {
 
     public PlayerCastingData() {
         this.manaData = new PlayerManaData();
+        this.manaData.setTickSource(ManaRegenerationHandler::getTick);
         this.cooldownTracker = new SpellCooldownTracker();
     }
 
@@ -72,6 +89,35 @@ public class PlayerCastingData {
         return Objects.requireNonNull(cooldownTracker, "Cooldown tracker should never be null");
     }
 
+    /**
+     * Cached gear and pool multipliers; see {@link SpellModifierStack}.
+     */
+    public SpellModifierStack getModifierStack() {
+        return modifierStack;
+    }
+
+    /**
+     * Cached surroundings for regen efficiency; see {@link RegenContext}.
+     */
+    public RegenContext getRegenContext() {
+        return regenContext;
+    }
+
+    /**
+     * Seeds this player's backfire rolls and cooldown stack decay from {@code random}.
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+        cooldownTracker.setRandom(random.split());
+    }
+
+    /**
+     * Replaces the millisecond clock used for combo, rhythm and synergy windows.
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = Objects.requireNonNull(clock);
+    }
+
     // === Casting State Methods ===
 
     /**
@@ -194,7 +240,7 @@ public class PlayerCastingData {
      * @return true if backfire should happen
      */
     public boolean shouldBackfire() {
-        return concentration < 30f && Math.random() < (0.3f - concentration / 100f);
+        return concentration < 30f && random.nextFloat() < (0.3f - concentration / 100f);
     }
 
     // === Casting Speed Modifiers ===
@@ -221,16 +267,19 @@ public class PlayerCastingData {
      * Records a spell cast for combo tracking.
      */
     private void recordCombo(Identifier spellId) {
+        int rawId = SpellRegistry.getRawId(spellId);
+
         // Add to history
-        comboHistory.add(new ComboEntry(spellId, System.currentTimeMillis()));
+        long now = clock.getAsLong();
+        comboHistory.add(new ComboEntry(rawId, now));
 
         // Clean old entries (older than 5 seconds)
-        long cutoff = System.currentTimeMillis() - 5000;
+        long cutoff = now - 5000;
         comboHistory.removeIf(entry -> entry.timestamp < cutoff);
 
         // Calculate combo count for same spell
         currentComboCount =
-                (int) comboHistory.stream().filter(entry -> entry.spellId.equals(spellId)).count();
+                (int) comboHistory.stream().filter(entry -> entry.spellId == rawId).count();
     }
 
     /**
@@ -253,7 +302,7 @@ public class PlayerCastingData {
      * Records timing for rhythm-based casting.
      */
     private void recordRhythm() {
-        long now = System.currentTimeMillis();
+        long now = clock.getAsLong();
         rhythmTimings.offer(now);
 
         // Keep only last 5 casts
@@ -320,6 +369,45 @@ public class PlayerCastingData {
         return new ArrayList<>(memorizedSpells);
     }
 
+    // === Known Spells ===
+
+    /**
+     * Marks a spell as learned.
+     *
+     * @return true if the spell was not known before
+     */
+    public boolean learnSpell(Identifier spellId) {
+        int rawId = SpellRegistry.getRawId(spellId);
+        if (rawId < 0 || knownSpells.get(rawId)) {
+            return false;
+        }
+        knownSpells.set(rawId);
+        return true;
+    }
+
+    /**
+     * Removes a learned spell.
+     */
+    public void unlearnSpell(Identifier spellId) {
+        int rawId = SpellRegistry.getRawId(spellId);
+        if (rawId >= 0) {
+            knownSpells.clear(rawId);
+        }
+    }
+
+    public boolean knowsSpell(Identifier spellId) {
+        int rawId = SpellRegistry.getRawId(spellId);
+        return rawId >= 0 && knownSpells.get(rawId);
+    }
+
+    /**
+     * Learned spells as a bitset of raw ids, for {@link SpellRegistry#getAccessibleSpells}. Do not
+     * modify.
+     */
+    public BitSet getKnownSpells() {
+        return knownSpells;
+    }
+
     // === Fatigue System ===
 
     /**
@@ -350,7 +438,7 @@ public class PlayerCastingData {
      * Records synergy with another player.
      */
     public void recordSynergy(UUID partnerId, SpellSchool school) {
-        long now = System.currentTimeMillis();
+        long now = clock.getAsLong();
 
         SynergyEntry entry = synergyPartners.get(partnerId);
         if (entry == null) {
@@ -371,7 +459,7 @@ public class PlayerCastingData {
         }
 
         // Synergy decays over time
-        long age = System.currentTimeMillis() - entry.lastCastTime;
+        long age = clock.getAsLong() - entry.lastCastTime;
         if (age > 10000) { // 10 seconds
             return 0f;
         }
@@ -380,6 +468,16 @@ public class PlayerCastingData {
         return Math.min(0.5f, entry.comboCount * 0.1f);
     }
 
+    /**
+     * Whether {@link #tick()} can be skipped: idle with concentration and fatigue run out, no
+     * cooldowns ticking, and mana {@link PlayerManaData#isDormant() dormant}. Any cast or mana
+     * spend ends it.
+     */
+    public boolean isDormant() {
+        return castingState == CastingState.IDLE && concentration <= 0 && fatigueLevel <= 0
+                && recentCastCount == 0 && cooldownTracker.isIdle() && manaData.isDormant();
+    }
+
     /**
      * Advances both mana regen and cooldown timers by the given delta time (in seconds). Called
      * once per server tick (20 ticks per second = 0.05 seconds per call).
@@ -403,6 +501,12 @@ public class PlayerCastingData {
             castingTicks++;
         }
 
+        // COOLDOWN only blocks further casts for the rest of the tick the spell was cast in;
+        // per-spell cooldowns are tracked by the cooldown tracker
+        if (castingState == CastingState.COOLDOWN) {
+            castingState = CastingState.IDLE;
+        }
+
         // Track recent cast count
         if (castingTicks % 100 == 0) { // Every 5 seconds
             recentCastCount = 0;
@@ -446,6 +550,20 @@ public class PlayerCastingData {
         }
         nbt.put("memorizedSpells", memorizedList);
 
+        // Known spells (by id; raw ids only hold for this session)
+        NbtList knownList = new NbtList();
+        for (int rawId = knownSpells.nextSetBit(0); rawId >= 0;
+                rawId = knownSpells.nextSetBit(rawId + 1)) {
+            Identifier spellId = SpellRegistry.getSpellId(rawId);
+            if (spellId != null) {
+                knownList.add(NbtString.of(spellId.toString()));
+            }
+        }
+        for (String spellId : unloadedKnownSpells) {
+            knownList.add(NbtString.of(spellId));
+        }
+        nbt.put("knownSpells", knownList);
+
         // Fatigue
         nbt.putFloat("fatigueLevel", fatigueLevel);
         nbt.putInt("recentCastCount", recentCastCount);
@@ -453,6 +571,22 @@ public class PlayerCastingData {
         return nbt;
     }
 
+    /**
+     * Picks up known spells and cooldowns that were kept because their spell was not loaded, if
+     * it is loaded again; called after spells are reloaded.
+     */
+    public void resolveUnloadedSpells() {
+        for (var it = unloadedKnownSpells.iterator(); it.hasNext();) {
+            Identifier spellId = Identifier.tryParse(it.next());
+            int rawId = spellId != null ? SpellRegistry.getRawId(spellId) : -1;
+            if (rawId >= 0) {
+                knownSpells.set(rawId);
+                it.remove();
+            }
+        }
+        cooldownTracker.resolveUnloaded();
+    }
+
     /**
      * Deserializes all casting data from NBT.
      */
@@ -514,6 +648,24 @@ public class PlayerCastingData {
             }
         }
 
+        // Known spells
+        knownSpells.clear();
+        unloadedKnownSpells.clear();
+        if (nbt.contains("knownSpells")) {
+            NbtList knownList = nbt.getList("knownSpells").get();
+            for (int i = 0; i < knownList.size(); i++) {
+                String key = knownList.getString(i).get();
+                Identifier spellId = Identifier.tryParse(key);
+                int rawId = spellId != null ? SpellRegistry.getRawId(spellId) : -1;
+                if (rawId >= 0) {
+                    knownSpells.set(rawId);
+                } else {
+                    // Spell not loaded right now (e.g. data pack disabled); keep it for next save
+                    unloadedKnownSpells.add(key);
+                }
+            }
+        }
+
         // Fatigue
         if (nbt.contains("fatigueLevel")) {
             fatigueLevel = nbt.getFloat("fatigueLevel").get();
@@ -529,10 +681,10 @@ public class PlayerCastingData {
      * Represents a combo entry for spell tracking.
      */
     private static class ComboEntry {
-        final Identifier spellId;
+        final int spellId; // raw id
         final long timestamp;
 
-        ComboEntry(Identifier spellId, long timestamp) {
+        ComboEntry(int spellId, long timestamp) {
             this.spellId = spellId;
             this.timestamp = timestamp;
         }
@@ -1,8 +1,7 @@
 package dk.mosberg.mana;
 
-import java.util.EnumMap;
-import java.util.Map;
 import java.util.Objects;
+import java.util.function.LongSupplier;
 import dk.mosberg.config.ServerConfig;
 import net.minecraft.nbt.NbtCompound;
 
@@ -12,45 +11,178 @@ import net.minecraft.nbt.NbtCompound;
  * damage - Restoration from potions/items - Player-to-player mana transfer - Pool burnout penalties
  * - Burst mode for high-risk/high-reward casting - Mana debt for borrowing future regen -
  * Efficiency modifiers from equipment/buffs
+ *
+ * <p>
+ * Regeneration is lazy: pools, drain effects and burnout counters are brought up to the current
+ * tick in closed form whenever they are read or changed, so nothing needs to run per tick except
+ * while mana debt is being repaid or burst mode is running out ({@link #needsTick()}). The tick
+ * comes from {@link #setTickSource}; without one (the client copy) the data never regenerates.
+ *
+ * <p>
+ * Pool mana, capacities, regen rates, drains, burnout counters and the efficiency modifier live in
+ * a {@link ManaStore} slot; the pools returned by {@link #getPool} are views of it. An awake
+ * online player holds a slot in {@link ManaStore#server()}, which advances every such slot each
+ * tick in one pass ({@link #claimSlot}); otherwise the values sit in a private one-slot store and
+ * catch up lazily ({@link #releaseSlot}).
  */
 public class PlayerManaData {
-    @SuppressWarnings("null")
-    private final Map<ManaPoolType, ManaPool> pools = new EnumMap<>(ManaPoolType.class);
+    private static final ManaPoolType[] POOL_TYPES = ManaPoolType.values();
+
+    private final ManaPool[] pools = new ManaPool[POOL_TYPES.length];
     private ManaPoolType activePriority = ManaPoolType.PERSONAL;
 
+    // Where the pool values live: ownStore slot 0, or a slot claimed in a shared store
+    private final ManaStore ownStore = new ManaStore(1);
+    private ManaStore store = ownStore;
+    private int slot = 0;
+
     // Advanced mechanics state
-    private final Map<ManaPoolType, Float> drainEffects = new EnumMap<>(ManaPoolType.class);
-    private final Map<ManaPoolType, Integer> burnoutCounters = new EnumMap<>(ManaPoolType.class);
     private float manaShieldCapacity = 0f;
+
     private boolean burstModeActive = false;
-    private int burstModeTicks = 0;
+    private long burstModeEndTick = 0;
     private float manaDebt = 0f;
-    private float efficiencyModifier = 1.0f;
     private boolean overflowEnabled = true;
 
-    // Synchronization tracking
+    // Synchronization tracking; the store flags changes from regeneration separately
     private boolean needsSync = false;
 
+    // Lazy regeneration: the store slot is current as of its updated tick
+    private LongSupplier tickSource = () -> 0L;
+
     public PlayerManaData() {
         this(loadConfigValues());
     }
 
     private PlayerManaData(ServerConfig config) {
+        ownStore.setEfficiency(0, 1.0f);
+        for (ManaPoolType type : POOL_TYPES) {
+            pools[type.ordinal()] = new ManaPool(this, type.ordinal());
+        }
         // Initialize all three pools with configured defaults
-        pools.put(ManaPoolType.PERSONAL,
-                new ManaPool(config.personalManaCapacity, config.personalManaRegen));
-        pools.put(ManaPoolType.AURA, new ManaPool(config.auraManaCapacity, config.auraManaRegen));
-        pools.put(ManaPoolType.RESERVE,
-                new ManaPool(config.reserveManaCapacity, config.reserveManaRegen));
+        pools[ManaPoolType.PERSONAL.ordinal()].load(config.personalManaCapacity,
+                config.personalManaCapacity, config.personalManaRegen);
+        pools[ManaPoolType.AURA.ordinal()].load(config.auraManaCapacity, config.auraManaCapacity,
+                config.auraManaRegen);
+        pools[ManaPoolType.RESERVE.ordinal()].load(config.reserveManaCapacity,
+                config.reserveManaCapacity, config.reserveManaRegen);
         // Initialize SKILL pool using enum defaults (not configured in ServerConfig)
-        pools.put(ManaPoolType.SKILL, new ManaPool(ManaPoolType.SKILL.getDefaultCapacity(),
-                ManaPoolType.SKILL.getDefaultRegenRate()));
+        pools[ManaPoolType.SKILL.ordinal()].load(ManaPoolType.SKILL.getDefaultCapacity(),
+                ManaPoolType.SKILL.getDefaultCapacity(), ManaPoolType.SKILL.getDefaultRegenRate());
+    }
+
+    ManaStore store() {
+        return store;
+    }
+
+    int slot() {
+        return slot;
+    }
+
+    private int index(ManaPoolType type) {
+        return slot * ManaStore.POOLS + type.ordinal();
+    }
+
+    /**
+     * Moves the pool values into a slot of {@code shared}, which advances them from then on with
+     * everyone else's ({@link ManaStore#advance}). Does nothing if they are already there. Server
+     * thread only, and never while {@link ManaRegenerationHandler#tickPlayers} runs.
+     */
+    public void claimSlot(ManaStore shared) {
+        if (store == shared) {
+            return;
+        }
+        releaseSlot();
+        settle();
+        int claimed = shared.claim();
+        ManaStore.copy(ownStore, 0, shared, claimed);
+        store = shared;
+        slot = claimed;
+    }
+
+    /**
+     * Moves the pool values back to this player's own store and frees the shared slot, if one was
+     * claimed; for players going dormant or offline. Same threading as {@link #claimSlot}.
+     */
+    public void releaseSlot() {
+        if (store == ownStore) {
+            return;
+        }
+        ManaStore.copy(store, slot, ownStore, 0);
+        store.free(slot);
+        store = ownStore;
+        slot = 0;
+    }
+
+    /**
+     * Sets the clock regeneration is measured against, in server ticks, and starts counting from
+     * its current value.
+     */
+    public void setTickSource(LongSupplier tickSource) {
+        this.tickSource = Objects.requireNonNull(tickSource);
+        resume();
+    }
+
+    /**
+     * Starts counting regeneration from now, dropping any ticks since the last update; for a
+     * player coming back online, who did not regenerate while away.
+     */
+    public void resume() {
+        long now = tickSource.getAsLong();
+        long lastUpdateTick = store.updated[slot];
+        burstModeEndTick = burstModeActive ? now + Math.max(0, burstModeEndTick - lastUpdateTick)
+                : 0;
+        store.updated[slot] = now;
+    }
+
+    /**
+     * Brings pools, drain effects, burnout counters and burst mode up to {@code tick}; see
+     * {@link ManaStore#settle}. A slot in a shared store is already current, as the store advances
+     * it every tick.
+     */
+    private void settle(long tick) {
+        if (burstModeActive && tick >= burstModeEndTick) {
+            burstModeActive = false;
+            markNeedsSync();
+        }
+        store.settle(slot, tick);
+    }
+
+    private void settle() {
+        settle(tickSource.getAsLong());
+    }
+
+    /**
+     * Whether {@link #tickRegeneration()} has anything to do this tick: repaying mana debt, or
+     * ending burst mode on time.
+     */
+    public boolean needsTick() {
+        return manaDebt > 0 || burstModeActive;
+    }
+
+    /**
+     * Whether nothing will change until something spends mana: every pool full and nothing for
+     * {@link #tickRegeneration()} to do. A pool that was full when last brought up to date is still
+     * full, so this only computes regeneration for pools that were not.
+     */
+    public boolean isDormant() {
+        if (needsTick()) {
+            return false;
+        }
+        if (!allPoolsFull()) {
+            settle();
+            return allPoolsFull();
+        }
+        return true;
+    }
 
-        // Initialize advanced mechanics state
-        for (ManaPoolType type : ManaPoolType.values()) {
-            drainEffects.put(type, 0f);
-            burnoutCounters.put(type, 0);
+    private boolean allPoolsFull() {
+        for (ManaPool pool : pools) {
+            if (!pool.isFull()) {
+                return false;
+            }
         }
+        return true;
     }
 
     private static ServerConfig loadConfigValues() {
@@ -62,11 +194,11 @@ public class PlayerManaData {
      * Attempts to consume mana, using the priority pool first. Falls back to other pools if needed.
      * Also handles mana debt if enabled.
      *
-     * @param amount Amount of mana to consume
-     * @return true if mana was successfully consumed
+     * @param amount Amount of mana to consume, before efficiency and burst mode
+     * @return The mana actually drawn from a pool or borrowed, or -1 if it could not be paid
      */
-    public boolean consumeMana(float amount) {
-        float actualAmount = amount / efficiencyModifier;
+    public float consumeMana(float amount) {
+        float actualAmount = amount / getEfficiencyModifier();
 
         // Apply burst mode multiplier
         if (burstModeActive) {
@@ -77,15 +209,15 @@ public class PlayerManaData {
         if (getPool(activePriority).consume(actualAmount)) {
             incrementBurnoutCounter(activePriority);
             markNeedsSync();
-            return true;
+            return actualAmount;
         }
 
         // Try other pools in order: Personal -> Aura -> Reserve
-        for (ManaPoolType type : ManaPoolType.values()) {
+        for (ManaPoolType type : POOL_TYPES) {
             if (type != activePriority && getPool(type).consume(actualAmount)) {
                 incrementBurnoutCounter(type);
                 markNeedsSync();
-                return true;
+                return actualAmount;
             }
         }
 
@@ -95,10 +227,10 @@ public class PlayerManaData {
             float canBorrow = Math.min(actualAmount, debtLimit - manaDebt);
             manaDebt += canBorrow;
             markNeedsSync();
-            return canBorrow >= actualAmount;
+            return canBorrow >= actualAmount ? actualAmount : -1;
         }
 
-        return false;
+        return -1;
     }
 
     /**
@@ -114,7 +246,7 @@ public class PlayerManaData {
 
         // Redirect overflow to other pools if enabled
         if (overflowEnabled && excess > 0) {
-            for (ManaPoolType otherType : ManaPoolType.values()) {
+            for (ManaPoolType otherType : POOL_TYPES) {
                 if (otherType != type) {
                     excess = getPool(otherType).restore(excess);
                     if (excess <= 0)
@@ -160,7 +292,9 @@ public class PlayerManaData {
      * @param durationTicks Duration in ticks
      */
     public void applyDrainEffect(ManaPoolType type, float drainAmount, int durationTicks) {
-        drainEffects.put(type, Math.max(drainEffects.get(type), drainAmount));
+        settle();
+        int index = index(type);
+        store.drain[index] = Math.max(store.drain[index], drainAmount);
         markNeedsSync();
     }
 
@@ -198,8 +332,9 @@ public class PlayerManaData {
      * @param durationTicks Duration in ticks
      */
     public void activateBurstMode(int durationTicks) {
+        settle();
         this.burstModeActive = true;
-        this.burstModeTicks = durationTicks;
+        this.burstModeEndTick = store.updated[slot] + durationTicks;
         markNeedsSync();
     }
 
@@ -207,7 +342,8 @@ public class PlayerManaData {
      * Gets burnout penalty for a pool (0.0 to 1.0). Higher values = worse stats from overuse.
      */
     public float getBurnoutPenalty(ManaPoolType type) {
-        int counter = burnoutCounters.get(type);
+        settle();
+        int counter = store.burnout[index(type)];
         return Math.min(counter / 100f, 0.5f); // Max 50% penalty at 100 uses
     }
 
@@ -215,66 +351,23 @@ public class PlayerManaData {
      * Increments burnout counter for a pool.
      */
     private void incrementBurnoutCounter(ManaPoolType type) {
-        burnoutCounters.put(type, burnoutCounters.get(type) + 1);
-    }
-
-    /**
-     * Decays burnout counters each tick (slow recovery).
-     */
-    private void decayBurnout() {
-        for (ManaPoolType type : ManaPoolType.values()) {
-            int current = burnoutCounters.get(type);
-            if (current > 0) {
-                burnoutCounters.put(type, Math.max(0, current - 1)); // Decay 1 per tick
-            }
-        }
+        store.burnout[index(type)]++;
     }
 
     /**
-     * Regenerates all mana pools. Called each tick on the server. Also handles drain effects, debt
-     * repayment, and burst mode.
+     * Brings regeneration up to the current tick and repays mana debt, 1 mana per tick from the
+     * personal pool. Only needed on ticks where {@link #needsTick()} says so; regeneration itself
+     * catches up whenever the pools are read.
      */
     public void tickRegeneration() {
-        // Decay burst mode
-        if (burstModeActive) {
-            burstModeTicks--;
-            if (burstModeTicks <= 0) {
-                burstModeActive = false;
-                markNeedsSync();
-            }
-        }
-
-        // Decay drain effects (reduce by 1% per tick)
-        for (ManaPoolType type : ManaPoolType.values()) {
-            float drain = drainEffects.get(type);
-            if (drain > 0) {
-                drainEffects.put(type, Math.max(0, drain - 0.01f));
-            }
-        }
-
-        // Decay burnout counters
-        decayBurnout();
-
-        // Regenerate pools with drain penalties
-        for (ManaPoolType type : ManaPoolType.values()) {
-            ManaPool pool = getPool(type);
-            float drainPenalty = drainEffects.get(type);
-            float effectiveRegen = pool.getRegenRate() * (1f - drainPenalty);
-
-            // Apply efficiency modifier
-            effectiveRegen *= efficiencyModifier;
-
-            // Custom regen with modified rate
-            float newMana = Math.min(pool.getCurrentMana() + effectiveRegen, pool.getMaxCapacity());
-            pool.set(newMana);
-        }
+        settle();
 
         // Repay mana debt gradually (1 mana per tick)
         if (manaDebt > 0) {
             float repayment = Math.min(1f, manaDebt);
 
             // Try to take from personal pool first
-            if (getPool(ManaPoolType.PERSONAL).consume(repayment)) {
+            if (pools[ManaPoolType.PERSONAL.ordinal()].consume(repayment)) {
                 manaDebt -= repayment;
             } else {
                 // Debt persists if can't repay
@@ -282,8 +375,12 @@ public class PlayerManaData {
         }
     }
 
+    /**
+     * The pool, brought up to the current tick.
+     */
     public ManaPool getPool(ManaPoolType type) {
-        return Objects.requireNonNull(pools.get(type), "Missing mana pool for type " + type);
+        settle();
+        return Objects.requireNonNull(pools[type.ordinal()], "Missing mana pool for type " + type);
     }
 
     public ManaPoolType getActivePriority() {
@@ -296,18 +393,26 @@ public class PlayerManaData {
     }
 
     public void updatePool(ManaPoolType type, int maxCapacity, float current, float regen) {
-        pools.put(type, new ManaPool(maxCapacity, current, regen));
+        settle();
+        pools[type.ordinal()].load(maxCapacity, current, regen);
         markNeedsSync();
     }
 
-    @SuppressWarnings("null")
     public float getTotalMana() {
-        return pools.values().stream().map(ManaPool::getCurrentMana).reduce(0f, Float::sum);
+        settle();
+        float total = 0;
+        for (ManaPool pool : pools) {
+            total += pool.getCurrentMana();
+        }
+        return total;
     }
 
-    @SuppressWarnings("null")
     public float getTotalCapacity() {
-        return pools.values().stream().map(ManaPool::getMaxCapacity).reduce(0, Integer::sum);
+        int total = 0;
+        for (ManaPool pool : pools) {
+            total += pool.getMaxCapacity();
+        }
+        return total;
     }
 
     // Advanced mechanics getters/setters
@@ -317,6 +422,7 @@ public class PlayerManaData {
     }
 
     public boolean isBurstModeActive() {
+        settle();
         return burstModeActive;
     }
 
@@ -330,12 +436,20 @@ public class PlayerManaData {
     }
 
     public float getEfficiencyModifier() {
-        return efficiencyModifier;
+        return store.efficiency[slot];
     }
 
+    /**
+     * Sets the regen efficiency from the next tick on; the ticks up to the current one regenerate
+     * at the old one.
+     */
     public void setEfficiencyModifier(float modifier) {
-        this.efficiencyModifier = Math.max(0.1f, Math.min(2.0f, modifier)); // Clamp 0.1 to 2.0
-        markNeedsSync();
+        float clamped = Math.max(0.1f, Math.min(2.0f, modifier)); // Clamp 0.1 to 2.0
+        if (clamped != getEfficiencyModifier()) {
+            settle();
+            store.setEfficiency(slot, clamped);
+            markNeedsSync();
+        }
     }
 
     public boolean isOverflowEnabled() {
@@ -347,7 +461,8 @@ public class PlayerManaData {
     }
 
     public float getDrainEffect(ManaPoolType type) {
-        return drainEffects.get(type);
+        settle();
+        return store.drain[index(type)];
     }
 
     /**
@@ -361,7 +476,7 @@ public class PlayerManaData {
      * Checks if data needs sync and resets flag.
      */
     public boolean consumeSyncFlag() {
-        boolean result = needsSync;
+        boolean result = store.takeDirty(slot) | needsSync;
         needsSync = false;
         return result;
     }
@@ -370,36 +485,40 @@ public class PlayerManaData {
      * Serializes mana data to NBT for persistence.
      */
     public NbtCompound writeNbt(NbtCompound nbt) {
+        settle();
+
         // Serialize pools
         NbtCompound poolsNbt = new NbtCompound();
-        for (Map.Entry<ManaPoolType, ManaPool> entry : pools.entrySet()) {
+        for (ManaPoolType type : POOL_TYPES) {
+            ManaPool pool = pools[type.ordinal()];
             NbtCompound poolNbt = new NbtCompound();
-            poolNbt.putFloat("current", entry.getValue().getCurrentMana());
-            poolNbt.putInt("max", entry.getValue().getMaxCapacity());
-            poolNbt.putFloat("regen", entry.getValue().getRegenRate());
-            poolsNbt.put(entry.getKey().name(), poolNbt);
+            poolNbt.putFloat("current", pool.getCurrentMana());
+            poolNbt.putInt("max", pool.getMaxCapacity());
+            poolNbt.putFloat("regen", pool.getRegenRate());
+            poolsNbt.put(type.name(), poolNbt);
         }
         nbt.put("pools", poolsNbt);
         nbt.putString("activePriority", activePriority.name());
 
         // Serialize advanced mechanics
         NbtCompound drainsNbt = new NbtCompound();
-        for (Map.Entry<ManaPoolType, Float> entry : drainEffects.entrySet()) {
-            drainsNbt.putFloat(entry.getKey().name(), entry.getValue());
+        for (ManaPoolType type : POOL_TYPES) {
+            drainsNbt.putFloat(type.name(), store.drain[index(type)]);
         }
         nbt.put("drainEffects", drainsNbt);
 
         NbtCompound burnoutNbt = new NbtCompound();
-        for (Map.Entry<ManaPoolType, Integer> entry : burnoutCounters.entrySet()) {
-            burnoutNbt.putInt(entry.getKey().name(), entry.getValue());
+        for (ManaPoolType type : POOL_TYPES) {
+            burnoutNbt.putInt(type.name(), store.burnout[index(type)]);
         }
         nbt.put("burnoutCounters", burnoutNbt);
 
         nbt.putFloat("manaShieldCapacity", manaShieldCapacity);
         nbt.putBoolean("burstModeActive", burstModeActive);
-        nbt.putInt("burstModeTicks", burstModeTicks);
+        nbt.putInt("burstModeTicks",
+                burstModeActive ? (int) (burstModeEndTick - store.updated[slot]) : 0);
         nbt.putFloat("manaDebt", manaDebt);
-        nbt.putFloat("efficiencyModifier", efficiencyModifier);
+        nbt.putFloat("efficiencyModifier", getEfficiencyModifier());
         nbt.putBoolean("overflowEnabled", overflowEnabled);
 
         return nbt;
@@ -418,17 +537,11 @@ public class PlayerManaData {
                     float current = poolNbt.getFloat("current").get();
                     int max = poolNbt.getInt("max").get();
                     float regen = poolNbt.getFloat("regen").get();
-                    pools.put(type, new ManaPool(max, current, regen));
+                    pools[type.ordinal()].load(max, current, regen);
                 }
             }
         }
-        // Ensure all pools exist even if absent in NBT (e.g., new pool types)
-        for (ManaPoolType type : ManaPoolType.values()) {
-            if (!pools.containsKey(type)) {
-                pools.put(type,
-                        new ManaPool(type.getDefaultCapacity(), type.getDefaultRegenRate()));
-            }
-        }
+        // Pools absent in NBT (e.g., new pool types) keep their defaults
         if (nbt.contains("activePriority")) {
             try {
                 String priorityStr = nbt.getString("activePriority").get();
@@ -443,7 +556,7 @@ public class PlayerManaData {
             NbtCompound drainsNbt = nbt.getCompound("drainEffects").get();
             for (ManaPoolType type : ManaPoolType.values()) {
                 if (drainsNbt.contains(type.name())) {
-                    drainEffects.put(type, drainsNbt.getFloat(type.name()).get());
+                    store.drain[index(type)] = drainsNbt.getFloat(type.name()).get();
                 }
             }
         }
@@ -452,7 +565,7 @@ public class PlayerManaData {
             NbtCompound burnoutNbt = nbt.getCompound("burnoutCounters").get();
             for (ManaPoolType type : ManaPoolType.values()) {
                 if (burnoutNbt.contains(type.name())) {
-                    burnoutCounters.put(type, burnoutNbt.getInt(type.name()).get());
+                    store.burnout[index(type)] = burnoutNbt.getInt(type.name()).get();
                 }
             }
         }
@@ -463,14 +576,13 @@ public class PlayerManaData {
         if (nbt.contains("burstModeActive")) {
             burstModeActive = nbt.getBoolean("burstModeActive").get();
         }
-        if (nbt.contains("burstModeTicks")) {
-            burstModeTicks = nbt.getInt("burstModeTicks").get();
-        }
+        store.updated[slot] = tickSource.getAsLong();
+        burstModeEndTick = store.updated[slot] + nbt.getInt("burstModeTicks").orElse(0);
         if (nbt.contains("manaDebt")) {
             manaDebt = nbt.getFloat("manaDebt").get();
         }
         if (nbt.contains("efficiencyModifier")) {
-            efficiencyModifier = nbt.getFloat("efficiencyModifier").get();
+            store.setEfficiency(slot, nbt.getFloat("efficiencyModifier").get());
         }
         if (nbt.contains("overflowEnabled")) {
             overflowEnabled = nbt.getBoolean("overflowEnabled").get();
@@ -0,0 +1,125 @@
+package dk.mosberg.mana;
+
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+/**
+ * One player's inputs to {@link ManaRegenerationHandler#regenEfficiency}, kept between ticks so
+ * the handler only does work when something changed.
+ *
+ * <p>
+ * The biome temperature is looked up again only when the player enters another block or
+ * another dimension. Biomes are stored per 4x4x4 cell, but {@code getBiome} fuzzes the cell it
+ * picks by block position, so a block can report a different biome than its neighbours in the
+ * same cell; keying on the block gives the same answer an uncached lookup would. Combat,
+ * sneaking, submersion, low health and the temperature band are packed into a few bits and
+ * compared with the last update's; the efficiency modifier is recomputed and written only when
+ * they differ.
+ *
+ * <p>
+ * Lives in {@link PlayerCastingData}; not saved. Server thread only.
+ */
+public final class RegenContext {
+    private static final int IN_COMBAT = 1;
+    private static final int SNEAKING = 1 << 1;
+    private static final int SUBMERGED = 1 << 2;
+    private static final int LOW_HEALTH = 1 << 3;
+    private static final int HOT = 1 << 4;
+    private static final int COLD = 1 << 5;
+
+    // Since the last resetCounters()
+    private static long biomeHits;
+    private static long biomeMisses;
+    private static long recomputes;
+
+    private RegistryKey<World> dimension;
+    private long biomeBlock;
+    private float temperature;
+    private int state = -1; // -1 until the first update
+
+    /**
+     * Reads the player's situation, looking the biome up only if they changed block or
+     * dimension.
+     *
+     * @return Whether the situation differs from the last update, so the efficiency modifier needs
+     *         recomputing
+     */
+    boolean update(ServerPlayerEntity player) {
+        ServerWorld world = (ServerWorld) player.getEntityWorld();
+        BlockPos pos = player.getBlockPos();
+        long block = pos.asLong();
+        if (block != biomeBlock || world.getRegistryKey() != dimension) {
+            biomeBlock = block;
+            dimension = world.getRegistryKey();
+            temperature = world.getBiome(pos).value().getTemperature();
+            biomeMisses++;
+        } else {
+            biomeHits++;
+        }
+
+        int current = 0;
+        if (player.age - player.getLastAttackTime() < 100) { // 5 seconds
+            current |= IN_COMBAT;
+        }
+        if (player.isSneaking()) {
+            current |= SNEAKING;
+        }
+        if (player.isSubmergedInWater()) {
+            current |= SUBMERGED;
+        }
+        if (player.getHealth() < player.getMaxHealth() * 0.3f) {
+            current |= LOW_HEALTH;
+        }
+        if (temperature > 1.5f) {
+            current |= HOT;
+        } else if (temperature < 0.2f) {
+            current |= COLD;
+        }
+
+        if (current == state) {
+            return false;
+        }
+        state = current;
+        recomputes++;
+        return true;
+    }
+
+    /**
+     * The regen efficiency for the situation seen by the last {@link #update}.
+     */
+    float efficiency() {
+        return ManaRegenerationHandler.regenEfficiency((state & IN_COMBAT) != 0,
+                (state & SNEAKING) != 0, temperature, (state & SUBMERGED) != 0,
+                (state & LOW_HEALTH) != 0);
+    }
+
+    /**
+     * Updates that reused the cached biome.
+     */
+    public static long getBiomeHits() {
+        return biomeHits;
+    }
+
+    /**
+     * Updates that looked the biome up, having changed block or dimension.
+     */
+    public static long getBiomeMisses() {
+        return biomeMisses;
+    }
+
+    /**
+     * Updates that found the situation changed and recomputed the efficiency modifier.
+     */
+    public static long getRecomputes() {
+        return recomputes;
+    }
+
+    public static void resetCounters() {
+        biomeHits = 0;
+        biomeMisses = 0;
+        recomputes = 0;
+    }
+}
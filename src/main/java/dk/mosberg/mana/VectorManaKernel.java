@@ -0,0 +1,58 @@
+package dk.mosberg.mana;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ManaStore.ScalarKernel} over as many pools per step as the CPU's preferred vector holds,
+ * with the same operations in the same order so both give the same floats. Only loaded by
+ * {@link ManaStore} when the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorManaKernel implements ManaStore.Kernel {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, FLOATS.vectorShape()); // Same lane count as FLOATS
+
+    private final ManaStore.Kernel tail = new ManaStore.ScalarKernel();
+
+    VectorManaKernel() {
+    }
+
+    @Override
+    public void advance(ManaStore store, int from, int to) {
+        float[] current = store.current;
+        float[] capacity = store.capacity;
+        float[] rate = store.rate;
+        float[] drain = store.drain;
+        int[] burnout = store.burnout;
+        boolean[] dirty = store.dirty;
+        FloatVector one = FloatVector.broadcast(FLOATS, 1f);
+
+        int i = from;
+        for (int bound = from + FLOATS.loopBound(to - from); i < bound; i += FLOATS.length()) {
+            FloatVector mana = FloatVector.fromArray(FLOATS, current, i);
+            FloatVector cap = FloatVector.fromArray(FLOATS, capacity, i);
+            FloatVector drained = FloatVector.fromArray(FLOATS, drain, i);
+            FloatVector decayed = drained.sub(ManaStore.DRAIN_DECAY).max(0f);
+
+            FloatVector gain = FloatVector.fromArray(FLOATS, rate, i).mul(one.sub(decayed));
+            FloatVector next = mana.add(gain).min(cap).max(0f);
+            VectorMask<Float> regenerated = mana.compare(VectorOperators.NE, cap)
+                    .and(next.compare(VectorOperators.NE, mana));
+            mana.blend(next, regenerated).intoArray(current, i);
+            decayed.intoArray(drain, i);
+
+            long changed = regenerated.or(drained.compare(VectorOperators.GT, 0f)).toLong();
+            while (changed != 0) {
+                dirty[(i + Long.numberOfTrailingZeros(changed)) / ManaStore.POOLS] = true;
+                changed &= changed - 1;
+            }
+
+            IntVector.fromArray(INTS, burnout, i).sub(1).max(0).intoArray(burnout, i);
+        }
+        tail.advance(store, i, to);
+    }
+}
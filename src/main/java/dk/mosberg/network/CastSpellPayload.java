@@ -5,6 +5,7 @@ import dk.mosberg.MAM;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
 import net.minecraft.network.RegistryByteBuf;
 import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.util.Identifier;
 
@@ -16,14 +17,16 @@ import net.minecraft.util.Identifier;
  * etc.) TODO: Support spell chaining (cast in sequence on same payload) TODO: Add spell prediction
  * data for server validation TODO: Implement conditional spell casting (if mana > X then cast)
  * TODO: Add combo tracking (previous spells in sequence)
+ *
+ * The spell is sent as its raw id (see {@link SpellIdTablePayload}), encoded as a varint.
  */
-public record CastSpellPayload(Identifier spellId) implements CustomPayload {
+public record CastSpellPayload(int spellId) implements CustomPayload {
 
     public static final CustomPayload.Id<CastSpellPayload> ID =
             new CustomPayload.Id<>(Identifier.of(MAM.MOD_ID, "cast_spell"));
 
     public static final PacketCodec<RegistryByteBuf, CastSpellPayload> CODEC = PacketCodec
-            .tuple(Identifier.PACKET_CODEC, CastSpellPayload::spellId, CastSpellPayload::new);
+            .tuple(PacketCodecs.VAR_INT, CastSpellPayload::spellId, CastSpellPayload::new);
 
     @Override
     public @NotNull Id<? extends CustomPayload> getId() {
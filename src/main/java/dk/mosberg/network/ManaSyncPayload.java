@@ -2,38 +2,134 @@ package dk.mosberg.network;
 
 import org.jetbrains.annotations.NotNull;
 import dk.mosberg.MAM;
+import dk.mosberg.mana.ManaPoolType;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
 import net.minecraft.network.RegistryByteBuf;
 import net.minecraft.network.codec.PacketCodec;
-import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.encoding.VarInts;
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.util.Identifier;
 
 /**
- * Server-to-Client packet for synchronizing mana data.
+ * Server-to-Client packet for synchronizing mana data, carrying only what changed since the last
+ * one sent to the same client (see {@link ManaSyncState}). The first one after joining carries
+ * everything.
+ *
+ * <p>
+ * {@code mask} says which values follow: per pool, its mana ({@link #manaBit}), its effective
+ * regen ({@link #regenBit}) and its capacity ({@link #capacityBit}), then the active priority
+ * ({@link #PRIORITY_BIT}). The arrays are indexed by pool ordinal, and only entries whose bit is
+ * set hold anything. Mana is sent as an unsigned 16-bit fraction of the pool's capacity with
+ * room for overfill up to 150%, and always along with a changed capacity; regen in steps of
+ * {@link #REGEN_STEP} mana per tick; the priority as its ordinal.
  *
  * TODO: Add mana regeneration rate sync (client-side prediction) TODO: Include active effects/buffs
  * mana modification state TODO: Add mana pool status flags (burning, frozen, corrupted) TODO:
- * Include burst/overdrive state information TODO: Add timestamp for latency compensation TODO:
- * Implement delta encoding for bandwidth optimization TODO: Add status effects info (what's
- * modifying mana currently) TODO: Include prediction delta (server estimated mana next tick)
+ * Include burst/overdrive state information TODO: Add timestamp for latency compensation TODO: Add
+ * status effects info (what's modifying mana currently) TODO: Include prediction delta (server
+ * estimated mana next tick)
  */
-public record ManaSyncPayload(float personalMana, float personalMax, float auraMana, float auraMax,
-        float reserveMana, float reserveMax, String activePriority, float personalRegen,
-        float auraRegen, float reserveRegen) implements CustomPayload {
+public record ManaSyncPayload(int mask, int[] mana, int[] regen, int[] capacity, int priority)
+        implements CustomPayload {
+
+    public static final int POOLS = ManaPoolType.values().length;
+    public static final int PRIORITY_BIT = 1 << (3 * POOLS);
+
+    private static final float MANA_SCALE = 32768f; // Steps per capacity; room for 150% overfill
+    private static final int MAX_QUANTIZED = 0xFFFF;
+    public static final float REGEN_STEP = 0.0001f; // Mana per tick
 
     public static final CustomPayload.Id<ManaSyncPayload> ID =
             new CustomPayload.Id<>(Identifier.of(MAM.MOD_ID, "mana_sync"));
 
-    @SuppressWarnings("null")
     public static final PacketCodec<RegistryByteBuf, ManaSyncPayload> CODEC =
-            PacketCodec.tuple(PacketCodecs.FLOAT, ManaSyncPayload::personalMana, PacketCodecs.FLOAT,
-                    ManaSyncPayload::personalMax, PacketCodecs.FLOAT, ManaSyncPayload::auraMana,
-                    PacketCodecs.FLOAT, ManaSyncPayload::auraMax, PacketCodecs.FLOAT,
-                    ManaSyncPayload::reserveMana, PacketCodecs.FLOAT, ManaSyncPayload::reserveMax,
-                    PacketCodecs.STRING, ManaSyncPayload::activePriority, PacketCodecs.FLOAT,
-                    ManaSyncPayload::personalRegen, PacketCodecs.FLOAT, ManaSyncPayload::auraRegen,
-                    PacketCodecs.FLOAT, ManaSyncPayload::reserveRegen, ManaSyncPayload::new);
+            PacketCodec.of(ManaSyncPayload::write, ManaSyncPayload::read);
+
+    public static int manaBit(int pool) {
+        return 1 << pool;
+    }
+
+    public static int regenBit(int pool) {
+        return 1 << (POOLS + pool);
+    }
+
+    public static int capacityBit(int pool) {
+        return 1 << (2 * POOLS + pool);
+    }
+
+    public boolean has(int bit) {
+        return (mask & bit) != 0;
+    }
+
+    public static int quantizeMana(float current, int capacity) {
+        if (capacity <= 0) {
+            return 0;
+        }
+        return Math.clamp(Math.round(current / capacity * MANA_SCALE), 0, MAX_QUANTIZED);
+    }
+
+    public static float dequantizeMana(int quantized, int capacity) {
+        return quantized / MANA_SCALE * capacity;
+    }
+
+    public static int quantizeRegen(float regen) {
+        return Math.clamp(Math.round(regen / REGEN_STEP), 0, MAX_QUANTIZED);
+    }
+
+    public static float dequantizeRegen(int quantized) {
+        return quantized * REGEN_STEP;
+    }
+
+    /**
+     * Bytes this payload takes on the wire, not counting the channel id.
+     */
+    public int encodedSize() {
+        int size = VarInts.getSizeInBytes(mask);
+        for (int i = 0; i < POOLS; i++) {
+            size += has(manaBit(i)) ? Short.BYTES : 0;
+            size += has(regenBit(i)) ? Short.BYTES : 0;
+            size += has(capacityBit(i)) ? VarInts.getSizeInBytes(capacity[i]) : 0;
+        }
+        return size + (has(PRIORITY_BIT) ? Byte.BYTES : 0);
+    }
+
+    private void write(RegistryByteBuf buf) {
+        buf.writeVarInt(mask);
+        for (int i = 0; i < POOLS; i++) {
+            if (has(manaBit(i))) {
+                buf.writeShort(mana[i]);
+            }
+            if (has(regenBit(i))) {
+                buf.writeShort(regen[i]);
+            }
+            if (has(capacityBit(i))) {
+                buf.writeVarInt(capacity[i]);
+            }
+        }
+        if (has(PRIORITY_BIT)) {
+            buf.writeByte(priority);
+        }
+    }
+
+    private static ManaSyncPayload read(RegistryByteBuf buf) {
+        int mask = buf.readVarInt();
+        int[] mana = new int[POOLS];
+        int[] regen = new int[POOLS];
+        int[] capacity = new int[POOLS];
+        for (int i = 0; i < POOLS; i++) {
+            if ((mask & manaBit(i)) != 0) {
+                mana[i] = buf.readUnsignedShort();
+            }
+            if ((mask & regenBit(i)) != 0) {
+                regen[i] = buf.readUnsignedShort();
+            }
+            if ((mask & capacityBit(i)) != 0) {
+                capacity[i] = buf.readVarInt();
+            }
+        }
+        int priority = (mask & PRIORITY_BIT) != 0 ? buf.readUnsignedByte() : 0;
+        return new ManaSyncPayload(mask, mana, regen, capacity, priority);
+    }
 
     @Override
     public @NotNull Id<? extends CustomPayload> getId() {
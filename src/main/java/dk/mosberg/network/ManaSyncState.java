@@ -0,0 +1,66 @@
+package dk.mosberg.network;
+
+import dk.mosberg.mana.ManaPool;
+import dk.mosberg.mana.ManaPoolType;
+import dk.mosberg.mana.PlayerManaData;
+
+/**
+ * The mana values one client was last sent, at sync precision, for building the next
+ * {@link ManaSyncPayload} as a delta. One per connected player; server thread only.
+ */
+final class ManaSyncState {
+    private final int[] mana = new int[ManaSyncPayload.POOLS];
+    private final int[] regen = new int[ManaSyncPayload.POOLS];
+    private final int[] capacity = new int[ManaSyncPayload.POOLS];
+    private int priority;
+    private boolean sent; // Until the first payload, everything counts as changed
+
+    /**
+     * The payload bringing the client from what it was last sent to {@code manaData}, recording it
+     * as sent.
+     *
+     * @return The payload, or null if nothing changed at sync precision
+     */
+    ManaSyncPayload diff(PlayerManaData manaData) {
+        int[] newMana = new int[ManaSyncPayload.POOLS];
+        int[] newRegen = new int[ManaSyncPayload.POOLS];
+        int[] newCapacity = new int[ManaSyncPayload.POOLS];
+        int mask = 0;
+
+        // Effective regen rates (server-authoritative) for display
+        float efficiency = manaData.getEfficiencyModifier();
+        for (ManaPoolType type : ManaPoolType.values()) {
+            int i = type.ordinal();
+            ManaPool pool = manaData.getPool(type);
+            newCapacity[i] = pool.getMaxCapacity();
+            newMana[i] = ManaSyncPayload.quantizeMana(pool.getCurrentMana(), newCapacity[i]);
+            newRegen[i] = ManaSyncPayload.quantizeRegen(
+                    pool.getRegenRate() * (1f - manaData.getDrainEffect(type)) * efficiency);
+
+            if (!sent || newMana[i] != mana[i]) {
+                mask |= ManaSyncPayload.manaBit(i);
+            }
+            if (!sent || newRegen[i] != regen[i]) {
+                mask |= ManaSyncPayload.regenBit(i);
+            }
+            if (!sent || newCapacity[i] != capacity[i]) {
+                // Mana is a fraction of capacity, so it has to come along even if that is unchanged
+                mask |= ManaSyncPayload.capacityBit(i) | ManaSyncPayload.manaBit(i);
+            }
+        }
+        int newPriority = manaData.getActivePriority().ordinal();
+        if (!sent || newPriority != priority) {
+            mask |= ManaSyncPayload.PRIORITY_BIT;
+        }
+        if (mask == 0) {
+            return null;
+        }
+
+        System.arraycopy(newMana, 0, mana, 0, mana.length);
+        System.arraycopy(newRegen, 0, regen, 0, regen.length);
+        System.arraycopy(newCapacity, 0, capacity, 0, capacity.length);
+        priority = newPriority;
+        sent = true;
+        return new ManaSyncPayload(mask, newMana, newRegen, newCapacity, newPriority);
+    }
+}
@@ -0,0 +1,131 @@
+package dk.mosberg.network;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import dk.mosberg.MAM;
+import dk.mosberg.config.ServerConfig;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+/**
+ * Per-player token buckets for client spell packets.
+ *
+ * <p>
+ * Each player has one bucket per {@link PacketKind}, refilled continuously at the configured rate
+ * up to the configured burst size. A packet that finds the bucket empty is dropped right in the
+ * packet handler, before anything is queued or scheduled on the server thread. Rates are read from
+ * {@link ServerConfig} on every packet, so a config reload takes effect immediately.
+ */
+public class PacketRateLimiter {
+
+    /**
+     * Rate-limited client packet types.
+     */
+    public enum PacketKind {
+        CAST, SELECT;
+
+        float refillPerSecond(ServerConfig config) {
+            return this == CAST ? config.castPacketsPerSecond : config.selectPacketsPerSecond;
+        }
+
+        int burst(ServerConfig config) {
+            return this == CAST ? config.castPacketBurst : config.selectPacketBurst;
+        }
+    }
+
+    private static final class Bucket {
+        private float tokens = -1f; // filled to the burst size on first use
+        private long lastRefillNanos;
+
+        synchronized boolean tryAcquire(float refillPerSecond, int burst, long now) {
+            if (tokens < 0f) {
+                tokens = burst;
+            } else {
+                float refill = (now - lastRefillNanos) / 1_000_000_000f * refillPerSecond;
+                tokens = Math.min(burst, tokens + refill);
+            }
+            lastRefillNanos = now;
+
+            if (tokens >= 1f) {
+                tokens -= 1f;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final Map<UUID, Bucket[]> BUCKETS = new ConcurrentHashMap<>();
+    private static final LongAdder[] ACCEPTED = newCounters();
+    private static final LongAdder[] DROPPED = newCounters();
+
+    /**
+     * Takes one token from the player's bucket for this packet type.
+     *
+     * @return true if the packet may be handled, false if it must be dropped
+     */
+    public static boolean tryAcquire(ServerPlayerEntity player, PacketKind kind) {
+        ServerConfig config = ServerConfig.getInstance();
+        if (!config.enablePacketRateLimit) {
+            ACCEPTED[kind.ordinal()].increment();
+            return true;
+        }
+
+        Bucket[] buckets = BUCKETS.computeIfAbsent(player.getUuid(), uuid -> newBuckets());
+        if (buckets[kind.ordinal()].tryAcquire(kind.refillPerSecond(config), kind.burst(config),
+                System.nanoTime())) {
+            ACCEPTED[kind.ordinal()].increment();
+            return true;
+        }
+
+        DROPPED[kind.ordinal()].increment();
+        MAM.LOGGER.debug("Dropped {} packet from {} (rate limit)", kind,
+                player.getName().getString());
+        return false;
+    }
+
+    /**
+     * Forgets a player's buckets, e.g. on disconnect.
+     */
+    public static void remove(UUID playerId) {
+        BUCKETS.remove(playerId);
+    }
+
+    public static long getAccepted(PacketKind kind) {
+        return ACCEPTED[kind.ordinal()].sum();
+    }
+
+    public static long getDropped(PacketKind kind) {
+        return DROPPED[kind.ordinal()].sum();
+    }
+
+    public static int getTrackedPlayers() {
+        return BUCKETS.size();
+    }
+
+    /**
+     * Resets the accept and drop counters. Buckets keep their tokens.
+     */
+    public static void resetCounters() {
+        for (PacketKind kind : PacketKind.values()) {
+            ACCEPTED[kind.ordinal()].reset();
+            DROPPED[kind.ordinal()].reset();
+        }
+    }
+
+    private static Bucket[] newBuckets() {
+        Bucket[] buckets = new Bucket[PacketKind.values().length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        return buckets;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[PacketKind.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
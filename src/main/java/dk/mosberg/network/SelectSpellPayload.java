@@ -5,6 +5,7 @@ import dk.mosberg.MAM;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
 import net.minecraft.network.RegistryByteBuf;
 import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.util.Identifier;
 
@@ -16,14 +17,16 @@ import net.minecraft.util.Identifier;
  * combo information (previous spells for chain attacks) TODO: Add casting mode (quick-cast,
  * charged, etc.) TODO: Implement spell slot selection (quick-bar slot) TODO: Add customization
  * flags (spell modifiers)
+ *
+ * The spell is sent as its raw id (see {@link SpellIdTablePayload}), encoded as a varint.
  */
-public record SelectSpellPayload(Identifier spellId) implements CustomPayload {
+public record SelectSpellPayload(int spellId) implements CustomPayload {
 
     public static final CustomPayload.Id<SelectSpellPayload> ID =
             new CustomPayload.Id<>(Identifier.of(MAM.MOD_ID, "select_spell"));
 
     public static final PacketCodec<RegistryByteBuf, SelectSpellPayload> CODEC = PacketCodec
-            .tuple(Identifier.PACKET_CODEC, SelectSpellPayload::spellId, SelectSpellPayload::new);
+            .tuple(PacketCodecs.VAR_INT, SelectSpellPayload::spellId, SelectSpellPayload::new);
 
     @Override
     public @NotNull Id<? extends CustomPayload> getId() {
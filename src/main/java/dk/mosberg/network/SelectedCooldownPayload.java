@@ -10,16 +10,17 @@ import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.util.Identifier;
 
 /**
- * Server-to-Client packet for synchronizing the selected spell's cooldown.
+ * Server-to-Client packet for synchronizing the selected spell's cooldown. The spell is sent as its
+ * raw id (see {@link SpellIdTablePayload}).
  */
-public record SelectedCooldownPayload(Identifier spellId, float remainingSeconds)
+public record SelectedCooldownPayload(int spellId, float remainingSeconds)
         implements CustomPayload {
 
     public static final CustomPayload.Id<SelectedCooldownPayload> ID =
             new CustomPayload.Id<>(Identifier.of(MAM.MOD_ID, "selected_cooldown"));
 
     public static final PacketCodec<RegistryByteBuf, SelectedCooldownPayload> CODEC = PacketCodec
-            .tuple(Identifier.PACKET_CODEC, SelectedCooldownPayload::spellId, PacketCodecs.FLOAT,
+            .tuple(PacketCodecs.VAR_INT, SelectedCooldownPayload::spellId, PacketCodecs.FLOAT,
                     SelectedCooldownPayload::remainingSeconds, SelectedCooldownPayload::new);
 
     @Override
@@ -1,49 +1,78 @@
 package dk.mosberg.network;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import dk.mosberg.MAM;
 import dk.mosberg.item.SpellbookItem;
 import dk.mosberg.mana.ManaAttachments;
-import dk.mosberg.mana.ManaPoolType;
-import dk.mosberg.mana.PlayerManaData;
-import dk.mosberg.spell.SpellCaster;
+import dk.mosberg.mana.ManaRegenerationHandler;
+import dk.mosberg.network.PacketRateLimiter.PacketKind;
+import dk.mosberg.spell.Spell;
+import dk.mosberg.spell.SpellCastQueue;
 import dk.mosberg.spell.SpellRegistry;
+import dk.mosberg.spell.SpellSyncManifest;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.minecraft.item.ItemStack;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.Vec3d;
 
 /**
  * Registers server-side packet handlers.
  *
  * TODO: Implement server-side spell validation (check player permissions/tier) TODO: Add anti-cheat
  * verification for spell parameters TODO: Implement lag compensation for spell targeting TODO: Add
- * batch packet handling for multi-spell sequences TODO: Implement connection rate limiting for
- * rapid spell casts TODO: Add player state tracking (casting, channeling, cooldown) TODO: Implement
- * spell log recording for replay/moderation TODO: Add cross-server spell sync for multiplayer
- * worlds TODO: Implement client-side prediction rollback on failure
+ * batch packet handling for multi-spell sequences TODO: Add player state tracking (casting,
+ * channeling, cooldown) TODO: Add cross-server spell sync for multiplayer worlds TODO: Implement
+ * client-side prediction rollback on failure
+ *
+ * Cast and select packets are rate limited per player by {@link PacketRateLimiter}. Every cast
+ * attempt is recorded by {@link dk.mosberg.spell.SpellCastLog}.
  */
 public class ServerNetworkHandler {
+    private static final double SPELL_EFFECT_RANGE = 64.0; // Beyond the vanilla particle range
+
+    // Spell set hash each connected client holds; only touched on the server thread
+    private static final Map<UUID, Long> syncedSpellHashes = new HashMap<>();
+    // Players sent a spell manifest they have not answered yet; each manifest gets one answer
+    private static final Set<UUID> awaitingSpellSyncRequest = new HashSet<>();
+
+    // What each connected client was last sent of its mana; only touched on the server thread
+    private static final Map<UUID, ManaSyncState> manaSyncStates = new HashMap<>();
+    private static long manaSyncsSent;
+    private static long manaSyncsSkipped;
+    private static long manaSyncBytes;
+    private static long manaSyncCountersSince; // Tick of the last reset
 
     @SuppressWarnings("null")
     public static void register() {
-        // Handle spell casting from client
+        // Handle spell casting from client; cast once per tick by the cast queue
         ServerPlayNetworking.registerGlobalReceiver(CastSpellPayload.ID, (payload, context) -> {
-            context.server().execute(() -> {
-                var player = context.player();
-                SpellRegistry.getSpell(payload.spellId()).ifPresentOrElse(
-                        spell -> SpellCaster.castSpell(player, spell),
-                        () -> MAM.LOGGER.warn("Player {} tried to cast unknown spell: {}",
-                                player.getName().getString(), payload.spellId()));
-            });
+            if (PacketRateLimiter.tryAcquire(context.player(), PacketKind.CAST)) {
+                SpellCastQueue.enqueue(context.player(), payload.spellId());
+            }
         });
 
         // Handle spell selection from spell GUI
         ServerPlayNetworking.registerGlobalReceiver(SelectSpellPayload.ID, (payload, context) -> {
+            if (!PacketRateLimiter.tryAcquire(context.player(), PacketKind.SELECT)) {
+                return;
+            }
             context.server().execute(() -> {
                 var player = context.player();
                 SpellRegistry.getSpell(payload.spellId()).ifPresentOrElse(spell -> {
                     ItemStack spellbook = findSpellbook(player);
                     if (!spellbook.isEmpty()) {
-                        SpellbookItem.setSelectedSpell(spellbook, payload.spellId());
+                        SpellbookItem.setSelectedSpell(spellbook, spell.getId());
                         MAM.LOGGER.debug("Spell {} bound to spellbook for player {}",
                                 spell.getName(), player.getName().getString());
                     } else {
@@ -55,11 +84,119 @@ public class ServerNetworkHandler {
             });
         });
 
+        // Client answers our spell manifest with the hash it has cached for this server
+        ServerPlayNetworking.registerGlobalReceiver(SpellSyncRequestPayload.ID,
+                (payload, context) -> {
+                    context.server().execute(() -> {
+                        // Unasked requests are dropped, so a client cannot pull the spell set
+                        // again and again
+                        if (awaitingSpellSyncRequest.remove(context.player().getUuid())) {
+                            syncSpellsToClient(context.player(), payload.cachedHash());
+                        }
+                    });
+                });
+
+        // Keep the client's raw id table and spell set current: on join and after every data pack
+        // reload
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+            syncSpellIdTableToClient(handler.getPlayer());
+            sendSpellManifest(handler.getPlayer());
+        });
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            syncedSpellHashes.remove(handler.getPlayer().getUuid());
+            awaitingSpellSyncRequest.remove(handler.getPlayer().getUuid());
+            manaSyncStates.remove(handler.getPlayer().getUuid());
+            PacketRateLimiter.remove(handler.getPlayer().getUuid());
+        });
+        ServerLifecycleEvents.END_DATA_PACK_RELOAD.register((server, resourceManager, success) -> {
+            if (success) {
+                broadcastSpellIdTable(server);
+                broadcastSpellSync(server);
+            }
+        });
+
         MAM.LOGGER.info("Registered server network handlers");
     }
 
     /**
-     * Sends mana data to a client.
+     * Sends the spell raw id table to a client.
+     */
+    public static void syncSpellIdTableToClient(
+            net.minecraft.server.network.ServerPlayerEntity player) {
+        ServerPlayNetworking.send(player, new SpellIdTablePayload(SpellRegistry.getIdTable()));
+    }
+
+    /**
+     * Sends the spell raw id table to every connected client.
+     */
+    public static void broadcastSpellIdTable(MinecraftServer server) {
+        SpellIdTablePayload payload = new SpellIdTablePayload(SpellRegistry.getIdTable());
+        for (var player : server.getPlayerManager().getPlayerList()) {
+            ServerPlayNetworking.send(player, payload);
+        }
+    }
+
+    /**
+     * Announces the current spell set hash to a client. The client replies with a
+     * {@link SpellSyncRequestPayload}, see {@link #syncSpellsToClient}. Only the first reply to
+     * each manifest is answered.
+     */
+    public static void sendSpellManifest(net.minecraft.server.network.ServerPlayerEntity player) {
+        SpellSyncManifest manifest = SpellRegistry.getSyncManifest();
+        awaitingSpellSyncRequest.add(player.getUuid());
+        ServerPlayNetworking.send(player,
+                new SpellManifestPayload(manifest.hash(), manifest.size()));
+    }
+
+    /**
+     * Brings a client holding the spell set with hash {@code clientHash} (0 for none) up to date:
+     * nothing if it is current, a delta if it holds the previous set, the full set otherwise.
+     */
+    public static void syncSpellsToClient(net.minecraft.server.network.ServerPlayerEntity player,
+            long clientHash) {
+        SpellSyncManifest current = SpellRegistry.getSyncManifest();
+        SpellSyncManifest previous = SpellRegistry.getPreviousSyncManifest();
+        if (clientHash == current.hash()) {
+            syncedSpellHashes.put(player.getUuid(), clientHash);
+            return;
+        }
+
+        Optional<SpellSyncPayload> payload;
+        if (clientHash != 0L && clientHash == previous.hash()) {
+            payload = current.delta(previous).map(delta -> new SpellSyncPayload(clientHash,
+                    current.hash(), delta.spells(), delta.removed()));
+        } else {
+            payload = current.full().map(
+                    full -> new SpellSyncPayload(0L, current.hash(), full, List.of()));
+        }
+        payload.ifPresentOrElse(p -> {
+            ServerPlayNetworking.send(player, p);
+            syncedSpellHashes.put(player.getUuid(), current.hash());
+            MAM.LOGGER.debug("Sent {} spell sync ({} bytes) to {}",
+                    p.isDelta() ? "delta" : "full", p.spells().length,
+                    player.getName().getString());
+        }, () -> MAM.LOGGER.warn("Could not encode spell sync for {}",
+                player.getName().getString()));
+    }
+
+    /**
+     * Pushes the reloaded spell set to every connected client, as a delta where possible.
+     */
+    public static void broadcastSpellSync(MinecraftServer server) {
+        for (var player : server.getPlayerManager().getPlayerList()) {
+            Long synced = syncedSpellHashes.get(player.getUuid());
+            if (synced != null) {
+                syncSpellsToClient(player, synced);
+            } else {
+                // Still waiting for its answer to the join manifest; ask again with the new hash
+                sendSpellManifest(player);
+            }
+        }
+    }
+
+    /**
+     * Sends a client whatever changed in its mana since the last sync, if anything did at sync
+     * precision; see {@link ManaSyncPayload}.
      */
     public static void syncManaToClient(net.minecraft.server.network.ServerPlayerEntity player) {
         @SuppressWarnings("null")
@@ -68,27 +205,51 @@ public class ServerNetworkHandler {
                         dk.mosberg.mana.PlayerCastingData::new),
                 "Player casting data attachment should always exist");
 
-        PlayerManaData manaData = castingData.getManaData();
-
-        // Compute effective regen rates (server-authoritative) for display
-        float eff = manaData.getEfficiencyModifier();
-        float personalRegen = manaData.getPool(ManaPoolType.PERSONAL).getRegenRate()
-                * (1f - manaData.getDrainEffect(ManaPoolType.PERSONAL)) * eff;
-        float auraRegen = manaData.getPool(ManaPoolType.AURA).getRegenRate()
-                * (1f - manaData.getDrainEffect(ManaPoolType.AURA)) * eff;
-        float reserveRegen = manaData.getPool(ManaPoolType.RESERVE).getRegenRate()
-                * (1f - manaData.getDrainEffect(ManaPoolType.RESERVE)) * eff;
-
-        ManaSyncPayload payload = new ManaSyncPayload(
-                manaData.getPool(ManaPoolType.PERSONAL).getCurrentMana(),
-                manaData.getPool(ManaPoolType.PERSONAL).getMaxCapacity(),
-                manaData.getPool(ManaPoolType.AURA).getCurrentMana(),
-                manaData.getPool(ManaPoolType.AURA).getMaxCapacity(),
-                manaData.getPool(ManaPoolType.RESERVE).getCurrentMana(),
-                manaData.getPool(ManaPoolType.RESERVE).getMaxCapacity(),
-                manaData.getActivePriority().name(), personalRegen, auraRegen, reserveRegen);
-
+        ManaSyncPayload payload = manaSyncStates
+                .computeIfAbsent(player.getUuid(), id -> new ManaSyncState())
+                .diff(castingData.getManaData());
+        if (payload == null) {
+            manaSyncsSkipped++;
+            return;
+        }
         ServerPlayNetworking.send(player, payload);
+        manaSyncsSent++;
+        manaSyncBytes += payload.encodedSize();
+    }
+
+    /**
+     * Mana syncs sent since the last {@link #resetManaSyncCounters()}.
+     */
+    public static long getManaSyncsSent() {
+        return manaSyncsSent;
+    }
+
+    /**
+     * Mana syncs that found nothing changed and sent nothing.
+     */
+    public static long getManaSyncsSkipped() {
+        return manaSyncsSkipped;
+    }
+
+    /**
+     * Bytes of mana sync payloads sent, not counting channel ids.
+     */
+    public static long getManaSyncBytes() {
+        return manaSyncBytes;
+    }
+
+    /**
+     * Server ticks the mana sync counters cover.
+     */
+    public static long getManaSyncTicks() {
+        return ManaRegenerationHandler.getTick() - manaSyncCountersSince;
+    }
+
+    public static void resetManaSyncCounters() {
+        manaSyncsSent = 0;
+        manaSyncsSkipped = 0;
+        manaSyncBytes = 0;
+        manaSyncCountersSince = ManaRegenerationHandler.getTick();
     }
 
     private static ItemStack findSpellbook(net.minecraft.server.network.ServerPlayerEntity player) {
@@ -112,11 +273,28 @@ public class ServerNetworkHandler {
 
     /**
      * Sends selected spell cooldown info to a client.
+     *
+     * @param spellId Raw id of the selected spell
      */
     public static void syncSelectedCooldownToClient(
-            net.minecraft.server.network.ServerPlayerEntity player,
-            net.minecraft.util.Identifier spellId, float remainingSeconds) {
+            net.minecraft.server.network.ServerPlayerEntity player, int spellId,
+            float remainingSeconds) {
         SelectedCooldownPayload payload = new SelectedCooldownPayload(spellId, remainingSeconds);
         ServerPlayNetworking.send(player, payload);
     }
+
+    /**
+     * Sends one spell visual to every player close enough to see it. Clients build the particles
+     * themselves (see {@link SpellEffectPayload}).
+     *
+     * @param radius Ring radius, beam length or burst spread, depending on the kind
+     */
+    public static void broadcastSpellEffect(ServerWorld world, Spell spell,
+            SpellEffectPayload.Kind kind, Vec3d origin, Vec3d direction, float radius) {
+        SpellEffectPayload payload = new SpellEffectPayload(spell.getRawId(), kind, origin,
+                direction, radius, world.getRandom().nextInt());
+        for (var player : PlayerLookup.around(world, origin, SPELL_EFFECT_RANGE + radius)) {
+            ServerPlayNetworking.send(player, payload);
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package dk.mosberg.network;
+
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.MAM;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Server-to-Client packet describing one spell visual. The client builds the particles itself
+ * from the spell's {@link dk.mosberg.spell.Spell.VfxData}, so a cast costs one packet instead of
+ * one per particle. The spell is sent as its raw id (see {@link SpellIdTablePayload}), and
+ * {@code seed} makes every client lay the particles out the same way.
+ *
+ * <ul>
+ * <li>{@link Kind#RING} - ring of {@code radius} around {@code origin}
+ * <li>{@link Kind#RITUAL} - ritual circle of {@code radius} around {@code origin}
+ * <li>{@link Kind#BEAM} - line from {@code origin}, {@code radius} blocks long, one particle per
+ * {@code direction} step (its length is the spacing)
+ * <li>{@link Kind#BURST} - burst at {@code origin} spread over {@code radius}
+ * </ul>
+ */
+public record SpellEffectPayload(int spellId, Kind kind, Vec3d origin, Vec3d direction,
+        float radius, int seed) implements CustomPayload {
+
+    public enum Kind {
+        RING, RITUAL, BEAM, BURST
+    }
+
+    public static final CustomPayload.Id<SpellEffectPayload> ID =
+            new CustomPayload.Id<>(Identifier.of(MAM.MOD_ID, "spell_effect"));
+
+    private static final PacketCodec<RegistryByteBuf, Kind> KIND_CODEC =
+            PacketCodecs.indexed(index -> Kind.values()[index], Kind::ordinal).cast();
+
+    // Positions need full precision; a direction only needs floats
+    private static final PacketCodec<RegistryByteBuf, Vec3d> POSITION_CODEC =
+            PacketCodec.tuple(PacketCodecs.DOUBLE, Vec3d::getX, PacketCodecs.DOUBLE, Vec3d::getY,
+                    PacketCodecs.DOUBLE, Vec3d::getZ, Vec3d::new);
+    private static final PacketCodec<RegistryByteBuf, Vec3d> DIRECTION_CODEC = PacketCodec.tuple(
+            PacketCodecs.FLOAT, vec -> (float) vec.x, PacketCodecs.FLOAT, vec -> (float) vec.y,
+            PacketCodecs.FLOAT, vec -> (float) vec.z, Vec3d::new);
+
+    public static final PacketCodec<RegistryByteBuf, SpellEffectPayload> CODEC = PacketCodec.tuple(
+            PacketCodecs.VAR_INT, SpellEffectPayload::spellId, KIND_CODEC,
+            SpellEffectPayload::kind, POSITION_CODEC, SpellEffectPayload::origin,
+            DIRECTION_CODEC, SpellEffectPayload::direction, PacketCodecs.FLOAT,
+            SpellEffectPayload::radius, PacketCodecs.INTEGER, SpellEffectPayload::seed,
+            SpellEffectPayload::new);
+
+    @Override
+    public @NotNull Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+
+    public static void register() {
+        PayloadTypeRegistry.playS2C().register(ID, CODEC);
+        MAM.LOGGER.info("Registered SpellEffectPayload");
+    }
+}
@@ -0,0 +1,36 @@
+package dk.mosberg.network;
+
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.MAM;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+/**
+ * Server-to-Client packet carrying the spell raw id table: entry {@code i} is the spell whose raw
+ * id is {@code i}. Sent on join and after every data pack reload, so the spell payloads can refer
+ * to spells by varint instead of by namespaced id.
+ */
+public record SpellIdTablePayload(List<Identifier> spellIds) implements CustomPayload {
+
+    public static final CustomPayload.Id<SpellIdTablePayload> ID =
+            new CustomPayload.Id<>(Identifier.of(MAM.MOD_ID, "spell_id_table"));
+
+    public static final PacketCodec<RegistryByteBuf, SpellIdTablePayload> CODEC =
+            PacketCodec.tuple(Identifier.PACKET_CODEC.collect(PacketCodecs.toList()),
+                    SpellIdTablePayload::spellIds, SpellIdTablePayload::new);
+
+    @Override
+    public @NotNull Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+
+    public static void register() {
+        PayloadTypeRegistry.playS2C().register(ID, CODEC);
+        MAM.LOGGER.info("Registered SpellIdTablePayload");
+    }
+}
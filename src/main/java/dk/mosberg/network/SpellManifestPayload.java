@@ -0,0 +1,35 @@
+package dk.mosberg.network;
+
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.MAM;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+/**
+ * Server-to-Client packet announcing the hash of the server's resolved spell set. Sent on join; the
+ * client answers with {@link SpellSyncRequestPayload} carrying the hash it already has cached for
+ * this server, so an unchanged set is never transferred twice.
+ */
+public record SpellManifestPayload(long hash, int spellCount) implements CustomPayload {
+
+    public static final CustomPayload.Id<SpellManifestPayload> ID =
+            new CustomPayload.Id<>(Identifier.of(MAM.MOD_ID, "spell_manifest"));
+
+    public static final PacketCodec<RegistryByteBuf, SpellManifestPayload> CODEC =
+            PacketCodec.tuple(PacketCodecs.LONG, SpellManifestPayload::hash, PacketCodecs.VAR_INT,
+                    SpellManifestPayload::spellCount, SpellManifestPayload::new);
+
+    @Override
+    public @NotNull Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+
+    public static void register() {
+        PayloadTypeRegistry.playS2C().register(ID, CODEC);
+        MAM.LOGGER.info("Registered SpellManifestPayload");
+    }
+}
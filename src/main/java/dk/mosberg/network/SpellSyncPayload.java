@@ -0,0 +1,47 @@
+package dk.mosberg.network;
+
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.MAM;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+/**
+ * Server-to-Client packet carrying resolved spells, compressed with
+ * {@link dk.mosberg.spell.SpellRegistry#compressSpells}.
+ *
+ * <p>
+ * With {@code baseHash == 0} the payload is the full set and {@code removed} is empty. Otherwise it
+ * is a delta against the set with hash {@code baseHash}: {@code spells} holds the added and changed
+ * spells and {@code removed} the ids to drop. Either way the result has hash {@code hash}.
+ */
+public record SpellSyncPayload(long baseHash, long hash, byte[] spells, List<Identifier> removed)
+        implements CustomPayload {
+
+    public static final CustomPayload.Id<SpellSyncPayload> ID =
+            new CustomPayload.Id<>(Identifier.of(MAM.MOD_ID, "spell_sync"));
+
+    public static final PacketCodec<RegistryByteBuf, SpellSyncPayload> CODEC = PacketCodec.tuple(
+            PacketCodecs.LONG, SpellSyncPayload::baseHash, PacketCodecs.LONG,
+            SpellSyncPayload::hash, PacketCodecs.BYTE_ARRAY, SpellSyncPayload::spells,
+            Identifier.PACKET_CODEC.collect(PacketCodecs.toList()), SpellSyncPayload::removed,
+            SpellSyncPayload::new);
+
+    public boolean isDelta() {
+        return baseHash != 0L;
+    }
+
+    @Override
+    public @NotNull Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+
+    public static void register() {
+        PayloadTypeRegistry.playS2C().register(ID, CODEC);
+        MAM.LOGGER.info("Registered SpellSyncPayload");
+    }
+}
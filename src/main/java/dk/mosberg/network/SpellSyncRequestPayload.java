@@ -0,0 +1,36 @@
+package dk.mosberg.network;
+
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.MAM;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+/**
+ * Client-to-Server packet asking for the spell set. {@code cachedHash} is the hash of the set the
+ * client already holds for this server, or 0 for none; the server answers with nothing, a delta or
+ * the full set accordingly.
+ */
+public record SpellSyncRequestPayload(long cachedHash) implements CustomPayload {
+
+    public static final CustomPayload.Id<SpellSyncRequestPayload> ID =
+            new CustomPayload.Id<>(Identifier.of(MAM.MOD_ID, "spell_sync_request"));
+
+    public static final PacketCodec<RegistryByteBuf, SpellSyncRequestPayload> CODEC =
+            PacketCodec.tuple(PacketCodecs.LONG, SpellSyncRequestPayload::cachedHash,
+                    SpellSyncRequestPayload::new);
+
+    @Override
+    public @NotNull Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+
+    @SuppressWarnings("null")
+    public static void register() {
+        PayloadTypeRegistry.playC2S().register(ID, CODEC);
+        MAM.LOGGER.info("Registered SpellSyncRequestPayload");
+    }
+}
@@ -99,6 +99,7 @@ public class Spell {
     private final AnimationData animation;
     private final List<String> tags;
     private final int formatVersion;
+    private int rawId = -1; // assigned by SpellRegistry, stable for the session
 
     public Spell(Identifier id, String name, String school, String description, String castType,
             float manaCost, float castTime, float cooldown, int tier, int requiredLevel,
@@ -380,6 +381,19 @@ public class Spell {
         return Optional.ofNullable(animation);
     }
 
+    /**
+     * Dense numeric id assigned by {@link SpellRegistry} at load, or -1 if this instance was never
+     * registered. Stable for the session, so it is safe to use as an array index or map key and
+     * to send over the network instead of the namespaced id.
+     */
+    public int getRawId() {
+        return rawId;
+    }
+
+    void setRawId(int rawId) {
+        this.rawId = rawId;
+    }
+
     public int getFormatVersion() {
         return formatVersion;
     }
@@ -0,0 +1,158 @@
+package dk.mosberg.spell;
+
+import java.util.List;
+import java.util.function.Predicate;
+import net.minecraft.block.BlockState;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * Traces spell beams through the world.
+ *
+ * <p>
+ * The beam first walks the blocks along its path (3D DDA) and stops at the first opaque full
+ * block or unloaded chunk. Block states are read straight from the chunk section under the
+ * cursor, so a beam only looks up a new chunk when it crosses into one and skips empty sections
+ * without touching their palettes. Targets are then taken from {@link SpellSpatialIndex} for the
+ * unobstructed part of the beam, in order along the beam, and the beam ends inside the last
+ * target it is allowed to reach when it has a pierce limit.
+ */
+public final class SpellBeamTracer {
+
+    /**
+     * Result of a trace.
+     *
+     * @param targets Entities hit, in order along the beam
+     * @param end Where the beam stops: its full range, the face of the blocking block, or the last
+     *        target it could pierce into
+     * @param blocked Whether a block or unloaded chunk cut the beam short
+     */
+    public record BeamTrace(List<LivingEntity> targets, Vec3d end, boolean blocked) {
+    }
+
+    private SpellBeamTracer() {
+    }
+
+    /**
+     * @param direction Beam direction, normalized
+     * @param maxPierce Entities the beam passes through before stopping in the next one, or a
+     *        negative value for no limit
+     */
+    public static BeamTrace trace(ServerWorld world, Vec3d start, Vec3d direction, double range,
+            double halfWidth, int maxPierce, Predicate<? super LivingEntity> filter) {
+        double length = clearDistance(world, start, direction, range);
+        boolean blocked = length < range;
+        Vec3d end = start.add(direction.multiply(length));
+
+        List<LivingEntity> targets =
+                SpellSpatialIndex.of(world).alongRay(start, end, halfWidth, filter);
+        if (maxPierce >= 0 && targets.size() > maxPierce + 1) {
+            targets = targets.subList(0, maxPierce + 1);
+            LivingEntity last = targets.get(targets.size() - 1);
+            double along = (last.getX() - start.x) * direction.x
+                    + (last.getY() + last.getHeight() / 2 - start.y) * direction.y
+                    + (last.getZ() - start.z) * direction.z;
+            end = start.add(direction.multiply(MathHelper.clamp(along, 0, length)));
+        }
+        return new BeamTrace(targets, end, blocked);
+    }
+
+    /**
+     * Distance along the ray to the first opaque block, or {@code range} if there is none.
+     */
+    private static double clearDistance(ServerWorld world, Vec3d start, Vec3d direction,
+            double range) {
+        SectionCursor cursor = new SectionCursor(world);
+        int x = MathHelper.floor(start.x);
+        int y = MathHelper.floor(start.y);
+        int z = MathHelper.floor(start.z);
+        int stepX = (int) Math.signum(direction.x);
+        int stepY = (int) Math.signum(direction.y);
+        int stepZ = (int) Math.signum(direction.z);
+        // Distance along the ray to the next block boundary on each axis, and per block
+        double nextX = boundary(start.x, direction.x, x, stepX);
+        double nextY = boundary(start.y, direction.y, y, stepY);
+        double nextZ = boundary(start.z, direction.z, z, stepZ);
+        double spanX = stepX == 0 ? Double.POSITIVE_INFINITY : 1.0 / Math.abs(direction.x);
+        double spanY = stepY == 0 ? Double.POSITIVE_INFINITY : 1.0 / Math.abs(direction.y);
+        double spanZ = stepZ == 0 ? Double.POSITIVE_INFINITY : 1.0 / Math.abs(direction.z);
+
+        double travelled = 0;
+        while (travelled < range) {
+            if (cursor.blocks(x, y, z)) {
+                return travelled;
+            }
+
+            if (nextX <= nextY && nextX <= nextZ) {
+                travelled = nextX;
+                x += stepX;
+                nextX += spanX;
+            } else if (nextY <= nextZ) {
+                travelled = nextY;
+                y += stepY;
+                nextY += spanY;
+            } else {
+                travelled = nextZ;
+                z += stepZ;
+                nextZ += spanZ;
+            }
+        }
+        return range;
+    }
+
+    private static double boundary(double origin, double direction, int block, int step) {
+        if (step == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return ((step > 0 ? block + 1 : block) - origin) / direction;
+    }
+
+    /**
+     * Block lookups that keep the current chunk and section between calls.
+     */
+    private static final class SectionCursor {
+        private final ServerWorld world;
+        private int chunkX = Integer.MIN_VALUE;
+        private int chunkZ = Integer.MIN_VALUE;
+        private int sectionIndex = -1;
+        private WorldChunk chunk;
+        private ChunkSection section;
+
+        SectionCursor(ServerWorld world) {
+            this.world = world;
+        }
+
+        /**
+         * Whether the block stops a beam: opaque full cubes and anything in an unloaded chunk.
+         */
+        boolean blocks(int x, int y, int z) {
+            if (world.isOutOfHeightLimit(y)) {
+                return false;
+            }
+            if ((x >> 4) != chunkX || (z >> 4) != chunkZ) {
+                chunkX = x >> 4;
+                chunkZ = z >> 4;
+                chunk = world.getChunkManager().getWorldChunk(chunkX, chunkZ);
+                sectionIndex = -1;
+            }
+            if (chunk == null) {
+                return true;
+            }
+
+            int index = chunk.getSectionIndex(y);
+            if (index != sectionIndex) {
+                sectionIndex = index;
+                section = chunk.getSectionArray()[index];
+            }
+            if (section.isEmpty()) {
+                return false;
+            }
+            BlockState state = section.getBlockState(x & 15, y & 15, z & 15);
+            return state.isOpaqueFullCube();
+        }
+    }
+}
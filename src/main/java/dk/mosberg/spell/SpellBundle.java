@@ -0,0 +1,235 @@
+package dk.mosberg.spell;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import dk.mosberg.MAM;
+import io.netty.buffer.Unpooled;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.util.Identifier;
+
+/**
+ * Compact binary form of a fully resolved spell set.
+ *
+ * <p>
+ * {@link SpellRegistry} writes the result of a full load (decode, validation, inheritance and
+ * variants) to {@code config/mam/spells.bundle}, tagged with a fingerprint of the inputs. On the
+ * next start the bundle is read back directly when the fingerprint still matches, skipping the
+ * whole JSON pipeline.
+ */
+final class SpellBundle {
+    static final Path BUNDLE_PATH =
+            FabricLoader.getInstance().getConfigDir().resolve(MAM.MOD_ID).resolve("spells.bundle");
+
+    private static final int MAGIC = 0x4D414D42; // "MAMB"
+    static final int BUNDLE_VERSION = 1; // bump whenever the layout below changes
+
+    private SpellBundle() {
+    }
+
+    /**
+     * Reads the bundle if it exists and was written for the given fingerprint.
+     *
+     * @return The resolved spells, or empty if the bundle is missing, stale or unreadable
+     */
+    static Optional<Map<Identifier, Spell>> read(Path path, long fingerprint) {
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+
+        try {
+            // Read onto the heap rather than mapped: a live mapping keeps Windows from replacing
+            // the file when the next reload writes a new bundle
+            PacketByteBuf buf = new PacketByteBuf(Unpooled.wrappedBuffer(Files.readAllBytes(path)));
+
+            if (buf.readableBytes() < 16 || buf.readInt() != MAGIC
+                    || buf.readVarInt() != BUNDLE_VERSION || buf.readLong() != fingerprint) {
+                return Optional.empty();
+            }
+
+            int count = buf.readVarInt();
+            Map<Identifier, Spell> spells = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                Spell spell = readSpell(buf);
+                spells.put(spell.getId(), spell);
+            }
+            return Optional.of(spells);
+        } catch (Exception e) {
+            MAM.LOGGER.warn("Ignoring unreadable spell bundle {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes the given spells to disk. The file is written next to the target and moved into
+     * place, so a crash never leaves a truncated bundle behind.
+     */
+    static void write(Path path, long fingerprint, Map<Identifier, Spell> spells) {
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        try {
+            buf.writeInt(MAGIC);
+            buf.writeVarInt(BUNDLE_VERSION);
+            buf.writeLong(fingerprint);
+            buf.writeVarInt(spells.size());
+            for (Spell spell : spells.values()) {
+                writeSpell(buf, spell);
+            }
+
+            Files.createDirectories(path.getParent());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer data = buf.nioBuffer();
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            MAM.LOGGER.debug("Wrote spell bundle with {} spells ({} bytes)", spells.size(),
+                    buf.writerIndex());
+        } catch (IOException e) {
+            MAM.LOGGER.warn("Failed to write spell bundle {}: {}", path, e.getMessage());
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * Writes every field of a resolved spell, including status effects and custom data.
+     */
+    static void writeSpell(PacketByteBuf buf, Spell spell) {
+        buf.writeIdentifier(spell.getId());
+        buf.writeString(spell.getName());
+        buf.writeString(spell.getSchool().name());
+        buf.writeString(spell.getDescription());
+        buf.writeString(spell.getCastType().name());
+        buf.writeFloat(spell.getManaCost());
+        buf.writeFloat(spell.getCastTime());
+        buf.writeFloat(spell.getCooldown());
+        buf.writeVarInt(spell.getTier());
+        buf.writeVarInt(spell.getRequiredLevel());
+        buf.writeFloat(spell.getDamage());
+        buf.writeFloat(spell.getRange());
+        buf.writeFloat(spell.getProjectileSpeed());
+        buf.writeFloat(spell.getAoeRadius());
+        buf.writeFloat(spell.getKnockback());
+
+        buf.writeVarInt(spell.getStatusEffects().size());
+        for (Spell.StatusEffectEntry effect : spell.getStatusEffects()) {
+            buf.writeString(effect.effect());
+            buf.writeVarInt(effect.duration());
+            buf.writeVarInt(effect.amplifier());
+        }
+
+        // Sorted so equal spells always encode to equal bytes (sync hashes depend on it)
+        buf.writeVarInt(spell.getCustomData().size());
+        for (Map.Entry<String, Float> entry : new TreeMap<>(spell.getCustomData()).entrySet()) {
+            buf.writeString(entry.getKey());
+            buf.writeFloat(entry.getValue());
+        }
+
+        buf.writeString(spell.getSound() == null ? "" : spell.getSound());
+
+        Optional<Spell.VfxData> vfx = spell.getVfxOptional();
+        buf.writeBoolean(vfx.isPresent());
+        vfx.ifPresent(data -> {
+            buf.writeString(data.particleType());
+            buf.writeVarInt(data.particleCount());
+            buf.writeString(data.color());
+        });
+
+        buf.writeVarInt(spell.getTags().size());
+        for (String tag : spell.getTags()) {
+            buf.writeString(tag);
+        }
+
+        buf.writeString(spell.getRarity().name());
+
+        buf.writeBoolean(spell.getParent().isPresent());
+        spell.getParent().ifPresent(buf::writeIdentifier);
+
+        Optional<Spell.AnimationData> animation = spell.getAnimationOptional();
+        buf.writeBoolean(animation.isPresent());
+        animation.ifPresent(data -> {
+            buf.writeVarInt(data.durationTicks());
+            buf.writeFloat(data.speedMultiplier());
+            buf.writeString(data.key());
+        });
+
+        buf.writeVarInt(spell.getFormatVersion());
+    }
+
+    /**
+     * Reads a spell written by {@link #writeSpell(PacketByteBuf, Spell)}.
+     */
+    static Spell readSpell(PacketByteBuf buf) {
+        Identifier id = buf.readIdentifier();
+        String name = buf.readString();
+        String school = buf.readString();
+        String description = buf.readString();
+        String castType = buf.readString();
+        float manaCost = buf.readFloat();
+        float castTime = buf.readFloat();
+        float cooldown = buf.readFloat();
+        int tier = buf.readVarInt();
+        int requiredLevel = buf.readVarInt();
+        float damage = buf.readFloat();
+        float range = buf.readFloat();
+        float projectileSpeed = buf.readFloat();
+        float aoeRadius = buf.readFloat();
+        float knockback = buf.readFloat();
+
+        int effectCount = buf.readVarInt();
+        List<Spell.StatusEffectEntry> effects = new ArrayList<>(effectCount);
+        for (int i = 0; i < effectCount; i++) {
+            effects.add(new Spell.StatusEffectEntry(buf.readString(), buf.readVarInt(),
+                    buf.readVarInt()));
+        }
+
+        int customCount = buf.readVarInt();
+        Map<String, Float> customData = new HashMap<>(customCount * 2);
+        for (int i = 0; i < customCount; i++) {
+            customData.put(buf.readString(), buf.readFloat());
+        }
+
+        String sound = buf.readString();
+
+        Optional<Spell.VfxData> vfx = buf.readBoolean()
+                ? Optional.of(new Spell.VfxData(buf.readString(), buf.readVarInt(),
+                        buf.readString()))
+                : Optional.empty();
+
+        int tagCount = buf.readVarInt();
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(buf.readString());
+        }
+
+        String rarity = buf.readString();
+        Optional<Identifier> parent =
+                buf.readBoolean() ? Optional.of(buf.readIdentifier()) : Optional.empty();
+        Optional<Spell.AnimationData> animation = buf.readBoolean()
+                ? Optional.of(new Spell.AnimationData(buf.readVarInt(), buf.readFloat(),
+                        buf.readString()))
+                : Optional.empty();
+        int formatVersion = buf.readVarInt();
+
+        return new Spell(id, name, school, description, castType, manaCost, castTime, cooldown,
+                tier, requiredLevel, damage, range, projectileSpeed, aoeRadius, knockback, effects,
+                customData, sound, vfx, tags, Optional.of(rarity), parent, animation,
+                formatVersion);
+    }
+}
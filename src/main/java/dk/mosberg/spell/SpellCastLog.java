@@ -0,0 +1,370 @@
+package dk.mosberg.spell;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import dk.mosberg.MAM;
+import dk.mosberg.config.ServerConfig;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
+
+/**
+ * Audit log of every cast attempt, for moderation and replaying what happened.
+ *
+ * <p>
+ * {@link #record} copies the attempt into a preallocated ring buffer and returns; it never locks
+ * or touches the disk. A background thread drains the buffer into gzip-compressed binary files
+ * under {@code logs/mam-casts}, starting a new file once one holds
+ * {@link ServerConfig#castLogMaxFileKb} of uncompressed records and deleting the oldest beyond
+ * {@link ServerConfig#castLogMaxFiles}. When the writer falls behind and the buffer is full, new
+ * attempts are dropped and counted rather than stalling the tick; {@link #getStats()} reports
+ * how close that is. {@link #read} scans the files back for {@code /mam castlog}.
+ *
+ * <p>
+ * The buffer has a single producer: call {@link #record} from the server thread only.
+ */
+public final class SpellCastLog {
+    public static final Path LOG_DIR =
+            FabricLoader.getInstance().getGameDir().resolve("logs").resolve("mam-casts");
+
+    private static final int MAGIC = 0x4D414D43; // "MAMC"
+    private static final int LOG_VERSION = 1; // bump whenever the record layout changes
+    private static final String FILE_SUFFIX = ".bin.gz";
+    private static final DateTimeFormatter FILE_NAME =
+            DateTimeFormatter.ofPattern("'casts-'yyyyMMdd-HHmmss-SSS'" + FILE_SUFFIX + "'");
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
+    private static final long FLUSH_INTERVAL_NANOS = 1_000_000_000L;
+
+    /**
+     * How a cast attempt ended. {@code CAST} means accepted and paid for; a cast that was then
+     * interrupted while channeling gets a second, {@code INTERRUPTED} entry.
+     */
+    public enum Result {
+        CAST, INTERRUPTED, BACKFIRED, BUSY, ON_COOLDOWN, NO_SPELLBOOK, NO_MANA;
+
+        private static final Result[] VALUES = values();
+    }
+
+    /**
+     * One logged attempt, as read back from disk.
+     */
+    public record Entry(long tick, long timeMillis, UUID playerId, String playerName,
+            Identifier spellId, double x, double y, double z, Result result, float manaConsumed) {
+    }
+
+    /**
+     * Writer health: records accepted, written and dropped since start, and the fullest the buffer
+     * has been.
+     */
+    public record Stats(long recorded, long written, long dropped, int buffered, int peakBuffered,
+            int capacity, long bytesWritten, int filesWritten) {
+    }
+
+    // Ring buffer, one array per field; slot = sequence & mask
+    private static int mask = -1;
+    private static long[] ticks;
+    private static long[] times;
+    private static UUID[] players;
+    private static String[] names;
+    private static Identifier[] spells;
+    private static double[] xs, ys, zs;
+    private static byte[] results;
+    private static float[] mana;
+
+    private static final AtomicLong head = new AtomicLong(); // next sequence to write
+    private static final AtomicLong tail = new AtomicLong(); // next sequence to drain
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong bytesWritten = new AtomicLong();
+    private static volatile int peakBuffered;
+    private static volatile int filesWritten;
+
+    private static volatile Thread writer;
+    private static volatile boolean running;
+
+    private SpellCastLog() {
+    }
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> start());
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> stop());
+        MAM.LOGGER.info("Registered spell cast log");
+    }
+
+    /**
+     * Logs a cast attempt. Does nothing when the log is disabled; drops the entry if the writer is
+     * {@code capacity} entries behind.
+     */
+    public static void record(ServerPlayerEntity player, Spell spell, Result result,
+            float manaConsumed) {
+        if (!running) {
+            return;
+        }
+        long sequence = head.get();
+        int buffered = (int) (sequence - tail.get());
+        if (buffered > mask) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (buffered >= peakBuffered) {
+            peakBuffered = buffered + 1;
+        }
+
+        int slot = (int) sequence & mask;
+        ticks[slot] = player.getEntityWorld().getServer().getTicks();
+        times[slot] = System.currentTimeMillis();
+        players[slot] = player.getUuid();
+        names[slot] = player.getName().getString();
+        spells[slot] = spell.getId();
+        xs[slot] = player.getX();
+        ys[slot] = player.getY();
+        zs[slot] = player.getZ();
+        results[slot] = (byte) result.ordinal();
+        mana[slot] = manaConsumed;
+        head.lazySet(sequence + 1); // Publishes the slot to the writer
+    }
+
+    public static boolean isRunning() {
+        return running;
+    }
+
+    public static Stats getStats() {
+        long recorded = head.get();
+        return new Stats(recorded, written.get(), dropped.get(), (int) (recorded - tail.get()),
+                peakBuffered, mask + 1, bytesWritten.get(), filesWritten);
+    }
+
+    /**
+     * Reads logged attempts back from every file, oldest first. Blocks on disk I/O; call it off
+     * the server thread.
+     *
+     * @param playerName Only attempts by this player (case-insensitive), or null for everyone
+     * @param fromMillis Earliest wall-clock time to include
+     * @param toMillis Latest wall-clock time to include
+     * @param limit Keep at most this many, the most recent ones
+     */
+    public static List<Entry> read(String playerName, long fromMillis, long toMillis, int limit) {
+        Deque<Entry> matches = new ArrayDeque<>();
+        for (Path file : listFiles()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(file))))) {
+                if (in.readInt() != MAGIC || in.readInt() != LOG_VERSION) {
+                    MAM.LOGGER.warn("Skipping cast log {} with an unknown format", file);
+                    continue;
+                }
+                while (true) {
+                    Entry entry = readEntry(in);
+                    if (entry.timeMillis() < fromMillis || entry.timeMillis() > toMillis) {
+                        continue;
+                    }
+                    if (playerName != null && !playerName.equalsIgnoreCase(entry.playerName())) {
+                        continue;
+                    }
+                    matches.addLast(entry);
+                    if (matches.size() > limit) {
+                        matches.removeFirst();
+                    }
+                }
+            } catch (EOFException e) {
+                // End of file, or the tail of the file still being written
+            } catch (IOException | RuntimeException e) {
+                MAM.LOGGER.warn("Stopped reading cast log {}: {}", file, e.getMessage());
+            }
+        }
+        return new ArrayList<>(matches);
+    }
+
+    private static void start() {
+        ServerConfig config = ServerConfig.getInstance();
+        if (!config.enableCastLog || running) {
+            return;
+        }
+        int capacity = Integer.highestOneBit(Math.max(64, config.castLogBufferSize));
+        if (mask != capacity - 1) {
+            mask = capacity - 1;
+            ticks = new long[capacity];
+            times = new long[capacity];
+            players = new UUID[capacity];
+            names = new String[capacity];
+            spells = new Identifier[capacity];
+            xs = new double[capacity];
+            ys = new double[capacity];
+            zs = new double[capacity];
+            results = new byte[capacity];
+            mana = new float[capacity];
+        }
+        head.set(0);
+        tail.set(0);
+        dropped.set(0);
+        written.set(0);
+        bytesWritten.set(0);
+        peakBuffered = 0;
+        filesWritten = 0;
+
+        running = true;
+        Thread thread = new Thread(SpellCastLog::drainLoop, "MAM cast log writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    private static void stop() {
+        Thread thread = writer;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        MAM.LOGGER.info("Cast log closed: {} written, {} dropped", written.get(), dropped.get());
+    }
+
+    /**
+     * Writer thread: drains the buffer until stopped, then drains what is left and closes.
+     */
+    private static void drainLoop() {
+        ServerConfig config = ServerConfig.getInstance();
+        long maxFileBytes = Math.max(1, config.castLogMaxFileKb) * 1024L;
+        DataOutputStream out = null;
+        long lastFlush = System.nanoTime();
+        try {
+            while (true) {
+                boolean stopping = !running;
+                long end = head.get();
+                long sequence = tail.get();
+                for (; sequence < end; sequence++) {
+                    if (out == null || out.size() >= maxFileBytes) {
+                        closeQuietly(out);
+                        out = openNewFile(config.castLogMaxFiles);
+                    }
+                    int before = out.size();
+                    writeEntry(out, (int) sequence & mask);
+                    bytesWritten.addAndGet(out.size() - before);
+                    tail.lazySet(sequence + 1); // Frees the slot for the producer
+                    written.incrementAndGet();
+                }
+
+                if (out != null && System.nanoTime() - lastFlush > FLUSH_INTERVAL_NANOS) {
+                    out.flush();
+                    lastFlush = System.nanoTime();
+                }
+                if (stopping) {
+                    break;
+                }
+                if (sequence == end) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+            MAM.LOGGER.error("Cast log writer failed, logging stopped: {}", e.getMessage());
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, int slot) throws IOException {
+        out.writeLong(ticks[slot]);
+        out.writeLong(times[slot]);
+        out.writeLong(players[slot].getMostSignificantBits());
+        out.writeLong(players[slot].getLeastSignificantBits());
+        out.writeUTF(names[slot]);
+        out.writeUTF(spells[slot].toString());
+        out.writeDouble(xs[slot]);
+        out.writeDouble(ys[slot]);
+        out.writeDouble(zs[slot]);
+        out.writeByte(results[slot]);
+        out.writeFloat(mana[slot]);
+        // Let the buffer release what the slot referenced
+        players[slot] = null;
+        names[slot] = null;
+        spells[slot] = null;
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        long tick = in.readLong();
+        long time = in.readLong();
+        UUID playerId = new UUID(in.readLong(), in.readLong());
+        String name = in.readUTF();
+        Identifier spellId = Identifier.of(in.readUTF());
+        double x = in.readDouble();
+        double y = in.readDouble();
+        double z = in.readDouble();
+        int result = in.readByte();
+        float manaConsumed = in.readFloat();
+        return new Entry(tick, time, playerId, name, spellId, x, y, z,
+                result >= 0 && result < Result.VALUES.length ? Result.VALUES[result] : Result.CAST,
+                manaConsumed);
+    }
+
+    /**
+     * Starts a new log file, deleting the oldest ones beyond {@code maxFiles}. The gzip stream
+     * sync-flushes, so {@link #read} can see records before the file is closed.
+     */
+    private static DataOutputStream openNewFile(int maxFiles) throws IOException {
+        Files.createDirectories(LOG_DIR);
+        List<Path> existing = listFiles();
+        for (int i = 0; i <= existing.size() - Math.max(1, maxFiles); i++) {
+            Files.deleteIfExists(existing.get(i));
+        }
+
+        Path file = LOG_DIR.resolve(LocalDateTime.now().format(FILE_NAME));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file), true)));
+        out.writeInt(MAGIC);
+        out.writeInt(LOG_VERSION);
+        filesWritten++;
+        return out;
+    }
+
+    /**
+     * Log files, oldest first (the names sort by creation time).
+     */
+    private static List<Path> listFiles() {
+        if (!Files.isDirectory(LOG_DIR)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(LOG_DIR)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .sorted().toList();
+        } catch (IOException e) {
+            MAM.LOGGER.warn("Failed to list cast logs in {}: {}", LOG_DIR, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static void closeQuietly(DataOutputStream out) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            MAM.LOGGER.warn("Failed to close cast log: {}", e.getMessage());
+        }
+    }
+}
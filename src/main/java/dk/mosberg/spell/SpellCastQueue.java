@@ -0,0 +1,145 @@
+package dk.mosberg.spell;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import dk.mosberg.MAM;
+import dk.mosberg.network.ServerNetworkHandler;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+
+/**
+ * Collects cast requests from the network and runs them once per tick, at the start of the server
+ * tick.
+ *
+ * <p>
+ * The drain runs in three stages: every request is validated and paid for
+ * ({@link SpellCaster#prepareCast}), the accepted casts are applied world by world
+ * ({@link SpellCaster#executeCast}) or, when the spell has a cast time, handed to
+ * {@link SpellCastScheduler} to channel, and finally each affected player gets one mana sync and
+ * one cooldown sync, however many casts they sent that tick. A player can still cast at most once
+ * per tick: the first accepted cast leaves them channeling, or in {@code COOLDOWN} until their
+ * casting data ticks.
+ */
+public class SpellCastQueue {
+    private record CastRequest(UUID playerId, int spellId) {
+    }
+
+    // Filled by the packet handlers, drained on the server thread
+    private static final Queue<CastRequest> PENDING = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger depth = new AtomicInteger();
+    private static volatile int peakDepth;
+
+    // Per-drain scratch state, reused across ticks
+    private static final Map<ServerWorld, List<SpellCaster.PreparedCast>> byWorld =
+            new LinkedHashMap<>();
+    private static final Set<ServerPlayerEntity> manaDirty = new LinkedHashSet<>();
+    private static final Map<ServerPlayerEntity, SpellCaster.PreparedCast> lastCast =
+            new LinkedHashMap<>();
+
+    public static void register() {
+        ServerTickEvents.START_SERVER_TICK.register(SpellCastQueue::drain);
+        MAM.LOGGER.info("Registered spell cast queue");
+    }
+
+    /**
+     * Queues a cast for the next drain. Safe to call from any thread.
+     *
+     * @param spellId Raw id of the spell
+     */
+    public static void enqueue(ServerPlayerEntity player, int spellId) {
+        PENDING.add(new CastRequest(player.getUuid(), spellId));
+        depth.incrementAndGet();
+    }
+
+    /**
+     * Requests waiting for the next drain.
+     */
+    public static int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Largest number of requests drained in one tick since the last {@link #resetPeakDepth()}.
+     */
+    public static int getPeakDepth() {
+        return peakDepth;
+    }
+
+    public static void resetPeakDepth() {
+        peakDepth = 0;
+    }
+
+    private static void drain(MinecraftServer server) {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        int requested = 0;
+        int accepted = 0;
+
+        // Validate and charge, in arrival order
+        CastRequest request;
+        while ((request = PENDING.poll()) != null) {
+            depth.decrementAndGet();
+            requested++;
+            ServerPlayerEntity player = server.getPlayerManager().getPlayer(request.playerId());
+            if (player == null) {
+                continue; // Disconnected since sending
+            }
+            Spell spell = SpellRegistry.getSpell(request.spellId()).orElse(null);
+            if (spell == null) {
+                MAM.LOGGER.warn("Player {} tried to cast unknown spell: {}",
+                        player.getName().getString(), request.spellId());
+                continue;
+            }
+
+            SpellCaster.PreparedCast cast = SpellCaster.prepareCast(player, spell);
+            if (cast == null) {
+                continue;
+            }
+            manaDirty.add(player);
+            if (!cast.backfired()) {
+                accepted++;
+                lastCast.put(player, cast);
+                if (!SpellCastScheduler.begin(cast)) {
+                    byWorld.computeIfAbsent((ServerWorld) player.getEntityWorld(),
+                            world -> new ArrayList<>()).add(cast);
+                }
+            }
+        }
+
+        // Apply effects grouped by world
+        for (List<SpellCaster.PreparedCast> casts : byWorld.values()) {
+            for (SpellCaster.PreparedCast cast : casts) {
+                SpellCaster.executeCast(cast);
+            }
+        }
+
+        // One sync per player
+        for (ServerPlayerEntity player : manaDirty) {
+            ServerNetworkHandler.syncManaToClient(player);
+        }
+        for (SpellCaster.PreparedCast cast : lastCast.values()) {
+            int spellId = cast.spell().getRawId();
+            ServerNetworkHandler.syncSelectedCooldownToClient(cast.player(), spellId,
+                    cast.castingData().getCooldownTracker().getRemainingCooldown(spellId));
+        }
+
+        peakDepth = Math.max(peakDepth, requested);
+        byWorld.clear();
+        manaDirty.clear();
+        lastCast.clear();
+        MAM.LOGGER.debug("Drained {} cast requests ({} cast) in {} µs", requested, accepted,
+                (System.nanoTime() - start) / 1_000);
+    }
+}
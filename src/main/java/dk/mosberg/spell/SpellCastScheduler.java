@@ -0,0 +1,214 @@
+package dk.mosberg.spell;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import dk.mosberg.MAM;
+import dk.mosberg.config.ServerConfig;
+import dk.mosberg.mana.ManaAttachments;
+import dk.mosberg.mana.PlayerCastingData;
+import dk.mosberg.network.ServerNetworkHandler;
+import net.fabricmc.fabric.api.entity.event.v1.ServerLivingEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Runs everything that happens some ticks after it was started: casts channeling for their cast
+ * time, the channel checks and ritual stages along the way, and delayed detonations.
+ *
+ * <p>
+ * All of it lives on one {@link SpellTimingWheel} advanced at the start of each server tick, right
+ * after {@link SpellCastQueue} drains, so starting, finishing and cancelling are O(1) and a player
+ * who is not casting costs nothing. A channeling player is checked for movement every
+ * {@link #CHANNEL_CHECK_INTERVAL} ticks; moving more than {@link #MAX_CHANNEL_DRIFT} blocks
+ * sideways or taking damage interrupts the cast. Mana and cooldown are paid when the cast starts
+ * and are not refunded on interrupt.
+ */
+public final class SpellCastScheduler {
+    public static final int CHANNEL_CHECK_INTERVAL = 5;
+    public static final double MAX_CHANNEL_DRIFT = 1.0;
+    public static final int RITUAL_STAGES = 3;
+    public static final float CHANNEL_CONCENTRATION = 1.0f; // Regained per channel check
+
+    /**
+     * A cast waiting for its cast time, with the tasks that belong to it.
+     */
+    private static final class ChanneledCast {
+        private final SpellCaster.PreparedCast cast;
+        private final Vec3d anchor;
+        private final List<SpellTimingWheel.Task> tasks = new ArrayList<>();
+
+        ChanneledCast(SpellCaster.PreparedCast cast) {
+            this.cast = cast;
+            ServerPlayerEntity player = cast.player();
+            this.anchor = new Vec3d(player.getX(), player.getY(), player.getZ());
+        }
+
+        void cancel() {
+            tasks.forEach(SpellTimingWheel.Task::cancel);
+            tasks.clear();
+        }
+    }
+
+    // Server thread only
+    private static final SpellTimingWheel WHEEL = new SpellTimingWheel();
+    private static final Map<UUID, ChanneledCast> IN_FLIGHT = new HashMap<>();
+
+    private SpellCastScheduler() {
+    }
+
+    public static void register() {
+        ServerTickEvents.START_SERVER_TICK.register(server -> WHEEL.advance());
+        ServerLivingEntityEvents.AFTER_DAMAGE
+                .register((entity, source, baseDamage, damageTaken, blocked) -> {
+                    if (entity instanceof ServerPlayerEntity player && damageTaken > 0) {
+                        interrupt(player, "§cCasting interrupted");
+                    }
+                });
+        ServerLivingEntityEvents.AFTER_DEATH.register((entity, source) -> {
+            if (entity instanceof ServerPlayerEntity player) {
+                interrupt(player, null);
+            }
+        });
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+            // A cast cannot outlive the session that started it
+            PlayerCastingData castingData = handler.getPlayer()
+                    .getAttachedOrCreate(ManaAttachments.PLAYER_CASTING, PlayerCastingData::new);
+            if (castingData.getCastingState().isActivelyCasting()
+                    && !IN_FLIGHT.containsKey(handler.getPlayer().getUuid())) {
+                castingData.cancelCasting();
+            }
+        });
+        ServerPlayConnectionEvents.DISCONNECT
+                .register((handler, server) -> interrupt(handler.getPlayer(), null));
+        MAM.LOGGER.info("Registered spell cast scheduler");
+    }
+
+    /**
+     * Server ticks a spell channels before it takes effect, after casting speed.
+     */
+    public static int castTicks(SpellCaster.PreparedCast cast) {
+        return castTicks(cast.spell(), cast.castingData());
+    }
+
+    public static int castTicks(Spell spell, PlayerCastingData castingData) {
+        if (!ServerConfig.getInstance().enableCastTimes) {
+            return 0;
+        }
+        float speed = castingData.getCastingSpeedModifier();
+        return Math.max(0, Math.round(spell.getCastTime() * 20f / speed));
+    }
+
+    /**
+     * Starts channeling a prepared cast, if its spell has a cast time. The cast's effects are
+     * applied when the time is up, followed by a mana sync; cooldown was already synced by the
+     * caller.
+     *
+     * @return Whether the cast was scheduled; if not, the caller executes it right away
+     */
+    public static boolean begin(SpellCaster.PreparedCast cast) {
+        int ticks = castTicks(cast);
+        if (ticks <= 0 || cast.backfired()) {
+            return false;
+        }
+
+        ServerPlayerEntity player = cast.player();
+        ChanneledCast channeled = new ChanneledCast(cast);
+        ChanneledCast previous = IN_FLIGHT.put(player.getUuid(), channeled);
+        if (previous != null) {
+            previous.cancel(); // Should not happen: the casting state blocks a second cast
+        }
+
+        for (int tick = CHANNEL_CHECK_INTERVAL; tick < ticks; tick += CHANNEL_CHECK_INTERVAL) {
+            channeled.tasks.add(WHEEL.schedule(tick, () -> checkChannel(channeled)));
+        }
+        if (cast.spell().getCastType() == SpellCastType.RITUAL) {
+            for (int stage = 1; stage < RITUAL_STAGES; stage++) {
+                channeled.tasks.add(WHEEL.schedule(ticks * stage / RITUAL_STAGES,
+                        () -> SpellCaster.showRitualCircle(player, cast.spell())));
+            }
+        }
+        channeled.tasks.add(WHEEL.schedule(ticks, () -> complete(channeled)));
+        return true;
+    }
+
+    /**
+     * Runs {@code action} after {@code delayTicks} server ticks, on the server thread. Cancel the
+     * returned task if the action is no longer wanted.
+     */
+    public static SpellTimingWheel.Task schedule(int delayTicks, Runnable action) {
+        return WHEEL.schedule(delayTicks, action);
+    }
+
+    /**
+     * Cancels the player's channeled cast, if any.
+     *
+     * @param message Actionbar message for the player, or null to say nothing
+     * @return Whether a cast was interrupted
+     */
+    public static boolean interrupt(ServerPlayerEntity player, String message) {
+        ChanneledCast channeled = IN_FLIGHT.remove(player.getUuid());
+        if (channeled == null) {
+            return false;
+        }
+        channeled.cancel();
+        channeled.cast.castingData().interruptCasting();
+        SpellCastLog.record(player, channeled.cast.spell(), SpellCastLog.Result.INTERRUPTED, 0);
+        if (message != null) {
+            player.sendMessage(Text.literal(message), true);
+        }
+        MAM.LOGGER.debug("Interrupted {} casting {}", player.getName().getString(),
+                channeled.cast.spell().getId());
+        return true;
+    }
+
+    public static boolean isChanneling(ServerPlayerEntity player) {
+        return IN_FLIGHT.containsKey(player.getUuid());
+    }
+
+    /**
+     * Casts currently channeling.
+     */
+    public static int getInFlight() {
+        return IN_FLIGHT.size();
+    }
+
+    /**
+     * Pending tasks of any kind: channel checks, ritual stages, completions and detonations.
+     */
+    public static int getScheduled() {
+        return WHEEL.size();
+    }
+
+    private static void checkChannel(ChanneledCast channeled) {
+        ServerPlayerEntity player = channeled.cast.player();
+        double dx = player.getX() - channeled.anchor.x;
+        double dz = player.getZ() - channeled.anchor.z;
+        if (dx * dx + dz * dz > MAX_CHANNEL_DRIFT * MAX_CHANNEL_DRIFT) {
+            interrupt(player, "§cCasting interrupted by movement");
+            return;
+        }
+        channeled.cast.castingData().maintainConcentration(CHANNEL_CONCENTRATION);
+    }
+
+    private static void complete(ChanneledCast channeled) {
+        ServerPlayerEntity player = channeled.cast.player();
+        if (IN_FLIGHT.get(player.getUuid()) != channeled) {
+            return;
+        }
+        IN_FLIGHT.remove(player.getUuid());
+        channeled.tasks.clear();
+        if (player.isRemoved()) {
+            // Died or changed entity since starting; nothing left to cast from
+            channeled.cast.castingData().cancelCasting();
+            return;
+        }
+        SpellCaster.executeCast(channeled.cast);
+        ServerNetworkHandler.syncManaToClient(player);
+    }
+}
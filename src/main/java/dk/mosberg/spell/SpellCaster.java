@@ -2,15 +2,19 @@ package dk.mosberg.spell;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.function.BooleanSupplier;
 import dk.mosberg.MAM;
+import dk.mosberg.config.ServerConfig;
 import dk.mosberg.entity.SpellProjectileEntity;
 import dk.mosberg.mana.ManaAttachments;
 import dk.mosberg.mana.PlayerCastingData;
 import dk.mosberg.mana.PlayerManaData;
 import dk.mosberg.network.ServerNetworkHandler;
+import dk.mosberg.network.SpellEffectPayload;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.entity.effect.StatusEffectInstance;
+import net.minecraft.item.ItemStack;
 import net.minecraft.particle.ParticleTypes;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
@@ -19,7 +23,6 @@ import net.minecraft.sound.SoundEvents;
 import net.minecraft.text.Text;
 import net.minecraft.util.hit.BlockHitResult;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Box;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.RaycastContext;
 
@@ -29,74 +32,160 @@ import net.minecraft.world.RaycastContext;
  * mechanics - Self-buff/debuff system - Trap placement - Transformation system
  */
 public class SpellCaster {
+    private static final double SYNERGY_RANGE = 10.0;
+    private static final double BEAM_HALF_WIDTH = 0.5;
+    private static final double MIN_BEAM_PARTICLE_SPACING = 0.1;
+    private static final float RITUAL_CIRCLE_RADIUS = 3.0f;
 
+    /**
+     * A cast that passed validation and has been paid for. {@code backfired} casts cost mana but
+     * have no effect and start no cooldown.
+     *
+     * @param manaSpent The mana actually drawn, which is what a failed effect refunds
+     */
+    public record PreparedCast(ServerPlayerEntity player, Spell spell,
+            PlayerCastingData castingData, boolean backfired, float manaSpent) {
+    }
+
+    /**
+     * How a cast attempt was settled by {@link #charge}, and the mana it drew after efficiency and
+     * burst mode.
+     */
+    public record Charge(SpellCastLog.Result result, float manaSpent) {
+    }
+
+    /**
+     * Casts a spell now, or starts channeling it if it has a cast time, and syncs the result to the
+     * player. Casts from the network go through {@link SpellCastQueue} instead, which runs the same
+     * stages batched once per tick.
+     */
     public static void castSpell(ServerPlayerEntity player, Spell spell) {
+        PreparedCast cast = prepareCast(player, spell);
+        if (cast == null) {
+            return;
+        }
+        if (!cast.backfired() && !SpellCastScheduler.begin(cast)) {
+            executeCast(cast);
+        }
+
+        ServerNetworkHandler.syncManaToClient(player);
+        if (!cast.backfired()) {
+            ServerNetworkHandler.syncSelectedCooldownToClient(player, spell.getRawId(),
+                    cast.castingData().getCooldownTracker().getRemainingCooldown(spell.getRawId()));
+        }
+    }
+
+    /**
+     * Validation stage: checks casting state, cooldown, spellbook and mana, then charges the mana,
+     * starts the cooldown and enters the casting state. Sends nothing to the client beyond
+     * rejection messages; the caller syncs mana and cooldown.
+     *
+     * @return The paid-for cast, or null if it was rejected and nothing changed
+     */
+    public static PreparedCast prepareCast(ServerPlayerEntity player, Spell spell) {
         @SuppressWarnings("null")
         PlayerCastingData castingData = Objects.requireNonNull(
                 player.getAttachedOrCreate(ManaAttachments.PLAYER_CASTING, PlayerCastingData::new),
                 "Player casting data attachment should always exist");
 
-        // Check if already casting
-        if (castingData.getCastingState().isActivelyCasting()) {
-            player.sendMessage(Text.literal("Already casting a spell"), true);
-            return;
+        SpellModifierStack.Resolved modifiers = modifiersFor(player, spell, castingData);
+        Charge charge = charge(castingData, spell, modifiers.manaCost(), modifiers.cooldown(),
+                () -> hasRequiredSpellbook(player, spell));
+        SpellCastLog.record(player, spell, charge.result(), charge.manaSpent());
+
+        switch (charge.result()) {
+            case BUSY -> player.sendMessage(Text.literal("Already casting a spell"), true);
+            case ON_COOLDOWN -> {
+                float remaining =
+                        castingData.getCooldownTracker().getRemainingCooldown(spell.getRawId());
+                player.sendMessage(Text.literal(
+                        String.format("Spell on cooldown: %.1fs remaining", remaining)), true);
+            }
+            case NO_MANA -> player.sendMessage(Text.translatable("mana.mam.insufficient"), true);
+            case BACKFIRED -> {
+                player.sendMessage(Text.literal("§cSpell backfired!"), true);
+                ServerWorld world = (ServerWorld) player.getEntityWorld();
+                player.damage(world, world.getDamageSources().magic(), 2.0f);
+                return new PreparedCast(player, spell, castingData, true, charge.manaSpent());
+            }
+            case CAST -> {
+                return new PreparedCast(player, spell, castingData, false,
+                        charge.manaSpent());
+            }
+            default -> {
+                // NO_SPELLBOOK: hasRequiredSpellbook already told the player why
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The player-free part of {@link #prepareCast}, shared with the cast replay: checks casting
+     * state, cooldown, {@code requirements} and mana, in that order, then charges the mana, starts
+     * the cooldown and enters the casting state. A backfire charges the mana and zeroes
+     * concentration but starts nothing.
+     *
+     * @param requirements Checked after the cooldown; false rejects with NO_SPELLBOOK
+     */
+    public static Charge charge(PlayerCastingData castingData, Spell spell,
+            float manaCostMultiplier, float cooldownMultiplier, BooleanSupplier requirements) {
+        // Check if already casting (or already cast this tick)
+        if (!castingData.getCastingState().canStartCast()) {
+            return new Charge(SpellCastLog.Result.BUSY, 0);
         }
 
         // Check cooldown FIRST before consuming mana
-        if (castingData.getCooldownTracker().isOnCooldown(spell.getId())) {
-            float remaining = castingData.getCooldownTracker().getRemainingCooldown(spell.getId());
-            player.sendMessage(
-                    Text.literal(String.format("Spell on cooldown: %.1fs remaining", remaining)),
-                    true);
-            return;
+        if (castingData.getCooldownTracker().isOnCooldown(spell.getRawId())) {
+            return new Charge(SpellCastLog.Result.ON_COOLDOWN, 0);
         }
 
-        if (!hasRequiredSpellbook(player, spell)) {
-            return;
+        if (!requirements.getAsBoolean()) {
+            return new Charge(SpellCastLog.Result.NO_SPELLBOOK, 0);
         }
 
         // Check mana cost
+        SpellStatTable stats = SpellRegistry.getStats();
         PlayerManaData manaData = castingData.getManaData();
-        float manaCost = spell.getManaCost();
+        float manaCost = stats.getManaCost(spell) * manaCostMultiplier;
 
         // Apply combo multiplier to reduce mana cost
         float comboDiscount = castingData.getComboCount() > 0 ? 0.9f : 1.0f;
         manaCost *= comboDiscount;
 
-        if (!manaData.consumeMana(manaCost)) {
-            player.sendMessage(Text.translatable("mana.mam.insufficient"), true);
-            return;
+        float manaSpent = manaData.consumeMana(manaCost);
+        if (manaSpent < 0) {
+            return new Charge(SpellCastLog.Result.NO_MANA, 0);
         }
 
         // Check for backfire
         if (castingData.shouldBackfire()) {
-            player.sendMessage(Text.literal("§cSpell backfired!"), true);
-            ServerWorld world = (ServerWorld) player.getEntityWorld();
-            player.damage(world, world.getDamageSources().magic(), 2.0f);
             castingData.setConcentration(0);
-            return;
+            return new Charge(SpellCastLog.Result.BACKFIRED, manaSpent);
         }
 
-        // Sync mana to client after consumption
-        ServerNetworkHandler.syncManaToClient(player);
-
         // Start cooldown for this spell
-        castingData.getCooldownTracker().startCooldown(spell.getId(), spell.getCooldown(), null);
-        // Sync selected cooldown to client for HUD visualization
-        float remaining = castingData.getCooldownTracker().getRemainingCooldown(spell.getId());
-        ServerNetworkHandler.syncSelectedCooldownToClient(player, spell.getId(), remaining);
-
-        // Start casting state
-        if (!castingData.startCasting(spell.getId())) {
-            player.sendMessage(Text.literal("Cannot start casting"), true);
-            return;
-        }
+        castingData.getCooldownTracker().startCooldown(spell.getRawId(),
+                stats.getCooldown(spell) * cooldownMultiplier, null);
+
+        // Start casting state; cannot fail after the canStartCast check above
+        castingData.startCasting(spell.getId());
+        return new Charge(SpellCastLog.Result.CAST, manaSpent);
+    }
+
+    /**
+     * Effect stage: applies a prepared cast to the world and finishes casting. May refund mana
+     * (failed teleport) without syncing it; the caller syncs afterwards.
+     */
+    public static void executeCast(PreparedCast cast) {
+        ServerPlayerEntity player = cast.player();
+        Spell spell = cast.spell();
+        PlayerCastingData castingData = cast.castingData();
 
         // Cast spell based on type
         switch (spell.getCastType()) {
             case PROJECTILE -> castProjectile(player, spell, castingData);
             case AOE -> castAoE(player, spell, castingData);
-            case UTILITY -> castUtility(player, spell, castingData);
+            case UTILITY -> castUtility(player, spell, castingData, cast.manaSpent());
             case RITUAL -> castRitual(player, spell, castingData);
             case SYNERGY -> castSynergy(player, spell, castingData);
             case SELF_CAST -> castSelfBuff(player, spell, castingData);
@@ -110,19 +199,31 @@ public class SpellCaster {
         recordSynergyWithNearbyPlayers(player, spell, castingData);
 
         // Finish casting
-        castingData.finishCasting();
+        finishCaster(castingData, spell);
 
         // Play sound effect
         if (!spell.getSound().isEmpty()) {
             ServerWorld world = (ServerWorld) player.getEntityWorld();
-            world.playSound(null, player.getX(), player.getY(), player.getZ(),
-                    SoundEvents.ENTITY_BLAZE_SHOOT, SoundCategory.PLAYERS, 1.0f, 1.0f);
+            SpellEffectBudget.playSound(world, positionOf(player), SoundEvents.ENTITY_BLAZE_SHOOT,
+                    SoundCategory.PLAYERS, 1.0f, 1.0f);
             MAM.LOGGER.debug("Spell {} has sound effect: {}", spell.getId(), spell.getSound());
         }
 
         MAM.LOGGER.debug("Player {} cast spell {}", player.getName().getString(), spell.getId());
     }
 
+    /**
+     * What executing a cast does to the caster's own state once its effects are applied: a ritual
+     * moves from channeling into execution, then casting finishes, updating combo, rhythm and
+     * fatigue. Shared with the cast replay, which has no world for the effects.
+     */
+    public static void finishCaster(PlayerCastingData castingData, Spell spell) {
+        if (spell.getCastType() == SpellCastType.RITUAL) {
+            castingData.beginExecution();
+        }
+        castingData.finishCasting();
+    }
+
     private static void castProjectile(ServerPlayerEntity player, Spell spell,
             PlayerCastingData castingData) {
         ServerWorld world = (ServerWorld) player.getEntityWorld();
@@ -148,13 +249,13 @@ public class SpellCaster {
         float powerMultiplier = castingData.getConcentrationPowerMultiplier()
                 * castingData.getComboMultiplier() * castingData.getEffectivenessMultiplier();
 
-        float damage = spell.getDamage() * powerMultiplier;
+        SpellStatTable stats = SpellRegistry.getStats();
+        SpellModifierStack.Resolved modifiers = modifiersFor(player, spell, castingData);
+        float damage = stats.getDamage(spell) * modifiers.power() * powerMultiplier;
 
         // Get entities in AoE radius
-        double radius = spell.getAoeRadius();
-        world.getEntitiesByClass(net.minecraft.entity.LivingEntity.class,
-                player.getBoundingBox().expand(radius),
-                entity -> entity != player && entity.squaredDistanceTo(player) <= radius * radius)
+        double radius = stats.getAoeRadius(spell) * modifiers.range();
+        SpellSpatialIndex.of(world).inRadius(positionOf(player), radius, entity -> entity != player)
                 .forEach(entity -> {
                     // Apply damage
                     entity.damage(world, player.getDamageSources().playerAttack(player), damage);
@@ -169,24 +270,20 @@ public class SpellCaster {
                     }
                 });
 
-        // Spawn particles
-        for (int i = 0; i < 20; i++) {
-            double angle = (2 * Math.PI * i) / 20;
-            double x = player.getX() + Math.cos(angle) * radius;
-            double z = player.getZ() + Math.sin(angle) * radius;
-            world.spawnParticles(ParticleTypes.FLAME, x, player.getY() + 0.5, z, 1, 0, 0, 0, 0);
-        }
+        // Ring particles, built by the clients
+        ServerNetworkHandler.broadcastSpellEffect(world, spell, SpellEffectPayload.Kind.RING,
+                positionOf(player).add(0, 0.5, 0), Vec3d.ZERO, (float) radius);
 
         MAM.LOGGER.debug("Casting AoE spell: {} with radius {} and damage {}", spell.getId(),
                 radius, damage);
     }
 
     private static void castUtility(ServerPlayerEntity player, Spell spell,
-            PlayerCastingData castingData) {
+            PlayerCastingData castingData, float manaSpent) {
         // Check if this is a teleportation spell
         if (spell.getId().getPath().contains("teleport")
                 || spell.getId().getPath().contains("blink")) {
-            castTeleportation(player, spell, castingData);
+            castTeleportation(player, spell, castingData, manaSpent);
             return;
         }
 
@@ -202,11 +299,12 @@ public class SpellCaster {
     }
 
     private static void castTeleportation(ServerPlayerEntity player, Spell spell,
-            PlayerCastingData castingData) {
+            PlayerCastingData castingData, float manaSpent) {
         ServerWorld world = (ServerWorld) player.getEntityWorld();
 
         // Get teleport range from spell range
-        float range = spell.getRange();
+        SpellStatTable stats = SpellRegistry.getStats();
+        float range = stats.getRange(spell) * modifiersFor(player, spell, castingData).range();
 
         // Raycast to find target position
         Vec3d start = player.getEyePos();
@@ -223,16 +321,15 @@ public class SpellCaster {
         // Safety checks
         if (!isSafeTeleportLocation(world, teleportPos)) {
             player.sendMessage(Text.literal("§cCannot teleport to unsafe location!"), true);
-            // Refund mana since teleport failed (restore to active priority pool)
+            // Refund what the cast drew since teleport failed (restore to active priority pool)
             PlayerManaData manaData = castingData.getManaData();
-            manaData.restoreMana(manaData.getActivePriority(), spell.getManaCost());
-            ServerNetworkHandler.syncManaToClient(player);
+            manaData.restoreMana(manaData.getActivePriority(), manaSpent);
             return;
         }
 
         // Spawn departure particles
-        world.spawnParticles(ParticleTypes.PORTAL, player.getX(), player.getY() + 1, player.getZ(),
-                30, 0.3, 0.5, 0.3, 0.5);
+        SpellEffectBudget.spawnParticles(world, ParticleTypes.PORTAL, player.getX(),
+                player.getY() + 1, player.getZ(), 30, 0.3, 0.5, 0.3, 0.5);
 
         // Play departure sound
         world.playSound(null, player.getX(), player.getY(), player.getZ(),
@@ -240,10 +337,11 @@ public class SpellCaster {
 
         // Teleport player (simple version)
         player.teleport(teleportPos.x, teleportPos.y, teleportPos.z, false);
+        SpellSpatialIndex.invalidate(world); // Still filed where they left
 
         // Spawn arrival particles
-        world.spawnParticles(ParticleTypes.PORTAL, teleportPos.x, teleportPos.y + 1, teleportPos.z,
-                30, 0.3, 0.5, 0.3, 0.5);
+        SpellEffectBudget.spawnParticles(world, ParticleTypes.PORTAL, teleportPos.x,
+                teleportPos.y + 1, teleportPos.z, 30, 0.3, 0.5, 0.3, 0.5);
 
         // Play arrival sound
         world.playSound(null, teleportPos.x, teleportPos.y, teleportPos.z,
@@ -306,24 +404,16 @@ public class SpellCaster {
             PlayerCastingData castingData) {
         ServerWorld world = (ServerWorld) player.getEntityWorld();
 
-        // Ritual spells require channeling - enter channeling state
-        castingData.beginExecution();
+        showRitualCircle(player, spell);
 
-        // Create ritual circle particles
-        for (int i = 0; i < 360; i += 10) {
-            double angle = Math.toRadians(i);
-            double radius = 3.0;
-            double x = player.getX() + Math.cos(angle) * radius;
-            double z = player.getZ() + Math.sin(angle) * radius;
-            world.spawnParticles(ParticleTypes.ENCHANT, x, player.getY(), z, 1, 0, 0, 0, 0);
-        }
+        // Apply powerful AoE effect after channeling; the ritual bonus is in the modifier stack
+        SpellStatTable stats = SpellRegistry.getStats();
+        SpellModifierStack.Resolved modifiers = modifiersFor(player, spell, castingData);
+        double radius = stats.getAoeRadius(spell) * modifiers.range();
+        float damage = stats.getDamage(spell) * modifiers.power()
+                * castingData.getConcentrationPowerMultiplier();
 
-        // Apply powerful AoE effect after channeling
-        double radius = spell.getAoeRadius() * 1.5; // Rituals have 50% larger radius
-        float damage = spell.getDamage() * 2.0f * castingData.getConcentrationPowerMultiplier();
-
-        world.getEntitiesByClass(LivingEntity.class, player.getBoundingBox().expand(radius),
-                entity -> entity != player && entity.squaredDistanceTo(player) <= radius * radius)
+        SpellSpatialIndex.of(world).inRadius(positionOf(player), radius, entity -> entity != player)
                 .forEach(entity -> {
                     entity.damage(world, player.getDamageSources().playerAttack(player), damage);
 
@@ -339,15 +429,24 @@ public class SpellCaster {
         MAM.LOGGER.debug("Casting ritual spell: {} with channeled power", spell.getId());
     }
 
+    /**
+     * Ritual circle particles around the player, built by the clients. Also shown at each ritual
+     * stage while the ritual channels.
+     */
+    static void showRitualCircle(ServerPlayerEntity player, Spell spell) {
+        ServerNetworkHandler.broadcastSpellEffect((ServerWorld) player.getEntityWorld(), spell,
+                SpellEffectPayload.Kind.RITUAL, positionOf(player), Vec3d.ZERO,
+                RITUAL_CIRCLE_RADIUS);
+    }
+
     private static void castSynergy(ServerPlayerEntity player, Spell spell,
             PlayerCastingData castingData) {
         ServerWorld world = (ServerWorld) player.getEntityWorld();
 
         // Check for nearby players who recently cast spells
+        SpellSpatialIndex index = SpellSpatialIndex.of(world);
         List<ServerPlayerEntity> nearbyPlayers =
-                world.getPlayers(p -> p != player && p.squaredDistanceTo(player) < 100 // Within 10
-                                                                                       // blocks
-                );
+                index.playersInRadius(positionOf(player), SYNERGY_RANGE, p -> p != player);
 
         float synergyBonus = 1.0f;
         for (ServerPlayerEntity nearbyPlayer : nearbyPlayers) {
@@ -356,20 +455,20 @@ public class SpellCaster {
         }
 
         // Cast as powerful AoE with synergy multiplier
-        float damage =
-                spell.getDamage() * synergyBonus * castingData.getConcentrationPowerMultiplier();
-        double radius = spell.getAoeRadius() * (1.0 + synergyBonus * 0.2); // Radius grows with
-                                                                           // synergy
+        SpellStatTable stats = SpellRegistry.getStats();
+        SpellModifierStack.Resolved modifiers = modifiersFor(player, spell, castingData);
+        float damage = stats.getDamage(spell) * modifiers.power() * synergyBonus
+                * castingData.getConcentrationPowerMultiplier();
+        // Radius grows with synergy
+        double radius = stats.getAoeRadius(spell) * modifiers.range() * (1.0 + synergyBonus * 0.2);
 
-        world.getEntitiesByClass(LivingEntity.class, player.getBoundingBox().expand(radius),
-                entity -> entity != player && entity.squaredDistanceTo(player) <= radius * radius)
-                .forEach(entity -> {
-                    entity.damage(world, player.getDamageSources().playerAttack(player), damage);
-                });
+        index.inRadius(positionOf(player), radius, entity -> entity != player).forEach(entity -> {
+            entity.damage(world, player.getDamageSources().playerAttack(player), damage);
+        });
 
         // Visual feedback for synergy
-        world.spawnParticles(ParticleTypes.END_ROD, player.getX(), player.getY() + 2, player.getZ(),
-                20, 0.5, 0.5, 0.5, 0.1);
+        ServerNetworkHandler.broadcastSpellEffect(world, spell, SpellEffectPayload.Kind.BURST,
+                positionOf(player).add(0, 2, 0), Vec3d.ZERO, 0.5f);
 
         MAM.LOGGER.debug("Casting synergy spell: {} with {}x synergy bonus", spell.getId(),
                 synergyBonus);
@@ -390,8 +489,8 @@ public class SpellCaster {
 
         // Visual particles
         ServerWorld world = (ServerWorld) player.getEntityWorld();
-        world.spawnParticles(ParticleTypes.HAPPY_VILLAGER, player.getX(), player.getY() + 1,
-                player.getZ(), 15, 0.5, 0.5, 0.5, 0);
+        ServerNetworkHandler.broadcastSpellEffect(world, spell, SpellEffectPayload.Kind.BURST,
+                positionOf(player).add(0, 1, 0), Vec3d.ZERO, 0.5f);
 
         MAM.LOGGER.debug("Casting self-buff spell: {} with {}x duration", spell.getId(),
                 durationMultiplier);
@@ -405,8 +504,8 @@ public class SpellCaster {
         // For now, spawn particles to indicate summon location
         Vec3d summonPos = player.getEyePos().add(player.getRotationVector().multiply(2.0));
 
-        world.spawnParticles(ParticleTypes.PORTAL, summonPos.x, summonPos.y, summonPos.z, 50, 0.5,
-                1.0, 0.5, 0.1);
+        SpellEffectBudget.spawnParticles(world, ParticleTypes.PORTAL, summonPos.x, summonPos.y,
+                summonPos.z, 50, 0.5, 1.0, 0.5, 0.1);
 
         player.sendMessage(Text.literal("§5Summoned entity at position"), true);
 
@@ -428,8 +527,8 @@ public class SpellCaster {
 
         // Visual transformation effect
         ServerWorld world = (ServerWorld) player.getEntityWorld();
-        world.spawnParticles(ParticleTypes.WITCH, player.getX(), player.getY() + 1, player.getZ(),
-                30, 0.3, 1.0, 0.3, 0.05);
+        SpellEffectBudget.spawnParticles(world, ParticleTypes.WITCH, player.getX(),
+                player.getY() + 1, player.getZ(), 30, 0.3, 1.0, 0.3, 0.05);
 
         player.sendMessage(Text.literal("§6You feel your form changing..."), true);
 
@@ -442,7 +541,8 @@ public class SpellCaster {
 
         // Place trap at target location (raycast to find ground)
         Vec3d start = player.getCameraPosVec(1.0f);
-        Vec3d end = start.add(player.getRotationVector().multiply(spell.getRange()));
+        Vec3d end = start
+                .add(player.getRotationVector().multiply(SpellRegistry.getStats().getRange(spell)));
 
         BlockHitResult hitResult = world.raycast(new RaycastContext(start, end,
                 RaycastContext.ShapeType.OUTLINE, RaycastContext.FluidHandling.NONE, player));
@@ -451,8 +551,8 @@ public class SpellCaster {
 
         // TODO: Spawn actual trap entity when entity types are implemented
         // For now, mark location with particles
-        world.spawnParticles(ParticleTypes.WITCH, trapPos.getX() + 0.5, trapPos.getY(),
-                trapPos.getZ() + 0.5, 10, 0.2, 0.1, 0.2, 0);
+        SpellEffectBudget.spawnParticles(world, ParticleTypes.WITCH, trapPos.getX() + 0.5,
+                trapPos.getY(), trapPos.getZ() + 0.5, 10, 0.2, 0.1, 0.2, 0);
 
         player.sendMessage(Text.literal("§cTrap placed at location"), true);
 
@@ -466,33 +566,33 @@ public class SpellCaster {
         // Raycast to find beam targets
         Vec3d start = player.getCameraPosVec(1.0f);
         Vec3d direction = player.getRotationVector();
-        double range = spell.getRange();
-
-        // Check for entities in beam path
-        Vec3d end = start.add(direction.multiply(range));
-        Box beamBox = new Box(start, end).expand(0.5);
-
-        float damage = spell.getDamage() * castingData.getConcentrationPowerMultiplier();
-
-        List<Entity> hitEntities =
-                world.getOtherEntities(player, beamBox, entity -> entity instanceof LivingEntity);
-
-        for (Entity entity : hitEntities) {
-            if (entity instanceof LivingEntity living) {
-                living.damage(world, player.getDamageSources().playerAttack(player), damage);
-
-                // Knockback along beam direction
-                living.addVelocity(direction.x * 0.5, 0.2, direction.z * 0.5);
-                living.velocityDirty = true;
-            }
+        SpellStatTable stats = SpellRegistry.getStats();
+        SpellModifierStack.Resolved modifiers = modifiersFor(player, spell, castingData);
+        double range = stats.getRange(spell) * modifiers.range();
+
+        float damage = stats.getDamage(spell) * modifiers.power()
+                * castingData.getConcentrationPowerMultiplier();
+
+        // Walk the beam until it hits a wall or runs out of pierce
+        ServerConfig config = ServerConfig.getInstance();
+        int maxPierce = spell.getCustomData()
+                .getOrDefault("maxPierce", (float) config.beamMaxPierce).intValue();
+        SpellBeamTracer.BeamTrace trace = SpellBeamTracer.trace(world, start, direction, range,
+                BEAM_HALF_WIDTH, maxPierce, entity -> entity != player);
+        List<LivingEntity> hitEntities = trace.targets();
+
+        for (LivingEntity living : hitEntities) {
+            living.damage(world, player.getDamageSources().playerAttack(player), damage);
+
+            // Knockback along beam direction
+            living.addVelocity(direction.x * 0.5, 0.2, direction.z * 0.5);
+            living.velocityDirty = true;
         }
 
-        // Spawn beam particles
-        for (double d = 0; d < range; d += 0.5) {
-            Vec3d particlePos = start.add(direction.multiply(d));
-            world.spawnParticles(ParticleTypes.END_ROD, particlePos.x, particlePos.y, particlePos.z,
-                    1, 0.05, 0.05, 0.05, 0);
-        }
+        // Beam particles up to where the beam stopped, built by the clients
+        double spacing = Math.max(MIN_BEAM_PARTICLE_SPACING, config.beamParticleSpacing);
+        ServerNetworkHandler.broadcastSpellEffect(world, spell, SpellEffectPayload.Kind.BEAM,
+                start, direction.multiply(spacing), (float) trace.end().distanceTo(start));
 
         MAM.LOGGER.debug("Casting beam spell: {} hitting {} entities", spell.getId(),
                 hitEntities.size());
@@ -506,8 +606,8 @@ public class SpellCaster {
             PlayerCastingData castingData) {
         ServerWorld world = (ServerWorld) player.getEntityWorld();
 
-        List<ServerPlayerEntity> nearbyPlayers =
-                world.getPlayers(p -> p != player && p.squaredDistanceTo(player) < 100);
+        List<ServerPlayerEntity> nearbyPlayers = SpellSpatialIndex.of(world)
+                .playersInRadius(positionOf(player), SYNERGY_RANGE, p -> p != player);
 
         for (ServerPlayerEntity nearbyPlayer : nearbyPlayers) {
             castingData.recordSynergy(nearbyPlayer.getUuid(), spell.getSchool());
@@ -519,15 +619,33 @@ public class SpellCaster {
         }
     }
 
-    private static boolean hasRequiredSpellbook(ServerPlayerEntity player, Spell spell) {
-        var main = player.getMainHandStack();
-        var off = player.getOffHandStack();
+    private static SpellModifierStack.Resolved modifiersFor(ServerPlayerEntity player, Spell spell,
+            PlayerCastingData castingData) {
+        return castingData.getModifierStack().get(player, castingData, spell);
+    }
+
+    private static Vec3d positionOf(Entity entity) {
+        return new Vec3d(entity.getX(), entity.getY(), entity.getZ());
+    }
+
+    /**
+     * The spellbook a cast goes through: the main hand's if it holds one, else the off hand's.
+     *
+     * @return The spellbook stack, or {@link ItemStack#EMPTY} if neither hand holds one
+     */
+    static ItemStack castingSpellbook(ServerPlayerEntity player) {
+        ItemStack main = player.getMainHandStack();
+        if (main.getItem() instanceof dk.mosberg.item.SpellbookItem) {
+            return main;
+        }
+        ItemStack off = player.getOffHandStack();
+        return off.getItem() instanceof dk.mosberg.item.SpellbookItem ? off : ItemStack.EMPTY;
+    }
 
+    private static boolean hasRequiredSpellbook(ServerPlayerEntity player, Spell spell) {
         int tier = -1;
-        if (main.getItem() instanceof dk.mosberg.item.SpellbookItem mainBook) {
-            tier = mainBook.getTier();
-        } else if (off.getItem() instanceof dk.mosberg.item.SpellbookItem offBook) {
-            tier = offBook.getTier();
+        if (castingSpellbook(player).getItem() instanceof dk.mosberg.item.SpellbookItem book) {
+            tier = book.getTier();
         }
 
         if (tier < 0) {
@@ -1,31 +1,44 @@
 package dk.mosberg.spell;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
+import it.unimi.dsi.fastutil.ints.Int2FloatMap;
+import it.unimi.dsi.fastutil.ints.Int2FloatOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtList;
 import net.minecraft.nbt.NbtString;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.math.random.Random;
 
 /**
  * Tracks active spell cooldowns per player with advanced mechanics: - Shared cooldown groups -
  * Cooldown reduction modifiers - Cooldown stacking for repeated casts - Cooldown reset events -
  * Partial cooldown recovery by school - Cooldown immunity periods - Persistence across respawns
+ *
+ * Spells are keyed by their raw id ({@link Spell#getRawId()}); the {@link Identifier} overloads
+ * translate through {@link SpellRegistry#getRawId(Identifier)}. NBT still stores spell ids, since
+ * raw ids are only stable for one session.
  */
 public class SpellCooldownTracker {
-    private final Map<Identifier, Float> cooldowns = new HashMap<>();
+    private final Int2FloatOpenHashMap cooldowns = new Int2FloatOpenHashMap();
     private final Map<String, Float> groupCooldowns = new HashMap<>(); // Group ID -> remaining time
-    private final Map<Identifier, Integer> stackCounts = new HashMap<>(); // Spell -> consecutive
-                                                                          // uses
-    private final Set<Identifier> immuneSpells = new HashSet<>(); // Spells with immunity active
+    private final Int2IntOpenHashMap stackCounts = new Int2IntOpenHashMap(); // Spell -> consecutive
+                                                                             // uses
+    private final IntSet immuneSpells = new IntOpenHashSet(); // Spells with immunity active
+    // Cooldowns of spells not loaded right now, by spell id; kept for saving, not ticked
+    private final Map<String, Float> unloadedCooldowns = new HashMap<>();
 
     // Modifiers
     private float globalCooldownReduction = 1.0f; // 1.0 = normal, 0.5 = half cooldowns
     private final Map<SpellSchool, Float> schoolRecoveryModifiers = new HashMap<>();
     private boolean persistOnDeath = true;
 
+    private Random random = Random.create(); // Stack decay rolls
+
     public SpellCooldownTracker() {
         // Initialize school recovery modifiers
         for (SpellSchool school : SpellSchool.values()) {
@@ -39,9 +52,16 @@ public class SpellCooldownTracker {
      */
     public void tick(float deltaTime) {
         // Tick individual spell cooldowns with global reduction
-        cooldowns.replaceAll(
-                (spellId, remaining) -> remaining - (deltaTime * globalCooldownReduction));
-        cooldowns.entrySet().removeIf(entry -> entry.getValue() <= 0);
+        float step = deltaTime * globalCooldownReduction;
+        for (var it = cooldowns.int2FloatEntrySet().fastIterator(); it.hasNext();) {
+            Int2FloatMap.Entry entry = it.next();
+            float remaining = entry.getFloatValue() - step;
+            if (remaining <= 0) {
+                it.remove();
+            } else {
+                entry.setValue(remaining);
+            }
+        }
 
         // Tick group cooldowns
         groupCooldowns.replaceAll(
@@ -49,17 +69,42 @@ public class SpellCooldownTracker {
         groupCooldowns.entrySet().removeIf(entry -> entry.getValue() <= 0);
 
         // Decay stack counts slowly (reduce by 1 every 5 seconds)
-        if (Math.random() < deltaTime / 5.0) {
-            stackCounts.replaceAll((spellId, count) -> Math.max(0, count - 1));
-            stackCounts.entrySet().removeIf(entry -> entry.getValue() <= 0);
+        if (random.nextDouble() < deltaTime / 5.0) {
+            for (var it = stackCounts.int2IntEntrySet().fastIterator(); it.hasNext();) {
+                Int2IntMap.Entry entry = it.next();
+                if (entry.getIntValue() <= 1) {
+                    it.remove();
+                } else {
+                    entry.setValue(entry.getIntValue() - 1);
+                }
+            }
         }
     }
 
+    /**
+     * Replaces the generator behind the stack decay rolls, so a seeded replay ticks the same way
+     * every time.
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Whether {@link #tick} has nothing to count down or decay.
+     */
+    public boolean isIdle() {
+        return cooldowns.isEmpty() && groupCooldowns.isEmpty() && stackCounts.isEmpty();
+    }
+
     /**
      * Checks if a spell is currently on cooldown (individual or group).
      */
+    public boolean isOnCooldown(int spellId) {
+        return cooldowns.get(spellId) > 0;
+    }
+
     public boolean isOnCooldown(Identifier spellId) {
-        return cooldowns.containsKey(spellId) && cooldowns.get(spellId) > 0;
+        return isOnCooldown(SpellRegistry.getRawId(spellId));
     }
 
     /**
@@ -73,8 +118,12 @@ public class SpellCooldownTracker {
      * Gets the remaining cooldown time for a spell in seconds. Returns 0 if spell is not on
      * cooldown.
      */
+    public float getRemainingCooldown(int spellId) {
+        return cooldowns.get(spellId);
+    }
+
     public float getRemainingCooldown(Identifier spellId) {
-        return cooldowns.getOrDefault(spellId, 0f);
+        return getRemainingCooldown(SpellRegistry.getRawId(spellId));
     }
 
     /**
@@ -87,12 +136,12 @@ public class SpellCooldownTracker {
     /**
      * Starts or resets a cooldown for a spell with stacking penalties.
      *
-     * @param spellId Spell identifier
+     * @param spellId Raw spell id
      * @param baseCooldown Base cooldown duration
      * @param groupId Optional cooldown group (null if not grouped)
      */
-    public void startCooldown(Identifier spellId, float baseCooldown, String groupId) {
-        if (baseCooldown <= 0)
+    public void startCooldown(int spellId, float baseCooldown, String groupId) {
+        if (baseCooldown <= 0 || spellId < 0)
             return;
 
         // Check immunity
@@ -101,7 +150,7 @@ public class SpellCooldownTracker {
         }
 
         // Apply stacking penalty
-        int stackCount = stackCounts.getOrDefault(spellId, 0);
+        int stackCount = stackCounts.get(spellId);
         float stackMultiplier = 1.0f + (stackCount * 0.2f); // +20% per stack
         float effectiveCooldown = baseCooldown * stackMultiplier * globalCooldownReduction;
 
@@ -117,6 +166,10 @@ public class SpellCooldownTracker {
         stackCounts.put(spellId, stackCount + 1);
     }
 
+    public void startCooldown(Identifier spellId, float baseCooldown, String groupId) {
+        startCooldown(SpellRegistry.getRawId(spellId), baseCooldown, groupId);
+    }
+
     /**
      * Starts cooldown without group.
      */
@@ -128,8 +181,9 @@ public class SpellCooldownTracker {
      * Clears a spell's cooldown immediately.
      */
     public void clearCooldown(Identifier spellId) {
-        cooldowns.remove(spellId);
-        stackCounts.remove(spellId);
+        int rawId = SpellRegistry.getRawId(spellId);
+        cooldowns.remove(rawId);
+        stackCounts.remove(rawId);
     }
 
     /**
@@ -155,6 +209,7 @@ public class SpellCooldownTracker {
         cooldowns.clear();
         groupCooldowns.clear();
         stackCounts.clear();
+        unloadedCooldowns.clear();
     }
 
     // === Modifier Methods ===
@@ -193,7 +248,10 @@ public class SpellCooldownTracker {
      * @param durationSeconds How long immunity lasts (0 = permanent until cleared)
      */
     public void grantImmunity(Identifier spellId, float durationSeconds) {
-        immuneSpells.add(spellId);
+        int rawId = SpellRegistry.getRawId(spellId);
+        if (rawId >= 0) {
+            immuneSpells.add(rawId);
+        }
         // TODO: Add timed immunity expiration if needed
     }
 
@@ -201,11 +259,11 @@ public class SpellCooldownTracker {
      * Removes immunity from a spell.
      */
     public void revokeImmunity(Identifier spellId) {
-        immuneSpells.remove(spellId);
+        immuneSpells.remove(SpellRegistry.getRawId(spellId));
     }
 
     public boolean hasImmunity(Identifier spellId) {
-        return immuneSpells.contains(spellId);
+        return immuneSpells.contains(SpellRegistry.getRawId(spellId));
     }
 
     /**
@@ -219,7 +277,7 @@ public class SpellCooldownTracker {
      * Gets stack count for a spell (how many times cast recently).
      */
     public int getStackCount(Identifier spellId) {
-        return stackCounts.getOrDefault(spellId, 0);
+        return stackCounts.get(SpellRegistry.getRawId(spellId));
     }
 
     /**
@@ -228,8 +286,14 @@ public class SpellCooldownTracker {
     public NbtCompound writeNbt(NbtCompound nbt) {
         // Individual cooldowns
         NbtCompound cooldownsNbt = new NbtCompound();
-        for (Map.Entry<Identifier, Float> entry : cooldowns.entrySet()) {
-            cooldownsNbt.putFloat(entry.getKey().toString(), entry.getValue());
+        for (Int2FloatMap.Entry entry : cooldowns.int2FloatEntrySet()) {
+            Identifier spellId = SpellRegistry.getSpellId(entry.getIntKey());
+            if (spellId != null) {
+                cooldownsNbt.putFloat(spellId.toString(), entry.getFloatValue());
+            }
+        }
+        for (Map.Entry<String, Float> entry : unloadedCooldowns.entrySet()) {
+            cooldownsNbt.putFloat(entry.getKey(), entry.getValue());
         }
         nbt.put("cooldowns", cooldownsNbt);
 
@@ -242,15 +306,21 @@ public class SpellCooldownTracker {
 
         // Stack counts
         NbtCompound stacksNbt = new NbtCompound();
-        for (Map.Entry<Identifier, Integer> entry : stackCounts.entrySet()) {
-            stacksNbt.putInt(entry.getKey().toString(), entry.getValue());
+        for (Int2IntMap.Entry entry : stackCounts.int2IntEntrySet()) {
+            Identifier spellId = SpellRegistry.getSpellId(entry.getIntKey());
+            if (spellId != null) {
+                stacksNbt.putInt(spellId.toString(), entry.getIntValue());
+            }
         }
         nbt.put("stackCounts", stacksNbt);
 
         // Immune spells
         NbtList immuneList = new NbtList();
-        for (Identifier spellId : immuneSpells) {
-            immuneList.add(NbtString.of(spellId.toString()));
+        for (int rawId : immuneSpells) {
+            Identifier spellId = SpellRegistry.getSpellId(rawId);
+            if (spellId != null) {
+                immuneList.add(NbtString.of(spellId.toString()));
+            }
         }
         nbt.put("immuneSpells", immuneList);
 
@@ -273,17 +343,22 @@ public class SpellCooldownTracker {
      */
     public void readNbt(NbtCompound nbt) {
         // Individual cooldowns
+        unloadedCooldowns.clear();
         if (nbt.contains("cooldowns")) {
             var optionalCompound = nbt.getCompound("cooldowns");
             if (optionalCompound.isPresent()) {
                 NbtCompound cooldownsNbt = optionalCompound.get();
                 for (String key : cooldownsNbt.getKeys()) {
                     try {
-                        Identifier spellId = Identifier.tryParse(key);
-                        if (spellId != null) {
-                            var optionalFloat = cooldownsNbt.getFloat(key);
-                            if (optionalFloat.isPresent()) {
-                                cooldowns.put(spellId, optionalFloat.get());
+                        int rawId = rawIdOf(key);
+                        var optionalFloat = cooldownsNbt.getFloat(key);
+                        if (optionalFloat.isPresent()) {
+                            if (rawId >= 0) {
+                                cooldowns.put(rawId, (float) optionalFloat.get());
+                            } else if (Identifier.tryParse(key) != null) {
+                                // Spell not loaded right now (e.g. data pack disabled); keep it for
+                                // next save
+                                unloadedCooldowns.put(key, optionalFloat.get());
                             }
                         }
                     } catch (Exception e) {
@@ -314,11 +389,11 @@ public class SpellCooldownTracker {
                 NbtCompound stacksNbt = optionalCompound.get();
                 for (String key : stacksNbt.getKeys()) {
                     try {
-                        Identifier spellId = Identifier.tryParse(key);
-                        if (spellId != null) {
+                        int rawId = rawIdOf(key);
+                        if (rawId >= 0) {
                             var optionalInt = stacksNbt.getInt(key);
                             if (optionalInt.isPresent()) {
-                                stackCounts.put(spellId, optionalInt.get());
+                                stackCounts.put(rawId, (int) optionalInt.get());
                             }
                         }
                     } catch (Exception e) {
@@ -334,9 +409,9 @@ public class SpellCooldownTracker {
             NbtList immuneList = nbt.getList("immuneSpells").get();
             for (int i = 0; i < immuneList.size(); i++) {
                 try {
-                    Identifier spellId = Identifier.tryParse(immuneList.getString(i).get());
-                    if (spellId != null) {
-                        immuneSpells.add(spellId);
+                    int rawId = rawIdOf(immuneList.getString(i).get());
+                    if (rawId >= 0) {
+                        immuneSpells.add(rawId);
                     }
                 } catch (Exception e) {
                     // Skip invalid
@@ -371,4 +446,27 @@ public class SpellCooldownTracker {
             }
         }
     }
+
+    /**
+     * Raw id for a persisted spell id, or -1 if it is malformed or not loaded.
+     */
+    /**
+     * Moves kept cooldowns whose spell is loaded again back into the tracker; called after spells
+     * are reloaded.
+     */
+    public void resolveUnloaded() {
+        for (var it = unloadedCooldowns.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Float> entry = it.next();
+            int rawId = rawIdOf(entry.getKey());
+            if (rawId >= 0) {
+                cooldowns.put(rawId, (float) entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    private static int rawIdOf(String key) {
+        Identifier spellId = Identifier.tryParse(key);
+        return spellId == null ? -1 : SpellRegistry.getRawId(spellId);
+    }
 }
@@ -0,0 +1,113 @@
+package dk.mosberg.spell;
+
+import java.util.BitSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import net.minecraft.util.Identifier;
+
+/**
+ * {@code requires:} dependencies compiled to bitsets over raw spell ids.
+ *
+ * <p>
+ * Built by {@link SpellRegistrySnapshot} once per reload. Each spell gets a prerequisite mask, and
+ * each prerequisite gets the reverse mask of spells that require it. Answering "which spells can
+ * this player access" is then one OR per unknown prerequisite plus one AND-NOT, all word-wide,
+ * instead of parsing tags and scanning lists for every spell.
+ */
+final class SpellDependencyIndex {
+    private static final BitSet NONE = new BitSet();
+
+    private final int size;
+    private final BitSet loaded = new BitSet();
+    private final BitSet[] prerequisites;
+    private final BitSet[] dependents;
+    private final BitSet hasDependents = new BitSet();
+    private final BitSet unsatisfiable = new BitSet(); // requires a spell that is not loaded
+
+    SpellDependencyIndex(Spell[] byRawId, Object2IntMap<Identifier> rawIds) {
+        this.size = byRawId.length;
+        this.prerequisites = new BitSet[size];
+        this.dependents = new BitSet[size];
+
+        for (int rawId = 0; rawId < size; rawId++) {
+            Spell spell = byRawId[rawId];
+            if (spell == null) {
+                continue;
+            }
+            loaded.set(rawId);
+
+            for (Identifier required : spell.getPrerequisiteSpells()) {
+                int requiredId = rawIds.getInt(required);
+                if (requiredId < 0 || byRawId[requiredId] == null) {
+                    unsatisfiable.set(rawId);
+                    continue;
+                }
+                if (prerequisites[rawId] == null) {
+                    prerequisites[rawId] = new BitSet();
+                }
+                prerequisites[rawId].set(requiredId);
+                if (dependents[requiredId] == null) {
+                    dependents[requiredId] = new BitSet();
+                }
+                dependents[requiredId].set(rawId);
+                hasDependents.set(requiredId);
+            }
+        }
+    }
+
+    /**
+     * Prerequisites of a spell as raw ids. Do not modify.
+     */
+    BitSet prerequisites(int rawId) {
+        BitSet mask = rawId >= 0 && rawId < size ? prerequisites[rawId] : null;
+        return mask != null ? mask : NONE;
+    }
+
+    /**
+     * Spells that list the given spell as a prerequisite. Do not modify.
+     */
+    BitSet dependents(int rawId) {
+        BitSet mask = rawId >= 0 && rawId < size ? dependents[rawId] : null;
+        return mask != null ? mask : NONE;
+    }
+
+    /**
+     * Whether every prerequisite of the spell is loaded.
+     */
+    boolean isSatisfiable(int rawId) {
+        return rawId >= 0 && rawId < size && loaded.get(rawId) && !unsatisfiable.get(rawId);
+    }
+
+    /**
+     * Whether the spell's prerequisites are all in {@code known}.
+     */
+    boolean canAccess(int rawId, BitSet known) {
+        if (!isSatisfiable(rawId)) {
+            return false;
+        }
+        BitSet required = prerequisites(rawId);
+        for (int p = required.nextSetBit(0); p >= 0; p = required.nextSetBit(p + 1)) {
+            if (!known.get(p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Every loaded spell whose prerequisites are all in {@code known}, as a new bitset.
+     */
+    BitSet accessible(BitSet known) {
+        // Only prerequisites the player is missing can block anything
+        BitSet missing = (BitSet) hasDependents.clone();
+        missing.andNot(known);
+
+        BitSet blocked = (BitSet) unsatisfiable.clone();
+        for (int p = missing.nextSetBit(0); p >= 0; p = missing.nextSetBit(p + 1)) {
+            blocked.or(dependents[p]);
+        }
+
+        BitSet result = (BitSet) loaded.clone();
+        result.andNot(blocked);
+        return result;
+    }
+}
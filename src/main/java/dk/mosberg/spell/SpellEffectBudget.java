@@ -0,0 +1,255 @@
+package dk.mosberg.spell;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import dk.mosberg.config.ServerConfig;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.particle.ParticleEffect;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.sound.SoundEvent;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Per-tick budget for spell particles and sounds, so visual density degrades gracefully when many
+ * spells go off at once.
+ *
+ * <p>
+ * Server-side particle requests are merged per chunk and particle effect during the tick and sent
+ * at the end of it, one packet per merged request and viewer. Each viewer gets a count scaled down
+ * with distance ({@link #lodCount}) and at most {@link ServerConfig#particleBudgetPerPlayer}
+ * particles per tick. Identical sounds within {@link #SOUND_MERGE_RADIUS} blocks and
+ * {@link #SOUND_MERGE_TICKS} ticks of one already played are dropped. Client-built particles use
+ * the same {@link #lodCount} and an {@link Allowance} of their own.
+ */
+public final class SpellEffectBudget {
+    public static final double FULL_DETAIL_DISTANCE = 16.0;
+    public static final double PARTICLE_VIEW_DISTANCE = 32.0; // Same as vanilla spawnParticles
+    public static final double SOUND_MERGE_RADIUS = 4.0;
+    public static final int SOUND_MERGE_TICKS = 4;
+
+    /**
+     * Particles left to spend in one tick.
+     */
+    public static final class Allowance {
+        private int remaining;
+
+        public Allowance(int budget) {
+            this.remaining = budget;
+        }
+
+        /**
+         * Takes up to {@code count} particles from the allowance.
+         *
+         * @return How many may be spawned
+         */
+        public int take(int count) {
+            int granted = Math.min(count, remaining);
+            remaining -= granted;
+            return granted;
+        }
+
+        public boolean isSpent() {
+            return remaining <= 0;
+        }
+    }
+
+    private static final class MergedParticles {
+        private final ParticleEffect effect;
+        private int count;
+        private double weightedX, weightedY, weightedZ;
+        private double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        private double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+        private double spreadX, spreadY, spreadZ;
+        private double speed;
+
+        MergedParticles(ParticleEffect effect) {
+            this.effect = effect;
+        }
+
+        void add(Vec3d pos, int count, double dx, double dy, double dz, double speed) {
+            this.count += count;
+            weightedX += pos.x * count;
+            weightedY += pos.y * count;
+            weightedZ += pos.z * count;
+            minX = Math.min(minX, pos.x);
+            minY = Math.min(minY, pos.y);
+            minZ = Math.min(minZ, pos.z);
+            maxX = Math.max(maxX, pos.x);
+            maxY = Math.max(maxY, pos.y);
+            maxZ = Math.max(maxZ, pos.z);
+            spreadX = Math.max(spreadX, dx);
+            spreadY = Math.max(spreadY, dy);
+            spreadZ = Math.max(spreadZ, dz);
+            this.speed = Math.max(this.speed, speed);
+        }
+    }
+
+    private record PlayedSound(Vec3d pos, long tick) {
+    }
+
+    // The effect itself, not its type, so dust colours and block states stay apart
+    private record MergeKey(long chunk, ParticleEffect effect) {
+    }
+
+    // Server thread only
+    private static final Map<ServerWorld, Map<MergeKey, MergedParticles>> PENDING =
+            new IdentityHashMap<>();
+    private static final Map<ServerWorld, Map<Identifier, List<PlayedSound>>> RECENT_SOUNDS =
+            new IdentityHashMap<>();
+    private static final Map<ServerPlayerEntity, Allowance> allowances = new HashMap<>();
+
+    private static long requested;
+    private static long sent;
+    private static long soundsPlayed;
+    private static long soundsMerged;
+
+    private SpellEffectBudget() {
+    }
+
+    public static void register() {
+        ServerTickEvents.END_SERVER_TICK.register(SpellEffectBudget::flush);
+    }
+
+    /**
+     * Particle count for a viewer {@code distance} blocks away: the full count up to
+     * {@link #FULL_DETAIL_DISTANCE}, then falling off with distance, but at least one.
+     */
+    public static int lodCount(int base, double distance) {
+        if (base <= 0 || distance <= FULL_DETAIL_DISTANCE) {
+            return base;
+        }
+        return Math.max(1, (int) Math.round(base * FULL_DETAIL_DISTANCE / distance));
+    }
+
+    /**
+     * Queues particles for the end of the tick; same parameters as
+     * {@link ServerWorld#spawnParticles}.
+     */
+    public static void spawnParticles(ServerWorld world, ParticleEffect effect, double x,
+            double y, double z, int count, double dx, double dy, double dz, double speed) {
+        if (count <= 0) {
+            return;
+        }
+        requested += count;
+        if (!ServerConfig.getInstance().enableEffectBudget) {
+            world.spawnParticles(effect, x, y, z, count, dx, dy, dz, speed);
+            sent += count;
+            return;
+        }
+
+        MergeKey key = new MergeKey(
+                ChunkPos.toLong(MathHelper.floor(x) >> 4, MathHelper.floor(z) >> 4), effect);
+        PENDING.computeIfAbsent(world, w -> new LinkedHashMap<>())
+                .computeIfAbsent(key, k -> new MergedParticles(effect))
+                .add(new Vec3d(x, y, z), count, dx, dy, dz, speed);
+    }
+
+    /**
+     * Plays a sound for everyone nearby unless the same sound was just played close by.
+     *
+     * @return Whether the sound was played
+     */
+    public static boolean playSound(ServerWorld world, Vec3d pos, SoundEvent sound,
+            SoundCategory category, float volume, float pitch) {
+        long now = world.getTime();
+        List<PlayedSound> recent = RECENT_SOUNDS
+                .computeIfAbsent(world, w -> new HashMap<>())
+                .computeIfAbsent(sound.id(), id -> new ArrayList<>());
+        recent.removeIf(played -> now - played.tick() >= SOUND_MERGE_TICKS);
+        if (ServerConfig.getInstance().enableEffectBudget) {
+            for (PlayedSound played : recent) {
+                if (played.pos().isInRange(pos, SOUND_MERGE_RADIUS)) {
+                    soundsMerged++;
+                    return false;
+                }
+            }
+        }
+
+        world.playSound(null, pos.x, pos.y, pos.z, sound, category, volume, pitch);
+        recent.add(new PlayedSound(pos, now));
+        soundsPlayed++;
+        return true;
+    }
+
+    public static long getParticlesRequested() {
+        return requested;
+    }
+
+    public static long getParticlesSent() {
+        return sent;
+    }
+
+    public static long getSoundsPlayed() {
+        return soundsPlayed;
+    }
+
+    public static long getSoundsMerged() {
+        return soundsMerged;
+    }
+
+    public static void resetCounters() {
+        requested = 0;
+        sent = 0;
+        soundsPlayed = 0;
+        soundsMerged = 0;
+    }
+
+    private static void flush(MinecraftServer server) {
+        if (!PENDING.isEmpty()) {
+            int budget = ServerConfig.getInstance().particleBudgetPerPlayer;
+            double viewDistanceSq = PARTICLE_VIEW_DISTANCE * PARTICLE_VIEW_DISTANCE;
+            for (Map.Entry<ServerWorld, Map<MergeKey, MergedParticles>> entry : PENDING
+                    .entrySet()) {
+                ServerWorld world = entry.getKey();
+                for (MergedParticles merged : entry.getValue().values()) {
+                    double x = merged.weightedX / merged.count;
+                    double y = merged.weightedY / merged.count;
+                    double z = merged.weightedZ / merged.count;
+                    // Cover the area the merged requests came from
+                    double dx = Math.max(merged.spreadX, (merged.maxX - merged.minX) / 4);
+                    double dy = Math.max(merged.spreadY, (merged.maxY - merged.minY) / 4);
+                    double dz = Math.max(merged.spreadZ, (merged.maxZ - merged.minZ) / 4);
+
+                    for (ServerPlayerEntity player : world.getPlayers()) {
+                        double distanceSq = player.squaredDistanceTo(x, y, z);
+                        if (distanceSq > viewDistanceSq) {
+                            continue;
+                        }
+                        Allowance allowance =
+                                allowances.computeIfAbsent(player, p -> new Allowance(budget));
+                        int count = allowance
+                                .take(lodCount(merged.count, Math.sqrt(distanceSq)));
+                        if (count > 0) {
+                            world.spawnParticles(player, merged.effect, false, false, x, y, z,
+                                    count, dx, dy, dz, merged.speed);
+                            sent += count;
+                        }
+                    }
+                }
+            }
+            PENDING.clear();
+            allowances.clear();
+        }
+
+        // Forget sounds that can no longer be merged with
+        if (server.getTicks() % 20 == 0) {
+            RECENT_SOUNDS.forEach((world, sounds) -> {
+                long now = world.getTime();
+                sounds.values().forEach(recent -> recent
+                        .removeIf(played -> now - played.tick() >= SOUND_MERGE_TICKS));
+                sounds.values().removeIf(List::isEmpty);
+            });
+            RECENT_SOUNDS.values().removeIf(Map::isEmpty);
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package dk.mosberg.spell;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import com.mojang.serialization.Dynamic;
 import dk.mosberg.MAM;
 
@@ -32,7 +35,7 @@ import dk.mosberg.MAM;
  * SpellMigrationRegistry.register(SpellMigration.create(1, 2, this::migrateV1ToV2));
  * SpellMigrationRegistry.register(SpellMigration.create(2, 3, this::migrateV2ToV3));
  *
- * // Spell with formatVersion=1 automatically migrated to 3
+ * // Spell with format_version=1 automatically migrated to 3
  * Dynamic<?> spellData = SpellMigrationRegistry.migrateToLatest(spellJson, 1);
  * </pre>
  */
@@ -47,6 +50,35 @@ public class SpellMigrationRegistry {
     /** Ordered list of all migrations (for easy iteration) */
     private static final List<SpellMigration> MIGRATION_CHAIN = new ArrayList<>();
 
+    /**
+     * Source version -> every migration from there to CURRENT_VERSION composed into one function.
+     * Rebuilt whenever the registered migrations change, so migrating a spell never walks the
+     * chain.
+     */
+    private static volatile Map<Integer, CompiledChain> compiledChains = Map.of();
+
+    /** Time spent in each step, keyed by from version. Updated from the loader threads. */
+    private static final Map<Integer, StepTimer> STEP_TIMERS = new ConcurrentHashMap<>();
+
+    private record CompiledChain(int targetVersion, SpellMigration.MigrationFunction function) {
+    }
+
+    private static final class StepTimer {
+        final int toVersion;
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        StepTimer(int toVersion) {
+            this.toVersion = toVersion;
+        }
+    }
+
+    /**
+     * Accumulated cost of one migration step since the last {@link #resetStepTimings()}.
+     */
+    public record StepTiming(int fromVersion, int toVersion, long count, long nanos) {
+    }
+
     /**
      * Registers a spell format migration.
      *
@@ -79,6 +111,7 @@ public class SpellMigrationRegistry {
         MIGRATIONS_BY_FROM_VERSION.put(migration.getFromVersion(), migration);
         MIGRATION_CHAIN.add(migration);
         MIGRATION_CHAIN.sort(SpellMigration.byFromVersion());
+        compile();
 
         MAM.LOGGER.info("Registered spell migration: {}", migration);
         return true;
@@ -98,7 +131,7 @@ public class SpellMigrationRegistry {
      * Migrates spell data from old version to current version.
      *
      * <p>
-     * Applies migrations sequentially from current version to CURRENT_VERSION. Handles:
+     * Runs the chain compiled for {@code formatVersion} in one call. Handles:
      * <ul>
      * <li>Spells already at current version (no migration)
      * <li>Spells from earlier versions (applies chain of migrations)
@@ -107,7 +140,7 @@ public class SpellMigrationRegistry {
      *
      * @param spellData spell JSON data
      * @param formatVersion current version of spell data
-     * @return migrated spell data (at CURRENT_VERSION)
+     * @return migrated spell data, with {@code format_version} set to the version reached
      */
     public static Dynamic<?> migrateToLatest(Dynamic<?> spellData, int formatVersion) {
         // Already at current version
@@ -119,40 +152,84 @@ public class SpellMigrationRegistry {
             return spellData;
         }
 
-        // Apply migrations sequentially
-        Dynamic<?> result = spellData;
-        int currentVersion = formatVersion;
-
-        for (SpellMigration migration : MIGRATION_CHAIN) {
-            if (migration.getFromVersion() >= currentVersion
-                    && migration.getFromVersion() < CURRENT_VERSION) {
-                // Check for migration gap
-                if (migration.getFromVersion() != currentVersion) {
-                    MAM.LOGGER.warn("Migration gap: v{} → v{}, expected continuous chain",
-                            currentVersion, migration.getFromVersion());
-                    return result;
-                }
-
-                // Apply migration
-                MAM.LOGGER.debug("Applying spell migration: v{} → v{}", currentVersion,
-                        migration.getToVersion());
-                result = migration.apply(result);
-                currentVersion = migration.getToVersion();
+        CompiledChain chain = compiledChains.get(formatVersion);
+        if (chain == null) {
+            MAM.LOGGER.warn("No spell migration registered from v{}", formatVersion);
+            return spellData;
+        }
+        if (chain.targetVersion() != CURRENT_VERSION) {
+            MAM.LOGGER.warn("Incomplete migration: v{} → v{}, expected v{}", formatVersion,
+                    chain.targetVersion(), CURRENT_VERSION);
+        }
+        return chain.function().migrate(spellData);
+    }
+
+    /**
+     * Composes the chain from every registered source version. A chain stops at the first gap;
+     * its result then carries the version it reached, so it still fails the compatibility check.
+     */
+    private static void compile() {
+        Map<Integer, CompiledChain> compiled = new HashMap<>();
+        for (int from : MIGRATIONS_BY_FROM_VERSION.keySet()) {
+            if (from >= CURRENT_VERSION) {
+                continue;
+            }
+
+            SpellMigration.MigrationFunction function = data -> data;
+            int version = from;
+            SpellMigration step;
+            while (version < CURRENT_VERSION
+                    && (step = MIGRATIONS_BY_FROM_VERSION.get(version)) != null) {
+                function = timed(function, step);
+                version = step.getToVersion();
             }
+
+            int reached = version;
+            SpellMigration.MigrationFunction steps = function;
+            compiled.put(from, new CompiledChain(reached, data -> {
+                Dynamic<?> result = steps.migrate(data);
+                return result.set("format_version", result.createInt(reached));
+            }));
         }
+        compiledChains = Map.copyOf(compiled);
+    }
 
-        // Update format version in data
-        result = result.set("formatVersion", result.createInt(CURRENT_VERSION));
+    private static SpellMigration.MigrationFunction timed(SpellMigration.MigrationFunction before,
+            SpellMigration step) {
+        StepTimer timer = STEP_TIMERS.computeIfAbsent(step.getFromVersion(),
+                from -> new StepTimer(step.getToVersion()));
+        return data -> {
+            Dynamic<?> input = before.migrate(data);
+            long start = System.nanoTime();
+            Dynamic<?> output = step.apply(input);
+            timer.nanos.add(System.nanoTime() - start);
+            timer.count.increment();
+            return output;
+        };
+    }
 
-        if (currentVersion == CURRENT_VERSION) {
-            MAM.LOGGER.debug("Migrated spell from v{} to current v{}", formatVersion,
-                    CURRENT_VERSION);
-        } else {
-            MAM.LOGGER.warn("Incomplete migration: v{} → v{}, expected v{}", formatVersion,
-                    currentVersion, CURRENT_VERSION);
+    /**
+     * Time spent per migration step since the last reset, in version order. Steps that never ran
+     * are left out.
+     */
+    public static List<StepTiming> getStepTimings() {
+        List<StepTiming> timings = new ArrayList<>();
+        for (var entry : new TreeMap<>(STEP_TIMERS).entrySet()) {
+            StepTimer timer = entry.getValue();
+            long count = timer.count.sum();
+            if (count > 0) {
+                timings.add(new StepTiming(entry.getKey(), timer.toVersion, count,
+                        timer.nanos.sum()));
+            }
         }
+        return timings;
+    }
 
-        return result;
+    public static void resetStepTimings() {
+        for (StepTimer timer : STEP_TIMERS.values()) {
+            timer.count.reset();
+            timer.nanos.reset();
+        }
     }
 
     /**
@@ -211,6 +288,8 @@ public class SpellMigrationRegistry {
     public static void clear() {
         MIGRATIONS_BY_FROM_VERSION.clear();
         MIGRATION_CHAIN.clear();
+        STEP_TIMERS.clear();
+        compile();
         MAM.LOGGER.info("Cleared spell migration registry");
     }
 
@@ -0,0 +1,189 @@
+package dk.mosberg.spell;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import dk.mosberg.MAM;
+import dk.mosberg.item.SchoolEnchantmentRegistry;
+import dk.mosberg.mana.ManaAttachments;
+import dk.mosberg.mana.ManaPoolType;
+import dk.mosberg.mana.PlayerCastingData;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.minecraft.entity.EquipmentSlot;
+import net.minecraft.item.ItemStack;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+/**
+ * One player's stat multipliers that only change with their gear and setup, cached per school and
+ * cast type.
+ *
+ * <p>
+ * A {@link Resolved} entry multiplies together the active mana pool's modifiers, the school
+ * enchantments on the spellbook the cast goes through ({@link SpellCaster#castingSpellbook}), and
+ * the fixed bonuses of the cast type, and keeps each contribution for {@code /mam modifiers}.
+ * Entries are built on first use and dropped when a hand item changes or the pool priority differs
+ * from the one they were built with; anything else that feeds the stack calls
+ * {@link #invalidate()}. Per-cast factors (concentration, combo, fatigue) change every tick and are
+ * applied by the caster on top.
+ *
+ * <p>
+ * Lives in {@link PlayerCastingData}; server thread only.
+ */
+public final class SpellModifierStack {
+    private static final int CAST_TYPES = SpellCastType.values().length;
+
+    /**
+     * What a multiplier scales.
+     */
+    public enum Stat {
+        POWER("power"), MANA_COST("mana cost"), COOLDOWN("cooldown"), RANGE("range");
+
+        private final String displayName;
+
+        Stat(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * One contribution to a stat, named after where it comes from.
+     */
+    public record Modifier(String source, Stat stat, float multiplier) {
+    }
+
+    /**
+     * The combined multipliers for one school and cast type.
+     */
+    public static final class Resolved {
+        private final float[] multipliers = new float[Stat.values().length];
+        private final List<Modifier> modifiers;
+
+        private Resolved(List<Modifier> modifiers) {
+            this.modifiers = List.copyOf(modifiers);
+            Arrays.fill(multipliers, 1.0f);
+            for (Modifier modifier : modifiers) {
+                multipliers[modifier.stat().ordinal()] *= modifier.multiplier();
+            }
+        }
+
+        public float get(Stat stat) {
+            return multipliers[stat.ordinal()];
+        }
+
+        public float power() {
+            return get(Stat.POWER);
+        }
+
+        public float manaCost() {
+            return get(Stat.MANA_COST);
+        }
+
+        public float cooldown() {
+            return get(Stat.COOLDOWN);
+        }
+
+        public float range() {
+            return get(Stat.RANGE);
+        }
+
+        /**
+         * The contributions behind {@link #get}, in the order they were applied.
+         */
+        public List<Modifier> getModifiers() {
+            return modifiers;
+        }
+    }
+
+    private final Resolved[] cache = new Resolved[SpellSchool.values().length * CAST_TYPES];
+    private ManaPoolType cachedPriority;
+    private long rebuilds;
+
+    public static void register() {
+        ServerEntityEvents.EQUIPMENT_CHANGE.register((entity, slot, previous, current) -> {
+            if (entity instanceof ServerPlayerEntity player
+                    && (slot == EquipmentSlot.MAINHAND || slot == EquipmentSlot.OFFHAND)) {
+                PlayerCastingData castingData = player.getAttached(ManaAttachments.PLAYER_CASTING);
+                if (castingData != null) {
+                    castingData.getModifierStack().invalidate();
+                }
+            }
+        });
+        MAM.LOGGER.info("Registered spell modifier stack");
+    }
+
+    /**
+     * The player's multipliers for a spell's school and cast type, built if not cached.
+     */
+    public Resolved get(ServerPlayerEntity player, PlayerCastingData castingData, Spell spell) {
+        ManaPoolType priority = castingData.getManaData().getActivePriority();
+        if (priority != cachedPriority) {
+            invalidate();
+            cachedPriority = priority;
+        }
+
+        int index = spell.getSchool().ordinal() * CAST_TYPES + spell.getCastType().ordinal();
+        Resolved resolved = cache[index];
+        if (resolved == null) {
+            resolved = build(player, priority, spell.getSchool(), spell.getCastType());
+            cache[index] = resolved;
+            rebuilds++;
+        }
+        return resolved;
+    }
+
+    /**
+     * Drops every cached entry; the next cast rebuilds what it needs.
+     */
+    public void invalidate() {
+        Arrays.fill(cache, null);
+    }
+
+    /**
+     * Entries built since this stack was created, for telling how often the cache is missed.
+     */
+    public long getRebuilds() {
+        return rebuilds;
+    }
+
+    private static Resolved build(ServerPlayerEntity player, ManaPoolType pool,
+            SpellSchool school, SpellCastType castType) {
+        List<Modifier> modifiers = new ArrayList<>();
+
+        String poolSource = pool.getDisplayName() + " pool";
+        add(modifiers, poolSource, Stat.POWER, pool.getDamageModifier());
+        add(modifiers, poolSource, Stat.RANGE, pool.getRangeModifier());
+        add(modifiers, poolSource, Stat.COOLDOWN, pool.getCooldownModifier());
+
+        // Only the book the cast goes through; a second one in the other hand does nothing
+        ItemStack stack = SpellCaster.castingSpellbook(player);
+        if (!stack.isEmpty()) {
+            String source = stack.getName().getString() + " enchantment";
+            add(modifiers, source, Stat.POWER,
+                    SchoolEnchantmentRegistry.getSpellDamageModifier(stack, school));
+            add(modifiers, source, Stat.MANA_COST,
+                    SchoolEnchantmentRegistry.getSpellManaCostModifier(stack, school));
+            add(modifiers, source, Stat.COOLDOWN,
+                    SchoolEnchantmentRegistry.getSpellCooldownModifier(stack, school));
+            add(modifiers, source, Stat.RANGE,
+                    SchoolEnchantmentRegistry.getSpellRangeModifier(stack, school));
+        }
+
+        if (castType == SpellCastType.RITUAL) {
+            // Rituals trade their channel time for double damage and a 50% larger area
+            add(modifiers, "Ritual", Stat.POWER, 2.0f);
+            add(modifiers, "Ritual", Stat.RANGE, 1.5f);
+        }
+        return new Resolved(modifiers);
+    }
+
+    private static void add(List<Modifier> modifiers, String source, Stat stat,
+            float multiplier) {
+        if (multiplier != 1.0f) {
+            modifiers.add(new Modifier(source, stat, multiplier));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package dk.mosberg.spell;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import dk.mosberg.MAM;
+import net.minecraft.util.Identifier;
+
+/**
+ * Parent ("template") graph of the loaded spells.
+ *
+ * <p>
+ * Every spell has at most one parent, so the graph is a forest plus, for broken data, cycles. The
+ * constructor orders all resolvable spells so that each parent comes before its children, which
+ * lets {@link SpellRegistry} resolve inheritance in a single pass. Spells on a cycle, or below one,
+ * are left out of that order and reported once with their full chain; so are parents that are not
+ * loaded.
+ */
+final class SpellParentGraph {
+    static final SpellParentGraph EMPTY = new SpellParentGraph(Map.of());
+
+    private final Map<Identifier, Identifier> parentOf = new HashMap<>();
+    private final Map<Identifier, List<Identifier>> children = new HashMap<>();
+    private final List<Identifier> order;
+    private final Set<Identifier> nodes;
+    private final Set<Identifier> unresolvable = new HashSet<>();
+
+    SpellParentGraph(Map<Identifier, Spell> spells) {
+        this.nodes = Set.copyOf(spells.keySet());
+        List<Identifier> roots = new ArrayList<>();
+        List<Identifier> orphans = new ArrayList<>();
+        for (Spell spell : spells.values()) {
+            Identifier id = spell.getId();
+            Identifier parent = spell.getParent().orElse(null);
+            if (parent == null) {
+                roots.add(id);
+                continue;
+            }
+            parentOf.put(id, parent);
+            children.computeIfAbsent(parent, p -> new ArrayList<>()).add(id);
+            if (!spells.containsKey(parent)) {
+                // Treated as a root: it keeps its own data and its children still inherit from it
+                roots.add(id);
+                orphans.add(id);
+            }
+        }
+        for (Identifier id : orphans) {
+            MAM.LOGGER.warn("Spell {} declares missing parent {} (chain: {})", id,
+                    parentOf.get(id), formatChain(id, descendants(Set.of(id), spells)));
+        }
+
+        // Breadth-first from the roots: parents are always emitted before their children
+        List<Identifier> sorted = new ArrayList<>(spells.size());
+        ArrayDeque<Identifier> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            Identifier id = queue.poll();
+            sorted.add(id);
+            queue.addAll(children.getOrDefault(id, List.of()));
+        }
+        this.order = Collections.unmodifiableList(sorted);
+
+        // Anything not reached sits on a cycle or below one
+        if (sorted.size() < spells.size()) {
+            Set<Identifier> reached = new HashSet<>(sorted);
+            Set<Identifier> reported = new HashSet<>();
+            for (Identifier id : spells.keySet()) {
+                if (reached.contains(id)) {
+                    continue;
+                }
+                unresolvable.add(id);
+                if (reported.contains(id)) {
+                    continue;
+                }
+
+                // Walk up until a spell repeats; that spell starts the cycle
+                LinkedHashSet<Identifier> path = new LinkedHashSet<>();
+                Identifier current = id;
+                while (path.add(current)) {
+                    current = parentOf.get(current);
+                }
+                List<Identifier> cycle = new ArrayList<>();
+                boolean inCycle = false;
+                for (Identifier step : path) {
+                    inCycle |= step.equals(current);
+                    if (inCycle) {
+                        cycle.add(step);
+                    }
+                }
+                cycle.add(current);
+                if (reported.addAll(cycle)) {
+                    MAM.LOGGER.error("Spell inheritance cycle, not resolved: {}", cycle.stream()
+                            .map(Identifier::toString).collect(Collectors.joining(" -> ")));
+                }
+                if (!cycle.contains(id)) {
+                    MAM.LOGGER.warn("Spell {} inherits from inheritance cycle through {}", id,
+                            current);
+                }
+                reported.add(id);
+            }
+        }
+    }
+
+    /**
+     * Spells in parent-before-child order. Excludes spells on or below an inheritance cycle.
+     */
+    List<Identifier> order() {
+        return order;
+    }
+
+    /**
+     * Whether the spell sits on or below an inheritance cycle.
+     */
+    boolean isUnresolvable(Identifier id) {
+        return unresolvable.contains(id);
+    }
+
+    /**
+     * Spells that directly declare the given spell as their parent.
+     */
+    List<Identifier> children(Identifier id) {
+        return children.getOrDefault(id, List.of());
+    }
+
+    /**
+     * Whether this graph still describes the given spells, assuming only the {@code changed} ids
+     * differ from the spells it was built from.
+     */
+    boolean matches(Map<Identifier, Spell> spells, Set<Identifier> changed) {
+        for (Identifier id : changed) {
+            Spell spell = spells.get(id);
+            if ((spell != null) != nodes.contains(id)) {
+                return false;
+            }
+            if (spell != null
+                    && !Objects.equals(parentOf.get(id), spell.getParent().orElse(null))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The given spell ids plus every loaded spell that inherits from one of them, directly or
+     * transitively. Ids that are not loaded still seed the walk so their former children are
+     * found, but are not part of the result.
+     */
+    Set<Identifier> descendants(Set<Identifier> roots, Map<Identifier, Spell> spells) {
+        Set<Identifier> result = new HashSet<>();
+        Set<Identifier> visited = new HashSet<>(roots);
+        ArrayDeque<Identifier> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            Identifier id = queue.poll();
+            if (spells.containsKey(id)) {
+                result.add(id);
+            }
+            for (Identifier child : children(id)) {
+                if (visited.add(child)) {
+                    queue.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    private String formatChain(Identifier id, Set<Identifier> affected) {
+        String chain = id + " -> " + parentOf.get(id) + " (missing)";
+        if (affected.size() > 1) {
+            chain += ", inherited by " + (affected.size() - 1) + " more";
+        }
+        return chain;
+    }
+}
@@ -1,43 +1,88 @@
 package dk.mosberg.spell;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import org.jetbrains.annotations.NotNull;
+import com.google.common.hash.Hashing;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import com.mojang.serialization.Dynamic;
 import com.mojang.serialization.JsonOps;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import dk.mosberg.MAM;
+import dk.mosberg.config.ServerConfig;
+import dk.mosberg.mana.ManaRegenerationHandler;
+import dk.mosberg.network.ServerNetworkHandler;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
-import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
+import net.fabricmc.fabric.api.resource.SimpleResourceReloadListener;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.network.PacketByteBuf;
 import net.minecraft.resource.Resource;
 import net.minecraft.resource.ResourceManager;
 import net.minecraft.resource.ResourceType;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.Util;
 
 /**
  * Registry for spells loaded from data packs.
  *
  * Features implemented: dependency checking, hot-reload, difficulty presets, compression helpers,
- * inheritance/templates resolution.
+ * inheritance/templates resolution, format migrations.
  *
  * TODO: Add spell compatibility checking (strict schema versioning) TODO: Implement spell
- * variant/modification system TODO: Add spell versioning and migration system
+ * variant/modification system
  */
 public class SpellRegistry {
-    private static final Map<Identifier, Spell> SPELLS = new HashMap<>();
-    private static final int SUPPORTED_SPELL_FORMAT = 1; // for future schema evolution
-    private static int cachedMaxTier = -1;
-    private static List<Spell> cachedMaxTierList;
-    private static DifficultyPreset currentDifficulty = DifficultyPreset.NORMAL;
+    // Older files are migrated up to this during decode (see SpellMigrationRegistry)
+    private static final int SUPPORTED_SPELL_FORMAT = SpellMigrationRegistry.getCurrentVersion();
+    private static final int DECODE_BATCH_SIZE = 32; // spell files decoded per background task
+
+    // Published atomically at the end of each reload; readers never lock
+    private static volatile SpellRegistrySnapshot snapshot = SpellRegistrySnapshot.EMPTY;
+
+    // Incremental reload state. fileCache is read by the prepare phase off-thread and replaced
+    // wholesale by the apply phase; the other two are only touched on the apply thread.
+    private static volatile Map<Identifier, DecodedSpell> fileCache = Map.of();
+    private static Map<Identifier, Spell> lastValidated = Map.of();
+    private static Map<Identifier, Spell> lastInherited = Map.of();
+    private static SpellParentGraph parentGraph = SpellParentGraph.EMPTY;
+    // Migrated JSON of legacy spell files by content hash; replaced wholesale by the apply phase
+    private static volatile Map<Long, JsonElement> migrationMemo = Map.of();
+
+    // Raw ids are append-only for the session, so ids held by trackers and clients never change
+    // meaning across reloads. Only touched on the apply thread; readers go through the snapshot.
+    private static final List<Identifier> rawIdTable = new ArrayList<>();
+    private static final Object2IntOpenHashMap<Identifier> rawIds = new Object2IntOpenHashMap<>();
+    static {
+        rawIds.defaultReturnValue(-1);
+    }
+    private static volatile DifficultyPreset currentDifficulty = DifficultyPreset.NORMAL;
+    // Baked stats for currentDifficulty out of the current snapshot; swapped as one reference
+    private static volatile SpellStatTable activeStats =
+            snapshot.stats(DifficultyPreset.NORMAL);
+    // Client sync: the current set and the one before it, so clients one reload behind get a delta
+    private static volatile SpellSyncManifest syncManifest = SpellSyncManifest.EMPTY;
+    private static volatile SpellSyncManifest previousSyncManifest = SpellSyncManifest.EMPTY;
 
     /**
      * Difficulty presets that scale spell effectiveness.
@@ -81,7 +126,7 @@ public class SpellRegistry {
     @SuppressWarnings("deprecation")
     public static void register() {
         ResourceManagerHelper.get(ResourceType.SERVER_DATA)
-                .registerReloadListener(new SimpleSynchronousResourceReloadListener() {
+                .registerReloadListener(new SimpleResourceReloadListener<PreparedSpells>() {
                     @SuppressWarnings("null")
                     @Override
                     public @NotNull Identifier getFabricId() {
@@ -89,89 +134,536 @@ public class SpellRegistry {
                     }
 
                     @Override
-                    public void reload(@NotNull ResourceManager manager) {
-                        loadSpells(manager);
+                    public CompletableFuture<PreparedSpells> load(ResourceManager manager,
+                            Executor executor) {
+                        return prepareSpells(manager, executor);
+                    }
+
+                    @Override
+                    public CompletableFuture<Void> apply(PreparedSpells prepared,
+                            ResourceManager manager, Executor executor) {
+                        return CompletableFuture.runAsync(() -> applySpells(prepared), executor);
                     }
                 });
 
         ServerLifecycleEvents.SERVER_STARTED.register(server -> {
-            MAM.LOGGER.info("Loaded {} spells", SPELLS.size());
+            MAM.LOGGER.info("Loaded {} spells", snapshot.size());
         });
 
         MAM.LOGGER.info("Registered spell registry");
     }
 
-    private static void loadSpells(ResourceManager manager) {
-        SPELLS.clear();
-        cachedMaxTier = -1;
-        cachedMaxTierList = null;
+    /**
+     * Result of the prepare phase: every spell file read and decoded, but not yet validated or
+     * published. When the on-disk bundle matched, {@code bundled} holds the already resolved spells
+     * and {@code decoded} is empty.
+     */
+    private record PreparedSpells(List<DecodedSpell> decoded, Map<Identifier, Spell> bundled,
+            long fingerprint, long prepareNanos, Map<Long, JsonElement> migrations) {
+    }
+
+    /**
+     * Migration state of one prepare run. The previous memo is read-only; outputs used this run
+     * are collected into {@code next}, which becomes the memo once the reload is applied.
+     */
+    private record MigrationRun(Map<Long, JsonElement> memo, Map<Long, JsonElement> next,
+            LongAdder migrated, LongAdder reused) {
+        MigrationRun(Map<Long, JsonElement> memo) {
+            this(memo, new ConcurrentHashMap<>(), new LongAdder(), new LongAdder());
+        }
+    }
+
+    /**
+     * Raw bytes of one spell file plus their content hash. {@code bytes} is null when the file
+     * could not be read.
+     */
+    private record SpellFile(Identifier fileId, Identifier spellId, byte[] bytes,
+            long contentHash) {
+    }
+
+    /**
+     * A single decoded spell file. {@code spell} is null when the file could not be read or
+     * parsed. {@code reused} is true when the content hash matched the previous reload and the
+     * cached spell was taken instead of parsing the file again.
+     */
+    private record DecodedSpell(Identifier fileId, Identifier spellId, Spell spell,
+            long contentHash, boolean reused) {
+    }
+
+    /**
+     * Prepare phase: lists all spell files, reads and hashes them in parallel batches, then either
+     * loads the matching spell bundle or decodes the files on the given background executor. Does
+     * not touch registry state, so it is safe off the main thread.
+     */
+    private static CompletableFuture<PreparedSpells> prepareSpells(ResourceManager manager,
+            Executor executor) {
+        long start = System.nanoTime();
+        List<String> packIds = new ArrayList<>();
+
+        return readSpellFiles(manager, executor, packIds)
+                .thenCompose(files -> {
+                    long fingerprint = fingerprint(packIds, files);
+                    Map<Identifier, DecodedSpell> cache = fileCache;
+                    MigrationRun migrations = new MigrationRun(migrationMemo);
+
+                    // Without incremental state (a cold load, or every load since the last one
+                    // came from the bundle) the bundle is used while the fingerprint matches
+                    if (cache.isEmpty() && ServerConfig.getInstance().enableSpellBundleCache) {
+                        Optional<Map<Identifier, Spell>> bundled =
+                                SpellBundle.read(SpellBundle.BUNDLE_PATH, fingerprint);
+                        if (bundled.isPresent()) {
+                            return CompletableFuture.completedFuture(new PreparedSpells(List.of(),
+                                    bundled.get(), fingerprint, System.nanoTime() - start,
+                                    Map.of()));
+                        }
+                    }
+
+                    SpellMigrationRegistry.resetStepTimings();
+                    return inBatches(files, executor,
+                            file -> decodeSpell(file, cache, migrations)).thenApply(decoded -> {
+                                logMigrations(migrations);
+                                return new PreparedSpells(decoded, null, fingerprint,
+                                        System.nanoTime() - start, migrations.next());
+                            });
+                });
+    }
+
+    /**
+     * Lists every spell JSON file under data/{namespace}/spells and reads them in parallel batches,
+     * filling {@code packIds} with the active packs on the way.
+     */
+    private static CompletableFuture<List<SpellFile>> readSpellFiles(ResourceManager manager,
+            Executor executor, List<String> packIds) {
+        return CompletableFuture.supplyAsync(() -> {
+            manager.streamResourcePacks().forEach(pack -> packIds.add(pack.getId()));
+            return new ArrayList<>(
+                    manager.findResources("spells", id -> id.getPath().endsWith(".json"))
+                            .entrySet());
+        }, executor).thenCompose(resources -> inBatches(resources, executor,
+                entry -> readSpellFile(entry.getKey(), entry.getValue())));
+    }
+
+    /**
+     * Timings from {@link #benchmarkLoad}, in nanoseconds.
+     *
+     * @param readNanos Listing, reading and hashing the files, which both paths do
+     * @param fullNanos Decoding, migrating, validating and resolving every file from scratch
+     * @param bundleNanos Reading the same spells back from a bundle
+     */
+    public record LoadTiming(int files, int fullSpells, int bundleSpells, long readNanos,
+            long fullNanos, long bundleNanos) {
+    }
+
+    /**
+     * Loads the spells in {@code manager} both ways a reload can, without publishing anything: the
+     * full pipeline with no incremental state, and the bundle path from a bundle written for the
+     * same files to a scratch file next to the real one.
+     */
+    public static CompletableFuture<LoadTiming> benchmarkLoad(ResourceManager manager,
+            Executor executor) {
+        long start = System.nanoTime();
+        List<String> packIds = new ArrayList<>();
+        return readSpellFiles(manager, executor, packIds).thenCompose(files -> {
+            long read = System.nanoTime();
+            long fingerprint = fingerprint(packIds, files);
+            MigrationRun migrations = new MigrationRun(Map.of());
+            return inBatches(files, executor, file -> decodeSpell(file, Map.of(), migrations))
+                    .thenApply(decoded -> {
+                        Map<Identifier, Spell> resolved = resolveAll(decoded);
+                        long full = System.nanoTime();
+
+                        Path scratch =
+                                SpellBundle.BUNDLE_PATH.resolveSibling("spells.bundle.bench");
+                        SpellBundle.write(scratch, fingerprint, resolved);
+                        long bundleStart = System.nanoTime();
+                        int bundled = SpellBundle.read(scratch, fingerprint).map(Map::size)
+                                .orElse(-1);
+                        long bundleNanos = System.nanoTime() - bundleStart;
+                        try {
+                            Files.deleteIfExists(scratch);
+                        } catch (IOException e) {
+                            MAM.LOGGER.warn("Could not delete {}: {}", scratch, e.getMessage());
+                        }
+                        return new LoadTiming(files.size(), resolved.size(), bundled,
+                                read - start, full - read, bundleNanos);
+                    });
+        });
+    }
+
+    /**
+     * What {@link #applySpells} arrives at with no previous reload: validation, inheritance and
+     * variants for every decoded spell. Raw ids and the snapshot are left alone.
+     */
+    private static Map<Identifier, Spell> resolveAll(List<DecodedSpell> decoded) {
+        Map<Identifier, Spell> validated = new HashMap<>();
+        for (DecodedSpell file : decoded) {
+            Spell spell = file.spell();
+            if (spell != null && validateSpell(spell) && isCompatible(spell)
+                    && checkSpellDependencies(spell, validated)) {
+                validated.put(spell.getId(), spell);
+            }
+        }
+        Map<Identifier, Spell> spells = new HashMap<>(validated);
+        resolveInheritance(spells, new SpellParentGraph(validated), validated.keySet());
+        applyVariants(spells, validated.keySet());
+        return spells;
+    }
+
+    private static void logMigrations(MigrationRun migrations) {
+        long migrated = migrations.migrated().sum();
+        long reused = migrations.reused().sum();
+        if (migrated == 0 && reused == 0) {
+            return;
+        }
+
+        StringBuilder steps = new StringBuilder();
+        for (SpellMigrationRegistry.StepTiming step : SpellMigrationRegistry.getStepTimings()) {
+            steps.append(steps.isEmpty() ? "" : ", ").append(String.format("v%d→v%d %.2f ms (%d)",
+                    step.fromVersion(), step.toVersion(), step.nanos() / 1_000_000.0,
+                    step.count()));
+        }
+        MAM.LOGGER.info("Spell migrations: {} migrated, {} reused from memo{}", migrated, reused,
+                steps.isEmpty() ? "" : "; " + steps);
+    }
+
+    /**
+     * Maps the inputs in batches of {@link #DECODE_BATCH_SIZE} on the executor, keeping order.
+     */
+    private static <I, O> CompletableFuture<List<O>> inBatches(List<I> inputs, Executor executor,
+            java.util.function.Function<I, O> task) {
+        List<CompletableFuture<List<O>>> batches = new ArrayList<>();
+
+        for (int from = 0; from < inputs.size(); from += DECODE_BATCH_SIZE) {
+            List<I> batch =
+                    inputs.subList(from, Math.min(from + DECODE_BATCH_SIZE, inputs.size()));
+            batches.add(CompletableFuture.supplyAsync(() -> {
+                List<O> results = new ArrayList<>(batch.size());
+                for (I input : batch) {
+                    results.add(task.apply(input));
+                }
+                return results;
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> {
+                    List<O> results = new ArrayList<>(inputs.size());
+                    for (CompletableFuture<List<O>> batch : batches) {
+                        results.addAll(batch.join());
+                    }
+                    return results;
+                });
+    }
+
+    /**
+     * Reads one spell file and hashes its content. Errors are logged and reported as null bytes.
+     */
+    private static SpellFile readSpellFile(Identifier fileId, Resource resource) {
+        // Convert file path to spell ID: data/mam/spells/air/air_strike.json -> mam:air_strike
+        String path = fileId.getPath();
+        // Remove "spells/" prefix and ".json" suffix
+        String spellPath = path.substring("spells/".length(), path.length() - ".json".length());
+        // Get just the filename (last part after /)
+        String spellName = spellPath.substring(spellPath.lastIndexOf('/') + 1);
+        Identifier spellId = Identifier.of(fileId.getNamespace(), spellName);
+
+        try (InputStream in = resource.getInputStream()) {
+            byte[] bytes = in.readAllBytes();
+            return new SpellFile(fileId, spellId, bytes,
+                    Hashing.murmur3_128().hashBytes(bytes).asLong());
+        } catch (Exception e) {
+            MAM.LOGGER.error("Failed to load spell from {}: {}", fileId, e.getMessage());
+            return new SpellFile(fileId, spellId, null, 0L);
+        }
+    }
+
+    /**
+     * Fingerprint of everything a resolved spell set depends on: the bundle and spell formats, the
+     * mod version (variants are registered in code), the active packs and every spell file's id
+     * and content hash.
+     */
+    private static long fingerprint(List<String> packIds, List<SpellFile> files) {
+        var hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(SpellBundle.BUNDLE_VERSION);
+        hasher.putInt(SUPPORTED_SPELL_FORMAT);
+        hasher.putInt(SpellMigrationRegistry.getMigrationCount());
+        hasher.putString(FabricLoader.getInstance().getModContainer(MAM.MOD_ID)
+                .map(mod -> mod.getMetadata().getVersion().getFriendlyString()).orElse(""),
+                StandardCharsets.UTF_8);
+        for (String packId : packIds) {
+            hasher.putString(packId, StandardCharsets.UTF_8);
+        }
+
+        List<SpellFile> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(file -> file.fileId().toString()));
+        for (SpellFile file : sorted) {
+            hasher.putString(file.fileId().toString(), StandardCharsets.UTF_8);
+            hasher.putBoolean(file.bytes() != null);
+            hasher.putLong(file.contentHash());
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * Decodes one spell file, unless its content hash matches the cached entry from the previous
+     * reload. Files in an older format are migrated first. Errors are logged and reported as a
+     * null spell.
+     */
+    private static DecodedSpell decodeSpell(SpellFile file, Map<Identifier, DecodedSpell> cache,
+            MigrationRun migrations) {
+        Identifier fileId = file.fileId();
+        Identifier spellId = file.spellId();
+        if (file.bytes() == null) {
+            return new DecodedSpell(fileId, spellId, null, 0L, false);
+        }
+
+        DecodedSpell cached = cache.get(fileId);
+        if (cached != null && cached.contentHash() == file.contentHash()) {
+            // Keep its migrated form memoized for when the file moves or the cache is dropped
+            JsonElement migrated = migrations.memo().get(file.contentHash());
+            if (migrated != null) {
+                migrations.next().put(file.contentHash(), migrated);
+            }
+            return new DecodedSpell(fileId, spellId, cached.spell(), file.contentHash(), true);
+        }
+
+        try {
+            JsonElement json = migrate(file,
+                    JsonParser.parseString(new String(file.bytes(), StandardCharsets.UTF_8)),
+                    migrations);
+            Spell spell = Spell.CODEC.parse(JsonOps.INSTANCE, json).resultOrPartial(
+                    error -> MAM.LOGGER.error("Failed to parse spell {}: {}", spellId, error))
+                    .orElse(null);
+            return new DecodedSpell(fileId, spellId, spell, file.contentHash(), false);
+        } catch (Exception e) {
+            MAM.LOGGER.error("Failed to load spell from {}: {}", fileId, e.getMessage());
+            return new DecodedSpell(fileId, spellId, null, file.contentHash(), false);
+        }
+    }
+
+    /**
+     * Brings a spell file's JSON up to the current format. The result only depends on the file
+     * content, so it is memoized by content hash across reloads.
+     */
+    private static JsonElement migrate(SpellFile file, JsonElement json, MigrationRun migrations) {
+        JsonElement formatVersion =
+                json.isJsonObject() ? json.getAsJsonObject().get("format_version") : null;
+        int version = formatVersion != null ? formatVersion.getAsInt() : 1;
+        if (version >= SUPPORTED_SPELL_FORMAT) {
+            return json;
+        }
+
+        JsonElement migrated = migrations.memo().get(file.contentHash());
+        if (migrated != null) {
+            migrations.reused().increment();
+        } else {
+            migrated = SpellMigrationRegistry
+                    .migrateToLatest(new Dynamic<>(JsonOps.INSTANCE, json), version)
+                    .convert(JsonOps.INSTANCE).getValue();
+            migrations.migrated().increment();
+        }
+        migrations.next().put(file.contentHash(), migrated);
+        return migrated;
+    }
+
+    /**
+     * Apply phase: validates decoded spells, resolves inheritance and variants, and publishes the
+     * result as a new snapshot. Runs on the main thread; the previous snapshot stays visible until
+     * the new one is complete.
+     *
+     * <p>
+     * Only spells whose validated definition changed since the last reload, plus everything that
+     * inherits from them, are re-resolved. All other spells keep their previously resolved
+     * instances.
+     */
+    private static void applySpells(PreparedSpells prepared) {
+        long start = System.nanoTime();
+        if (prepared.bundled() != null) {
+            applyBundle(prepared, start);
+            return;
+        }
+
+        Map<Identifier, Spell> validated = new HashMap<>();
+        Map<Identifier, DecodedSpell> nextCache = new HashMap<>();
         int loaded = 0;
         int failed = 0;
+        int reused = 0;
 
-        // Find all spell JSON files in data/{namespace}/spells/**/*.json
-        Map<Identifier, Resource> resources =
-                manager.findResources("spells", id -> id.getPath().endsWith(".json"));
-
-        for (Map.Entry<Identifier, Resource> entry : resources.entrySet()) {
-            Identifier fileId = entry.getKey();
-
-            // Convert file path to spell ID: data/mam/spells/air/air_strike.json -> mam:air_strike
-            String path = fileId.getPath();
-            // Remove "spells/" prefix and ".json" suffix
-            String spellPath = path.substring("spells/".length(), path.length() - ".json".length());
-            // Get just the filename (last part after /)
-            String spellName = spellPath.substring(spellPath.lastIndexOf('/') + 1);
-            Identifier spellId = Identifier.of(fileId.getNamespace(), spellName);
-
-            try (BufferedReader reader =
-                    new BufferedReader(new InputStreamReader(entry.getValue().getInputStream(),
-                            StandardCharsets.UTF_8))) {
-
-                JsonElement json = JsonParser.parseReader(reader);
-                Spell spell = Spell.CODEC.parse(JsonOps.INSTANCE, json).resultOrPartial(
-                        error -> MAM.LOGGER.error("Failed to parse spell {}: {}", spellId, error))
-                        .orElse(null);
-
-                if (spell != null && validateSpell(spell) && isCompatible(spell)
-                        && checkSpellDependencies(spell)) {
-                    SPELLS.put(spell.getId(), spell);
-                    loaded++;
-                    MAM.LOGGER.debug("Loaded spell: {}", spell.getId());
-                } else {
-                    if (spell != null) {
-                        MAM.LOGGER.error("Spell {} failed validation", spellId);
-                    }
-                    failed++;
+        for (DecodedSpell decoded : prepared.decoded()) {
+            if (decoded.reused()) {
+                reused++;
+            }
+            Spell spell = decoded.spell();
+            if (spell != null) {
+                nextCache.put(decoded.fileId(), decoded);
+            }
+            if (spell != null && validateSpell(spell) && isCompatible(spell)
+                    && checkSpellDependencies(spell, validated)) {
+                validated.put(spell.getId(), spell);
+                loaded++;
+                MAM.LOGGER.debug("Loaded spell: {}", spell.getId());
+            } else {
+                if (spell != null) {
+                    MAM.LOGGER.error("Spell {} failed validation", decoded.spellId());
                 }
-            } catch (Exception e) {
-                MAM.LOGGER.error("Failed to load spell from {}: {}", fileId, e.getMessage());
                 failed++;
             }
         }
 
-        // Resolve simple inheritance/templates after initial load
-        resolveInheritance();
+        int removedFiles = 0;
+        Set<Identifier> presentFiles = new HashSet<>();
+        for (DecodedSpell decoded : prepared.decoded()) {
+            presentFiles.add(decoded.fileId());
+        }
+        for (Identifier fileId : fileCache.keySet()) {
+            if (!presentFiles.contains(fileId)) {
+                removedFiles++;
+            }
+        }
+
+        // Spells added, removed or redefined since the last reload. Reused files hand back the
+        // same Spell instance, so identity is enough here.
+        Set<Identifier> changed = new HashSet<>();
+        for (var entry : validated.entrySet()) {
+            if (lastValidated.get(entry.getKey()) != entry.getValue()) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (Identifier id : lastValidated.keySet()) {
+            if (!validated.containsKey(id)) {
+                changed.add(id);
+            }
+        }
+        // The parent graph only needs rebuilding when a changed spell gained, lost or moved an edge
+        if (!parentGraph.matches(validated, changed)) {
+            parentGraph = new SpellParentGraph(validated);
+        }
+        Set<Identifier> affected = parentGraph.descendants(changed, validated);
+
+        // Unaffected spells start from last reload's inherited form, affected ones from scratch
+        SpellRegistrySnapshot previous = snapshot;
+        Map<Identifier, Spell> inherited = new HashMap<>(validated.size());
+        for (var entry : validated.entrySet()) {
+            Identifier id = entry.getKey();
+            inherited.put(id, affected.contains(id) ? entry.getValue() : lastInherited.get(id));
+        }
+
+        // Resolve simple inheritance/templates for the affected subtree
+        resolveInheritance(inherited, parentGraph, affected);
+
+        Map<Identifier, Spell> spells = new HashMap<>(inherited.size());
+        for (var entry : inherited.entrySet()) {
+            Identifier id = entry.getKey();
+            spells.put(id, affected.contains(id) ? entry.getValue() : previous.get(id));
+        }
 
         // Apply spell variants (modifiers) post-inheritance
-        applyVariants();
+        applyVariants(spells, affected);
+
+        // Build indexes and publish in one volatile write
+        assignRawIds(spells);
+        snapshot = new SpellRegistrySnapshot(spells, rawIdTable);
+        activeStats = snapshot.stats(currentDifficulty);
+        updateSyncManifest();
+        fileCache = Map.copyOf(nextCache);
+        migrationMemo = Map.copyOf(prepared.migrations());
+        lastValidated = Map.copyOf(validated);
+        lastInherited = Map.copyOf(inherited);
+
+        if (ServerConfig.getInstance().enableSpellBundleCache) {
+            Map<Identifier, Spell> resolved = snapshot.asMap();
+            long fingerprint = prepared.fingerprint();
+            CompletableFuture.runAsync(
+                    () -> SpellBundle.write(SpellBundle.BUNDLE_PATH, fingerprint, resolved),
+                    Util.getIoWorkerExecutor());
+        }
+
+        long applyNanos = System.nanoTime() - start;
+        MAM.LOGGER.info(
+                "Spell loading complete: {} loaded, {} failed (prepare {} ms, apply {} ms)",
+                loaded, failed, prepared.prepareNanos() / 1_000_000, applyNanos / 1_000_000);
+        MAM.LOGGER.info(
+                "Spell files: {} reused, {} re-parsed, {} removed; re-resolved {} of {} spells",
+                reused, prepared.decoded().size() - reused, removedFiles, affected.size(),
+                spells.size());
+    }
+
+    /**
+     * Publishes spells read from the on-disk bundle. They are already validated and resolved, so
+     * this only builds the snapshot. The incremental reload state is left empty, so later reloads
+     * keep loading from the bundle while their fingerprint matches; the first one that finds a
+     * changed file parses every file once and rebuilds the state.
+     */
+    private static void applyBundle(PreparedSpells prepared, long start) {
+        assignRawIds(prepared.bundled());
+        snapshot = new SpellRegistrySnapshot(prepared.bundled(), rawIdTable);
+        activeStats = snapshot.stats(currentDifficulty);
+        updateSyncManifest();
+        fileCache = Map.of();
+        migrationMemo = Map.of();
+        lastValidated = Map.of();
+        lastInherited = Map.of();
+        parentGraph = SpellParentGraph.EMPTY;
+
+        long applyNanos = System.nanoTime() - start;
+        MAM.LOGGER.info(
+                "Spell loading complete: {} loaded from bundle (prepare {} ms, apply {} ms)",
+                prepared.bundled().size(), prepared.prepareNanos() / 1_000_000,
+                applyNanos / 1_000_000);
+    }
+
+    /**
+     * Gives every spell its raw id. Spells seen earlier this session keep theirs; new ones are
+     * appended in id order so a fresh session assigns the same ids for the same data.
+     */
+    private static void assignRawIds(Map<Identifier, Spell> spells) {
+        List<Identifier> added = new ArrayList<>();
+        for (Identifier id : spells.keySet()) {
+            if (!rawIds.containsKey(id)) {
+                added.add(id);
+            }
+        }
+        added.sort(Comparator.comparing(Identifier::toString));
+        for (Identifier id : added) {
+            rawIds.put(id, rawIdTable.size());
+            rawIdTable.add(id);
+        }
+        for (Spell spell : spells.values()) {
+            spell.setRawId(rawIds.getInt(spell.getId()));
+        }
+    }
 
-        MAM.LOGGER.info("Spell loading complete: {} loaded, {} failed", loaded, failed);
+    /**
+     * Hashes the freshly published snapshot for client sync. A reload that changed nothing keeps
+     * the previous manifest, so clients one real change behind can still get a delta.
+     */
+    private static void updateSyncManifest() {
+        SpellSyncManifest next = new SpellSyncManifest(snapshot.asMap());
+        if (next.hash() != syncManifest.hash()) {
+            previousSyncManifest = syncManifest;
+            syncManifest = next;
+        }
     }
 
     /**
      * Manually trigger a spell reload. Useful for development and testing. Can be called from a
-     * command or debug interface.
+     * command or debug interface. Connected clients get the new id table and spell set, the same
+     * as after a data pack reload. Server thread only.
      *
-     * @param manager Resource manager to load spells from
+     * @param server Server whose resource manager to load spells from
      * @return Number of spells successfully loaded
      */
-    public static int hotReload(ResourceManager manager) {
-        int beforeCount = SPELLS.size();
+    public static int hotReload(MinecraftServer server) {
+        int beforeCount = snapshot.size();
         MAM.LOGGER.info("Hot-reloading spells... (current: {})", beforeCount);
 
-        loadSpells(manager);
+        ResourceManager manager = server.getResourceManager();
+        applySpells(prepareSpells(manager, Util.getMainWorkerExecutor()).join());
+        ManaRegenerationHandler.resolveUnloadedSpells(server);
+        ServerNetworkHandler.broadcastSpellIdTable(server);
+        ServerNetworkHandler.broadcastSpellSync(server);
 
-        int afterCount = SPELLS.size();
+        int afterCount = snapshot.size();
         MAM.LOGGER.info("Hot-reload complete: {} spells loaded (was {})", afterCount, beforeCount);
 
         return afterCount;
@@ -187,12 +679,14 @@ public class SpellRegistry {
     }
 
     /**
-     * Set the current difficulty preset.
+     * Set the current difficulty preset. The matching stat table was baked at load, so this only
+     * swaps the active table; casts in progress see either the old or the new table, never a mix.
      *
      * @param preset Difficulty preset to apply
      */
     public static void setDifficulty(DifficultyPreset preset) {
         currentDifficulty = preset;
+        activeStats = snapshot.stats(preset);
         MAM.LOGGER.info("Difficulty set to: {} - {}", preset.name(), preset.getDescription());
     }
 
@@ -203,6 +697,14 @@ public class SpellRegistry {
         return currentDifficulty;
     }
 
+    /**
+     * Baked stats for the active difficulty. This is what casting reads; prefer it over the
+     * {@code getScaled*} helpers and {@code Spell.getEffective*}, which redo the math per call.
+     */
+    public static SpellStatTable getStats() {
+        return activeStats;
+    }
+
     /**
      * Apply difficulty scaling to a spell's mana cost.
      */
@@ -225,52 +727,78 @@ public class SpellRegistry {
     }
 
     public static Optional<Spell> getSpell(Identifier id) {
-        return Optional.ofNullable(SPELLS.get(id));
+        return Optional.ofNullable(snapshot.get(id));
+    }
+
+    /**
+     * Looks a spell up by its raw id. Empty for unknown ids and for spells that were removed by a
+     * reload.
+     */
+    public static Optional<Spell> getSpell(int rawId) {
+        return Optional.ofNullable(snapshot.get(rawId));
+    }
+
+    /**
+     * Raw id assigned to the given spell id this session, or -1 if it was never loaded.
+     */
+    public static int getRawId(Identifier id) {
+        return snapshot.rawId(id);
+    }
+
+    /**
+     * Spell id behind a raw id, or null if the raw id was never assigned. Also resolves ids of
+     * spells that are no longer loaded, so persisted data can still be written back out.
+     */
+    public static Identifier getSpellId(int rawId) {
+        return snapshot.idOf(rawId);
+    }
+
+    /**
+     * Every spell id assigned so far this session, indexed by raw id. This is the table synced to
+     * clients.
+     */
+    public static List<Identifier> getIdTable() {
+        return snapshot.idTable();
+    }
+
+    /**
+     * Hashes of the current spell set, for syncing it to clients.
+     */
+    public static SpellSyncManifest getSyncManifest() {
+        return syncManifest;
+    }
+
+    /**
+     * Hashes of the spell set before the last change. Clients still holding it get a delta.
+     */
+    public static SpellSyncManifest getPreviousSyncManifest() {
+        return previousSyncManifest;
     }
 
     public static Collection<Spell> getAllSpells() {
-        return Collections.unmodifiableCollection(SPELLS.values());
+        return snapshot.all();
     }
 
     public static List<Spell> getSpellsBySchool(SpellSchool school) {
-        if (SPELLS.isEmpty())
-            return List.of();
-        return SPELLS.values().stream().filter(spell -> spell.getSchool() == school)
-                .sorted(Comparator.comparingInt(Spell::getTier)).toList();
+        return snapshot.bySchool(school);
     }
 
     public static List<Spell> getSpellsByTier(int tier) {
-        if (SPELLS.isEmpty())
-            return List.of();
-        return SPELLS.values().stream().filter(spell -> spell.getTier() == tier).toList();
+        return snapshot.byTier(tier);
     }
 
     public static List<Spell> getSpellsBySchoolAndMaxTier(SpellSchool school, int maxTier) {
-        return SPELLS.values().stream()
-                .filter(spell -> spell.getSchool() == school && spell.getTier() <= maxTier)
-                .sorted(Comparator.comparingInt(Spell::getTier)).toList();
+        return snapshot.bySchoolUpToTier(school, maxTier);
     }
 
     /**
-     * Get all spells across all schools up to a maximum tier level (cached for performance)
+     * Get all spells across all schools up to a maximum tier level (precomputed per tier)
      *
      * @param maxTier Maximum tier level (inclusive)
      * @return List of spells sorted by tier
      */
     public static List<Spell> getSpellsByMaxTier(int maxTier) {
-        // Cache result for repeated queries with same tier
-        if (cachedMaxTier == maxTier && cachedMaxTierList != null) {
-            return cachedMaxTierList;
-        }
-
-        List<Spell> result = SPELLS.values().stream().filter(spell -> spell.getTier() <= maxTier)
-                .sorted(Comparator.comparingInt(Spell::getTier)
-                        .thenComparing(spell -> spell.getSchool().toString()))
-                .toList();
-
-        cachedMaxTier = maxTier;
-        cachedMaxTierList = result;
-        return result;
+        return snapshot.upToTier(maxTier);
     }
 
     /**
@@ -280,8 +808,7 @@ public class SpellRegistry {
      * @return List of spells with the specified tag
      */
     public static List<Spell> getSpellsByTag(String tag) {
-        return SPELLS.values().stream().filter(spell -> spell.getTags().contains(tag))
-                .sorted(Comparator.comparingInt(Spell::getTier)).toList();
+        return snapshot.byTag(tag);
     }
 
     /**
@@ -291,8 +818,7 @@ public class SpellRegistry {
      * @return List of spells with all specified tags
      */
     public static List<Spell> getSpellsByTags(List<String> tags) {
-        return SPELLS.values().stream().filter(spell -> spell.getTags().containsAll(tags))
-                .sorted(Comparator.comparingInt(Spell::getTier)).toList();
+        return snapshot.byTags(tags);
     }
 
     /**
@@ -302,8 +828,7 @@ public class SpellRegistry {
      * @return List of spells with the specified cast type
      */
     public static List<Spell> getSpellsByCastType(SpellCastType castType) {
-        return SPELLS.values().stream().filter(spell -> spell.getCastType() == castType)
-                .sorted(Comparator.comparingInt(Spell::getTier)).toList();
+        return snapshot.byCastType(castType);
     }
 
     /**
@@ -378,15 +903,17 @@ public class SpellRegistry {
      * Apply spell variants to loaded spells. Variants modify spells with damage multipliers, mana
      * cost adjustments, tag additions, etc.
      *
-     * Must be called after inheritance resolution.
+     * Must be called after inheritance resolution. Only spells in {@code targets} are touched.
      */
-    private static void applyVariants() {
-        if (SPELLS.isEmpty())
+    private static void applyVariants(Map<Identifier, Spell> spells, Set<Identifier> targets) {
+        if (spells.isEmpty() || targets.isEmpty())
             return;
 
         var modifiedSpells = new java.util.HashMap<Identifier, Spell>();
 
-        for (var entry : SPELLS.entrySet()) {
+        for (var entry : spells.entrySet()) {
+            if (!targets.contains(entry.getKey()))
+                continue;
             Spell spell = entry.getValue();
             if (SpellVariantRegistry.hasVariants(spell.getId())) {
                 Spell variantSpell = SpellVariantRegistry.applyVariants(spell);
@@ -395,7 +922,7 @@ public class SpellRegistry {
         }
 
         // Update registry with variant-modified spells
-        SPELLS.putAll(modifiedSpells);
+        spells.putAll(modifiedSpells);
         if (!modifiedSpells.isEmpty()) {
             MAM.LOGGER.info("Applied variants to {} spell(s)", modifiedSpells.size());
         }
@@ -405,67 +932,68 @@ public class SpellRegistry {
      * Resolve simple inheritance: child spells may declare a parent via optional field 'parent'.
      * Child inherits tags, vfx, sound, status effects, and custom data keys it doesn't define.
      * Numeric fields are not overridden to avoid ambiguity with defaults.
+     *
+     * Spells are visited once, in the graph's parent-before-child order, so every parent is fully
+     * resolved before its children merge with it. Only spells in {@code targets} are re-merged;
+     * the rest are expected to be resolved already. Spells on an inheritance cycle keep their own
+     * data.
      */
-    private static void resolveInheritance() {
-        boolean changed;
-        int passes = 0;
-        do {
-            changed = false;
-            passes++;
-            for (var entry : new java.util.ArrayList<>(SPELLS.entrySet())) {
-                Spell child = entry.getValue();
-                var parentOpt = child.getParent();
-                if (parentOpt.isEmpty())
-                    continue;
-                Spell parent = SPELLS.get(parentOpt.get());
-                if (parent == null) {
-                    MAM.LOGGER.warn("Spell {} declares missing parent {}", child.getId(),
-                            parentOpt.get());
-                    continue;
-                }
+    private static void resolveInheritance(Map<Identifier, Spell> spells, SpellParentGraph graph,
+            Set<Identifier> targets) {
+        if (targets.isEmpty())
+            return;
 
-                // Merge tags (union)
-                java.util.Set<String> tags = new java.util.LinkedHashSet<>(parent.getTags());
-                tags.addAll(child.getTags());
-
-                // Merge status effects (inherit if child has none)
-                java.util.List<Spell.StatusEffectEntry> effects =
-                        child.getStatusEffects().isEmpty() ? parent.getStatusEffects()
-                                : child.getStatusEffects();
-
-                // Merge custom data (parent keys fill gaps)
-                java.util.Map<String, Float> custom =
-                        new java.util.HashMap<>(parent.getCustomData());
-                custom.putAll(child.getCustomData());
-
-                // Inherit sound if child empty
-                String sound =
-                        (child.getSound() == null || child.getSound().isEmpty()) ? parent.getSound()
-                                : child.getSound();
-
-                // Inherit VFX if child none
-                var vfx = child.getVfxOptional().isPresent() ? child.getVfxOptional()
-                        : parent.getVfxOptional();
-
-                // Inherit animation if child none
-                var anim = child.getAnimationOptional().isPresent() ? child.getAnimationOptional()
-                        : parent.getAnimationOptional();
-
-                Spell merged = new Spell(child.getId(), child.getName(), child.getSchool().name(),
-                        child.getDescription(), child.getCastType().name(), child.getManaCost(),
-                        child.getCastTime(), child.getCooldown(), child.getTier(),
-                        child.getRequiredLevel(), child.getDamage(), child.getRange(),
-                        child.getProjectileSpeed(), child.getAoeRadius(), child.getKnockback(),
-                        effects, custom, sound, vfx, new java.util.ArrayList<>(tags),
-                        java.util.Optional.of(child.getRarity().name()), child.getParent(), anim,
-                        child.getFormatVersion());
-
-                if (merged != child) {
-                    SPELLS.put(child.getId(), merged);
-                    changed = true;
-                }
-            }
-        } while (changed && passes < 5);
+        for (Identifier id : graph.order()) {
+            if (!targets.contains(id))
+                continue;
+            Spell child = spells.get(id);
+            var parentOpt = child.getParent();
+            if (parentOpt.isEmpty())
+                continue;
+            Spell parent = spells.get(parentOpt.get());
+            if (parent == null)
+                continue; // missing parent, already reported by the graph
+
+            spells.put(id, inherit(child, parent));
+        }
+    }
+
+    /**
+     * Merges a child spell with its already resolved parent.
+     */
+    private static Spell inherit(Spell child, Spell parent) {
+        // Merge tags (union)
+        java.util.Set<String> tags = new java.util.LinkedHashSet<>(parent.getTags());
+        tags.addAll(child.getTags());
+
+        // Merge status effects (inherit if child has none)
+        java.util.List<Spell.StatusEffectEntry> effects =
+                child.getStatusEffects().isEmpty() ? parent.getStatusEffects()
+                        : child.getStatusEffects();
+
+        // Merge custom data (parent keys fill gaps)
+        java.util.Map<String, Float> custom = new java.util.HashMap<>(parent.getCustomData());
+        custom.putAll(child.getCustomData());
+
+        // Inherit sound if child empty
+        String sound = (child.getSound() == null || child.getSound().isEmpty()) ? parent.getSound()
+                : child.getSound();
+
+        // Inherit VFX if child none
+        var vfx = child.getVfxOptional().isPresent() ? child.getVfxOptional()
+                : parent.getVfxOptional();
+
+        // Inherit animation if child none
+        var anim = child.getAnimationOptional().isPresent() ? child.getAnimationOptional()
+                : parent.getAnimationOptional();
+
+        return new Spell(child.getId(), child.getName(), child.getSchool().name(),
+                child.getDescription(), child.getCastType().name(), child.getManaCost(),
+                child.getCastTime(), child.getCooldown(), child.getTier(), child.getRequiredLevel(),
+                child.getDamage(), child.getRange(), child.getProjectileSpeed(),
+                child.getAoeRadius(), child.getKnockback(), effects, custom, sound, vfx,
+                new java.util.ArrayList<>(tags), java.util.Optional.of(child.getRarity().name()),
+                child.getParent(), anim, child.getFormatVersion());
     }
 
     /**
@@ -501,36 +1029,46 @@ public class SpellRegistry {
         }
     }
 
+    /**
+     * Compresses a batch of spells for network sync: the {@link SpellBundle} binary encoding of
+     * every field, GZIP-compressed. Much smaller than the JSON form and keeps resolved data such as
+     * inherited fields and variants intact.
+     */
     public static Optional<byte[]> compressSpells(Collection<Spell> spells) {
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
         try {
-            // Encode as array of spell JSON objects
-            com.google.gson.JsonArray arr = new com.google.gson.JsonArray();
-            for (Spell s : spells) {
-                var json = Spell.CODEC.encodeStart(JsonOps.INSTANCE, s).result();
-                json.ifPresent(j -> arr.add((com.google.gson.JsonElement) j));
+            buf.writeVarInt(spells.size());
+            for (Spell spell : spells) {
+                SpellBundle.writeSpell(buf, spell);
             }
-            byte[] bytes = arr.toString().getBytes(StandardCharsets.UTF_8);
-            java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+            java.io.ByteArrayOutputStream baos =
+                    new java.io.ByteArrayOutputStream(buf.readableBytes() / 4 + 64);
             try (java.util.zip.GZIPOutputStream gzip = new java.util.zip.GZIPOutputStream(baos)) {
-                gzip.write(bytes);
+                buf.readBytes(gzip, buf.readableBytes());
             }
             return Optional.of(baos.toByteArray());
         } catch (Exception e) {
             MAM.LOGGER.error("Failed compressing spells: {}", e.getMessage());
             return Optional.empty();
+        } finally {
+            buf.release();
         }
     }
 
+    /**
+     * Reverses {@link #compressSpells(Collection)}.
+     *
+     * @return The spells, or an empty list if the data is corrupt
+     */
     public static List<Spell> decompressSpells(byte[] compressed) {
         try {
             java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(compressed);
             try (java.util.zip.GZIPInputStream gzip = new java.util.zip.GZIPInputStream(bais)) {
-                String json = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
-                com.google.gson.JsonArray arr =
-                        com.google.gson.JsonParser.parseString(json).getAsJsonArray();
-                java.util.ArrayList<Spell> list = new java.util.ArrayList<>();
-                for (com.google.gson.JsonElement el : arr) {
-                    Spell.CODEC.parse(JsonOps.INSTANCE, el).result().ifPresent(list::add);
+                PacketByteBuf buf = new PacketByteBuf(Unpooled.wrappedBuffer(gzip.readAllBytes()));
+                int count = buf.readVarInt();
+                List<Spell> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(SpellBundle.readSpell(buf));
                 }
                 return list;
             }
@@ -549,13 +1087,21 @@ public class SpellRegistry {
      * @return true if all dependencies are met
      */
     public static boolean checkSpellDependencies(Spell spell) {
+        SpellRegistrySnapshot current = snapshot;
+        if (current.get(spell.getRawId()) == spell) {
+            return current.dependencies().isSatisfiable(spell.getRawId());
+        }
+        return checkSpellDependencies(spell, current.asMap());
+    }
+
+    private static boolean checkSpellDependencies(Spell spell, Map<Identifier, Spell> spells) {
         for (String tag : spell.getTags()) {
             if (tag.startsWith("requires:")) {
                 String requiredSpellName = tag.substring("requires:".length());
                 Identifier requiredSpellId =
                         Identifier.of(spell.getId().getNamespace(), requiredSpellName);
 
-                if (!SPELLS.containsKey(requiredSpellId)) {
+                if (!spells.containsKey(requiredSpellId)) {
                     MAM.LOGGER.warn("Spell {} has unmet dependency: {}", spell.getId(),
                             requiredSpellId);
                     return false;
@@ -572,9 +1118,20 @@ public class SpellRegistry {
      * @return List of spells that require this spell
      */
     public static List<Spell> getSpellDependents(Identifier spellId) {
-        String dependencyTag = "requires:" + spellId.getPath();
-        return SPELLS.values().stream().filter(spell -> spell.getTags().contains(dependencyTag))
-                .sorted(Comparator.comparingInt(Spell::getTier)).toList();
+        SpellRegistrySnapshot current = snapshot;
+        return toSpells(current, current.dependencies().dependents(current.rawId(spellId)));
+    }
+
+    /**
+     * Check if a player has access to a spell based on dependencies. This method checks if all
+     * prerequisite spells are in the known spells set.
+     *
+     * @param spell Spell to check
+     * @param knownSpells Raw ids of the spells the player has learned
+     * @return true if player can access this spell
+     */
+    public static boolean canAccessSpell(Spell spell, BitSet knownSpells) {
+        return snapshot.dependencies().canAccess(spell.getRawId(), knownSpells);
     }
 
     /**
@@ -585,19 +1142,28 @@ public class SpellRegistry {
      * @param knownSpells List of spell IDs the player has learned
      * @return true if player can access this spell
      */
-    public static boolean canAccessSpell(Spell spell, List<Identifier> knownSpells) {
-        for (String tag : spell.getTags()) {
-            if (tag.startsWith("requires:")) {
-                String requiredSpellName = tag.substring("requires:".length());
-                Identifier requiredSpellId =
-                        Identifier.of(spell.getId().getNamespace(), requiredSpellName);
+    public static boolean canAccessSpell(Spell spell, Collection<Identifier> knownSpells) {
+        return canAccessSpell(spell, toSpellBits(knownSpells));
+    }
 
-                if (!knownSpells.contains(requiredSpellId)) {
-                    return false;
-                }
+    /**
+     * Get all spells accessible with the given known spells and tier limit.
+     *
+     * @param knownSpells Raw ids of the spells the player has learned
+     * @param maxTier Maximum tier the player can access
+     * @return List of spells available to the player
+     */
+    public static List<Spell> getAccessibleSpells(BitSet knownSpells, int maxTier) {
+        SpellRegistrySnapshot current = snapshot;
+        BitSet accessible = current.dependencies().accessible(knownSpells);
+        List<Spell> result = new ArrayList<>();
+        for (Spell spell : current.upToTier(maxTier)) {
+            if (accessible.get(spell.getRawId())) {
+                result.add(spell);
             }
         }
-        return true;
+        result.sort(Comparator.comparingInt(Spell::getTier));
+        return result;
     }
 
     /**
@@ -608,8 +1174,32 @@ public class SpellRegistry {
      * @return List of spells available to the player
      */
     public static List<Spell> getAccessibleSpells(List<Identifier> knownSpells, int maxTier) {
-        return SPELLS.values().stream().filter(spell -> spell.getTier() <= maxTier)
-                .filter(spell -> canAccessSpell(spell, knownSpells))
-                .sorted(Comparator.comparingInt(Spell::getTier)).toList();
+        return getAccessibleSpells(toSpellBits(knownSpells), maxTier);
+    }
+
+    /**
+     * Converts spell ids to a bitset of raw ids. Ids that were never loaded are skipped.
+     */
+    public static BitSet toSpellBits(Collection<Identifier> spellIds) {
+        SpellRegistrySnapshot current = snapshot;
+        BitSet bits = new BitSet(current.idTable().size());
+        for (Identifier id : spellIds) {
+            int rawId = current.rawId(id);
+            if (rawId >= 0) {
+                bits.set(rawId);
+            }
+        }
+        return bits;
+    }
+
+    private static List<Spell> toSpells(SpellRegistrySnapshot current, BitSet rawIds) {
+        List<Spell> result = new ArrayList<>(rawIds.cardinality());
+        for (int rawId = rawIds.nextSetBit(0); rawId >= 0; rawId = rawIds.nextSetBit(rawId + 1)) {
+            Spell spell = current.get(rawId);
+            if (spell != null) {
+                result.add(spell);
+            }
+        }
+        return result;
     }
 }
@@ -0,0 +1,250 @@
+package dk.mosberg.spell;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import dk.mosberg.spell.SpellRegistry.DifficultyPreset;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.util.Identifier;
+
+/**
+ * Immutable, fully indexed view of the loaded spells.
+ *
+ * <p>
+ * Built once per reload by {@link SpellRegistry} and published through a single volatile
+ * reference, so readers never see a partially loaded registry and never need to lock. All query
+ * results are precomputed, unmodifiable lists; lookups cost O(result) instead of a scan over every
+ * spell.
+ */
+final class SpellRegistrySnapshot {
+    static final int MAX_TIER = 4;
+
+    static final SpellRegistrySnapshot EMPTY = new SpellRegistrySnapshot(Map.of(), List.of());
+
+    /** Registry-wide ordering: tier first, then id for a stable order across reloads. */
+    private static final Comparator<Spell> BY_TIER =
+            Comparator.comparingInt(Spell::getTier).thenComparing(spell -> spell.getId().toString());
+
+    /** Ordering used by {@link SpellRegistry#getSpellsByMaxTier(int)}. */
+    private static final Comparator<Spell> BY_TIER_THEN_SCHOOL = Comparator
+            .comparingInt(Spell::getTier).thenComparing(spell -> spell.getSchool().toString())
+            .thenComparing(spell -> spell.getId().toString());
+
+    private final Map<Identifier, Spell> byId;
+    private final List<Spell> all;
+    private final Map<SpellSchool, List<Spell>> bySchool = new EnumMap<>(SpellSchool.class);
+    private final Map<SpellSchool, List<List<Spell>>> bySchoolUpToTier =
+            new EnumMap<>(SpellSchool.class);
+    private final Map<SpellCastType, List<Spell>> byCastType = new EnumMap<>(SpellCastType.class);
+    private final List<List<Spell>> byTier = new ArrayList<>(MAX_TIER + 1);
+    private final List<List<Spell>> upToTier = new ArrayList<>(MAX_TIER + 1);
+    private final Map<String, List<Spell>> byTag;
+    private final Map<String, Set<Identifier>> tagMembers;
+    private final List<Identifier> idTable;
+    private final Object2IntMap<Identifier> rawIds;
+    private final Spell[] byRawId;
+    private final SpellStatTable[] statsByDifficulty;
+    private final SpellDependencyIndex dependencies;
+
+    /**
+     * @param idTable Every raw id assigned so far this session, indexed by raw id. Spells must
+     *        already carry their raw ids.
+     */
+    SpellRegistrySnapshot(Map<Identifier, Spell> spells, List<Identifier> idTable) {
+        List<Spell> sorted = new ArrayList<>(spells.values());
+        sorted.sort(BY_TIER);
+        this.all = Collections.unmodifiableList(sorted);
+
+        Map<Identifier, Spell> ids = new LinkedHashMap<>();
+        for (Spell spell : sorted) {
+            ids.put(spell.getId(), spell);
+        }
+        this.byId = Collections.unmodifiableMap(ids);
+
+        // Raw id lookups; ids of spells that are no longer loaded keep their slot but map to null
+        this.idTable = List.copyOf(idTable);
+        Object2IntOpenHashMap<Identifier> raw = new Object2IntOpenHashMap<>(idTable.size());
+        raw.defaultReturnValue(-1);
+        for (int i = 0; i < idTable.size(); i++) {
+            raw.put(idTable.get(i), i);
+        }
+        this.rawIds = raw;
+        this.byRawId = new Spell[idTable.size()];
+        for (Spell spell : sorted) {
+            byRawId[spell.getRawId()] = spell;
+        }
+
+        this.dependencies = new SpellDependencyIndex(byRawId, raw);
+
+        // One baked stat table per difficulty preset, index = ordinal
+        DifficultyPreset[] presets = DifficultyPreset.values();
+        this.statsByDifficulty = new SpellStatTable[presets.length];
+        for (DifficultyPreset preset : presets) {
+            statsByDifficulty[preset.ordinal()] = new SpellStatTable(preset, byRawId);
+        }
+
+        // School and cast type buckets (already tier-sorted because 'sorted' is)
+        for (SpellSchool school : SpellSchool.values()) {
+            bySchool.put(school, sorted.stream().filter(s -> s.getSchool() == school).toList());
+        }
+        for (SpellCastType castType : SpellCastType.values()) {
+            byCastType.put(castType,
+                    sorted.stream().filter(s -> s.getCastType() == castType).toList());
+        }
+
+        // Tier buckets and cumulative "up to tier" lists, index = tier
+        for (int tier = 0; tier <= MAX_TIER; tier++) {
+            final int t = tier;
+            byTier.add(sorted.stream().filter(s -> s.getTier() == t).toList());
+            upToTier.add(sorted.stream().filter(s -> s.getTier() <= t).sorted(BY_TIER_THEN_SCHOOL)
+                    .toList());
+        }
+        for (SpellSchool school : SpellSchool.values()) {
+            List<List<Spell>> schoolTiers = new ArrayList<>(MAX_TIER + 1);
+            for (int tier = 0; tier <= MAX_TIER; tier++) {
+                final int t = tier;
+                schoolTiers.add(bySchool.get(school).stream().filter(s -> s.getTier() <= t)
+                        .toList());
+            }
+            bySchoolUpToTier.put(school, List.copyOf(schoolTiers));
+        }
+
+        // Inverted tag index
+        Map<String, List<Spell>> tags = new HashMap<>();
+        Map<String, Set<Identifier>> members = new HashMap<>();
+        for (Spell spell : sorted) {
+            for (String tag : spell.getTags()) {
+                if (members.computeIfAbsent(tag, t -> new HashSet<>()).add(spell.getId())) {
+                    tags.computeIfAbsent(tag, t -> new ArrayList<>()).add(spell);
+                }
+            }
+        }
+        tags.replaceAll((tag, list) -> List.copyOf(list));
+        members.replaceAll((tag, set) -> Set.copyOf(set));
+        this.byTag = Map.copyOf(tags);
+        this.tagMembers = Map.copyOf(members);
+    }
+
+    Spell get(Identifier id) {
+        return byId.get(id);
+    }
+
+    Spell get(int rawId) {
+        return rawId >= 0 && rawId < byRawId.length ? byRawId[rawId] : null;
+    }
+
+    SpellDependencyIndex dependencies() {
+        return dependencies;
+    }
+
+    SpellStatTable stats(DifficultyPreset difficulty) {
+        return statsByDifficulty[difficulty.ordinal()];
+    }
+
+    int rawId(Identifier id) {
+        return rawIds.getInt(id);
+    }
+
+    Identifier idOf(int rawId) {
+        return rawId >= 0 && rawId < idTable.size() ? idTable.get(rawId) : null;
+    }
+
+    List<Identifier> idTable() {
+        return idTable;
+    }
+
+    boolean contains(Identifier id) {
+        return byId.containsKey(id);
+    }
+
+    int size() {
+        return all.size();
+    }
+
+    boolean isEmpty() {
+        return all.isEmpty();
+    }
+
+    Collection<Spell> all() {
+        return all;
+    }
+
+    Map<Identifier, Spell> asMap() {
+        return byId;
+    }
+
+    List<Spell> bySchool(SpellSchool school) {
+        return bySchool.getOrDefault(school, List.of());
+    }
+
+    List<Spell> bySchoolUpToTier(SpellSchool school, int maxTier) {
+        if (maxTier < 0) {
+            return List.of();
+        }
+        return bySchoolUpToTier.get(school).get(Math.min(maxTier, MAX_TIER));
+    }
+
+    List<Spell> byCastType(SpellCastType castType) {
+        return byCastType.getOrDefault(castType, List.of());
+    }
+
+    List<Spell> byTier(int tier) {
+        return tier < 0 || tier > MAX_TIER ? List.of() : byTier.get(tier);
+    }
+
+    List<Spell> upToTier(int maxTier) {
+        if (maxTier < 0) {
+            return List.of();
+        }
+        return upToTier.get(Math.min(maxTier, MAX_TIER));
+    }
+
+    List<Spell> byTag(String tag) {
+        return byTag.getOrDefault(tag, List.of());
+    }
+
+    /**
+     * Spells carrying every one of the given tags. Walks the smallest posting list and checks the
+     * others by set membership.
+     */
+    List<Spell> byTags(List<String> tags) {
+        if (tags.isEmpty()) {
+            return all;
+        }
+
+        List<Spell> smallest = null;
+        for (String tag : tags) {
+            List<Spell> posting = byTag(tag);
+            if (posting.isEmpty()) {
+                return List.of();
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+
+        List<Spell> result = new ArrayList<>(smallest.size());
+        for (Spell spell : smallest) {
+            boolean hasAll = true;
+            for (String tag : tags) {
+                if (!tagMembers.get(tag).contains(spell.getId())) {
+                    hasAll = false;
+                    break;
+                }
+            }
+            if (hasAll) {
+                result.add(spell);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -0,0 +1,376 @@
+package dk.mosberg.spell;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Uniform grid of the living entities (players included) in one world, shared by every spell
+ * area query during a tick.
+ *
+ * <p>
+ * {@link #of(ServerWorld)} creates the index on the first query of a tick and hands the same
+ * instance to every later query in that tick; all indexes are dropped at the end of the server
+ * tick. Cells are chunk sections, and a cell is only filled the first time a query reaches it,
+ * with one vanilla entity lookup covering all the cells that query still needed; a tick with a
+ * single query costs about what the direct lookup would, and later queries in the same area reuse
+ * the cells. Queries widen the searched cells by the largest entity size seen plus slack for
+ * movement within the tick: a fixed margin plus the fastest filed entity's speed, so falling mobs,
+ * gliding players and knockback stay in reach. Each candidate is then tested exactly against its
+ * current position or bounding box. Entities spawned after their cell was filled are not seen
+ * until the next tick; anything that moves an entity further than the slack, like a teleport,
+ * calls {@link #invalidate}.
+ */
+public final class SpellSpatialIndex {
+    private static final int CELL_SHIFT = 4;
+    public static final int CELL_SIZE = 1 << CELL_SHIFT;
+    private static final double MOVE_SLACK = 2.0; // blocks on top of the fastest entity's speed
+
+    // Server thread only
+    private static final Map<ServerWorld, SpellSpatialIndex> CURRENT = new IdentityHashMap<>();
+    // Largest entity extent filed so far; starts at the margin vanilla's own lookups allow
+    private static double largestSeen = 2.0;
+
+    private final ServerWorld world;
+    private final long builtAt;
+    // Filed cells, empty ones included; a missing key means not looked up yet
+    private final Long2ObjectOpenHashMap<List<LivingEntity>> cells =
+            new Long2ObjectOpenHashMap<>();
+    private double fastestSq;
+    private int size;
+
+    public static void register() {
+        ServerTickEvents.END_SERVER_TICK.register(server -> CURRENT.clear());
+    }
+
+    /**
+     * The index for this world and tick, created now if this is the first query.
+     */
+    public static SpellSpatialIndex of(ServerWorld world) {
+        SpellSpatialIndex index = CURRENT.get(world);
+        if (index == null || index.builtAt != world.getTime()) {
+            index = new SpellSpatialIndex(world);
+            CURRENT.put(world, index);
+        }
+        return index;
+    }
+
+    /**
+     * Drops this tick's index for the world, so the next query starts a new one. For entities moved
+     * further than movement slack allows, which would otherwise stay filed under their old cell.
+     */
+    public static void invalidate(ServerWorld world) {
+        CURRENT.remove(world);
+    }
+
+    /**
+     * Creates an index that is not shared; for benchmarks and one-off use.
+     */
+    public static SpellSpatialIndex build(ServerWorld world) {
+        return new SpellSpatialIndex(world);
+    }
+
+    private SpellSpatialIndex(ServerWorld world) {
+        this.world = world;
+        this.builtAt = world.getTime();
+    }
+
+    /**
+     * Living entities filed so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Entities whose bounding box intersects the box.
+     */
+    public List<LivingEntity> inBox(Box area, Predicate<? super LivingEntity> filter) {
+        List<LivingEntity> result = new ArrayList<>();
+        collect(area, entity -> entity.getBoundingBox().intersects(area) && filter.test(entity),
+                result, Integer.MAX_VALUE);
+        return result;
+    }
+
+    /**
+     * Whether any entity's bounding box intersects the box. Stops at the first match.
+     */
+    public boolean anyInBox(Box area, Predicate<? super LivingEntity> filter) {
+        List<LivingEntity> result = new ArrayList<>(1);
+        collect(area, entity -> entity.getBoundingBox().intersects(area) && filter.test(entity),
+                result, 1);
+        return !result.isEmpty();
+    }
+
+    /**
+     * Entities whose position is within {@code radius} of the center.
+     */
+    public List<LivingEntity> inRadius(Vec3d center, double radius,
+            Predicate<? super LivingEntity> filter) {
+        double radiusSq = radius * radius;
+        List<LivingEntity> result = new ArrayList<>();
+        collect(new Box(center, center).expand(radius),
+                entity -> entity.squaredDistanceTo(center) <= radiusSq && filter.test(entity),
+                result, Integer.MAX_VALUE);
+        return result;
+    }
+
+    /**
+     * Players whose position is within {@code radius} of the center.
+     */
+    public List<ServerPlayerEntity> playersInRadius(Vec3d center, double radius,
+            Predicate<? super ServerPlayerEntity> filter) {
+        List<ServerPlayerEntity> players = new ArrayList<>();
+        for (LivingEntity entity : inRadius(center, radius,
+                entity -> entity instanceof ServerPlayerEntity player && filter.test(player))) {
+            players.add((ServerPlayerEntity) entity);
+        }
+        return players;
+    }
+
+    /**
+     * Up to {@code k} entities within {@code radius} of the center, nearest first.
+     */
+    public List<LivingEntity> nearest(Vec3d center, double radius, int k,
+            Predicate<? super LivingEntity> filter) {
+        List<LivingEntity> result = new ArrayList<>(Math.max(k, 0));
+        if (k <= 0) {
+            return result;
+        }
+        double radiusSq = radius * radius;
+        // The best k so far, farthest on top, so the rest are dropped without sorting them
+        PriorityQueue<Candidate> best = new PriorityQueue<>(k + 1,
+                Comparator.comparingDouble(Candidate::distanceSq).reversed());
+        forEachNear(new Box(center, center).expand(radius), entity -> {
+            double distanceSq = entity.squaredDistanceTo(center);
+            if (distanceSq <= radiusSq
+                    && (best.size() < k || distanceSq < best.peek().distanceSq())
+                    && filter.test(entity)) {
+                best.add(new Candidate(entity, distanceSq));
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+            return false;
+        });
+
+        while (!best.isEmpty()) {
+            result.add(best.poll().entity());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Entities whose bounding box, grown by {@code halfWidth}, touches the segment from
+     * {@code start} to {@code end}; in order along the segment.
+     *
+     * <p>
+     * Walks the grid cells the segment crosses (3D DDA) and only looks at those cells and their
+     * neighbours within reach, so a long diagonal segment costs in proportion to its length rather
+     * than to the volume of its bounding box.
+     */
+    public List<LivingEntity> alongRay(Vec3d start, Vec3d end, double halfWidth,
+            Predicate<? super LivingEntity> filter) {
+        Vec3d delta = end.subtract(start);
+        List<LivingEntity> result = new ArrayList<>();
+        Predicate<LivingEntity> test = entity -> {
+            Box hitBox = entity.getBoundingBox().expand(halfWidth);
+            return (hitBox.contains(start) || hitBox.raycast(start, end).isPresent())
+                    && filter.test(entity);
+        };
+
+        int pad = MathHelper.ceil((reach() + halfWidth) / CELL_SIZE);
+        LongOpenHashSet visited = new LongOpenHashSet();
+        int x = cell(start.x);
+        int y = cell(start.y);
+        int z = cell(start.z);
+        int stepX = (int) Math.signum(delta.x);
+        int stepY = (int) Math.signum(delta.y);
+        int stepZ = (int) Math.signum(delta.z);
+        // Segment parameter (0..1) at the next cell boundary on each axis, and per cell
+        double nextX = boundary(start.x, delta.x, x, stepX);
+        double nextY = boundary(start.y, delta.y, y, stepY);
+        double nextZ = boundary(start.z, delta.z, z, stepZ);
+        double spanX = stepX == 0 ? Double.POSITIVE_INFINITY : CELL_SIZE / Math.abs(delta.x);
+        double spanY = stepY == 0 ? Double.POSITIVE_INFINITY : CELL_SIZE / Math.abs(delta.y);
+        double spanZ = stepZ == 0 ? Double.POSITIVE_INFINITY : CELL_SIZE / Math.abs(delta.z);
+
+        int steps = Math.abs(cell(end.x) - x) + Math.abs(cell(end.y) - y)
+                + Math.abs(cell(end.z) - z);
+        Predicate<LivingEntity> visitor = entity -> {
+            if (test.test(entity)) {
+                result.add(entity);
+            }
+            return false;
+        };
+        for (int i = 0; i <= steps; i++) {
+            file(x - pad, y - pad, z - pad, x + pad, y + pad, z + pad);
+            for (int dx = -pad; dx <= pad; dx++) {
+                for (int dz = -pad; dz <= pad; dz++) {
+                    for (int dy = -pad; dy <= pad; dy++) {
+                        long key = BlockPos.asLong(x + dx, y + dy, z + dz);
+                        if (visited.add(key)) {
+                            visit(cells.get(key), visitor);
+                        }
+                    }
+                }
+            }
+
+            if (nextX <= nextY && nextX <= nextZ) {
+                x += stepX;
+                nextX += spanX;
+            } else if (nextY <= nextZ) {
+                y += stepY;
+                nextY += spanY;
+            } else {
+                z += stepZ;
+                nextZ += spanZ;
+            }
+        }
+
+        result.sort(Comparator.comparingDouble(entity -> (entity.getX() - start.x) * delta.x
+                + (entity.getY() - start.y) * delta.y + (entity.getZ() - start.z) * delta.z));
+        return result;
+    }
+
+    private void collect(Box area, Predicate<LivingEntity> test, List<LivingEntity> out,
+            int limit) {
+        forEachNear(area, entity -> {
+            if (!test.test(entity)) {
+                return false;
+            }
+            out.add(entity);
+            return out.size() >= limit;
+        });
+    }
+
+    /**
+     * Hands every entity filed in the cells within reach of the area to the visitor, until it
+     * returns true.
+     */
+    private void forEachNear(Box area, Predicate<LivingEntity> visitor) {
+        double reach;
+        do {
+            reach = reach();
+            file(cell(area.minX - reach), cell(area.minY - reach), cell(area.minZ - reach),
+                    cell(area.maxX + reach), cell(area.maxY + reach), cell(area.maxZ + reach));
+            // Filing may have turned up a larger or faster entity than reach allowed for
+        } while (reach() > reach);
+
+        int minX = cell(area.minX - reach);
+        int minY = cell(area.minY - reach);
+        int minZ = cell(area.minZ - reach);
+        int maxX = cell(area.maxX + reach);
+        int maxY = cell(area.maxY + reach);
+        int maxZ = cell(area.maxZ + reach);
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int y = minY; y <= maxY; y++) {
+                    if (visit(cells.get(BlockPos.asLong(x, y, z)), visitor)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the cells of the range that have not been looked up yet this tick, with a single
+     * vanilla lookup over the whole range.
+     */
+    private void file(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        LongOpenHashSet missing = null;
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int y = minY; y <= maxY; y++) {
+                    long key = BlockPos.asLong(x, y, z);
+                    if (!cells.containsKey(key)) {
+                        if (missing == null) {
+                            missing = new LongOpenHashSet();
+                        }
+                        missing.add(key);
+                    }
+                }
+            }
+        }
+        if (missing == null) {
+            return;
+        }
+
+        Box range = new Box(minX << CELL_SHIFT, minY << CELL_SHIFT, minZ << CELL_SHIFT,
+                (maxX + 1) << CELL_SHIFT, (maxY + 1) << CELL_SHIFT, (maxZ + 1) << CELL_SHIFT);
+        for (LivingEntity living : world.getEntitiesByClass(LivingEntity.class, range,
+                entity -> !entity.isRemoved())) {
+            // Entities filed by an earlier lookup also overlap this range; keep them where they are
+            long key = cellKey(living.getX(), living.getY(), living.getZ());
+            if (missing.contains(key)) {
+                cells.computeIfAbsent(key, k -> new ArrayList<>(4)).add(living);
+                largestSeen = Math.max(largestSeen,
+                        Math.max(living.getWidth(), living.getHeight()));
+                fastestSq = Math.max(fastestSq, living.getVelocity().lengthSquared());
+                size++;
+            }
+        }
+        for (LongIterator it = missing.iterator(); it.hasNext();) {
+            cells.putIfAbsent(it.nextLong(), List.of());
+        }
+    }
+
+    private double reach() {
+        return largestSeen + MOVE_SLACK + Math.sqrt(fastestSq);
+    }
+
+    /**
+     * Hands the live entities of one cell to the visitor.
+     *
+     * @return true once the visitor has returned true
+     */
+    private static boolean visit(List<LivingEntity> bucket, Predicate<LivingEntity> visitor) {
+        if (bucket == null) {
+            return false;
+        }
+        for (LivingEntity entity : bucket) {
+            if (!entity.isRemoved() && visitor.test(entity)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double boundary(double origin, double delta, int cell, int step) {
+        if (step == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double edge = (step > 0 ? cell + 1 : cell) * (double) CELL_SIZE;
+        return (edge - origin) / delta;
+    }
+
+    private static int cell(double coordinate) {
+        return MathHelper.floor(coordinate) >> CELL_SHIFT;
+    }
+
+    private static long cellKey(double x, double y, double z) {
+        return BlockPos.asLong(cell(x), cell(y), cell(z));
+    }
+
+    private record Candidate(LivingEntity entity, double distanceSq) {
+    }
+}
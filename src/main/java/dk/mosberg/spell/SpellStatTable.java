@@ -0,0 +1,87 @@
+package dk.mosberg.spell;
+
+import dk.mosberg.spell.SpellRegistry.DifficultyPreset;
+
+/**
+ * Flat table of pre-multiplied spell stats for one {@link DifficultyPreset}.
+ *
+ * <p>
+ * Baked once per reload by {@link SpellRegistrySnapshot}, one table per preset. Each spell owns
+ * {@link #STRIDE} consecutive floats starting at {@code rawId * STRIDE}. The values already include
+ * the difficulty multipliers and the static parts of the {@code Spell.getEffective*} math (school,
+ * rarity and cast type); only situational modifiers such as environment or mana pool are left to
+ * the caller. Tables are immutable, so switching difficulty is a single reference swap.
+ */
+public final class SpellStatTable {
+    private static final int MANA_COST = 0;
+    private static final int DAMAGE = 1;
+    private static final int COOLDOWN = 2;
+    private static final int RANGE = 3;
+    private static final int AOE_RADIUS = 4;
+    private static final int STRIDE = 5;
+
+    private final DifficultyPreset difficulty;
+    private final float[] stats;
+
+    /**
+     * @param byRawId Loaded spells indexed by raw id; null slots stay zero
+     */
+    SpellStatTable(DifficultyPreset difficulty, Spell[] byRawId) {
+        this.difficulty = difficulty;
+        this.stats = new float[byRawId.length * STRIDE];
+        for (int rawId = 0; rawId < byRawId.length; rawId++) {
+            Spell spell = byRawId[rawId];
+            if (spell != null) {
+                bake(spell, difficulty, stats, rawId * STRIDE);
+            }
+        }
+    }
+
+    private static void bake(Spell spell, DifficultyPreset difficulty, float[] out, int offset) {
+        SpellSchool school = spell.getSchool();
+        out[offset + MANA_COST] = spell.getManaCost() * school.getManaCostMultiplier()
+                * difficulty.getManaCostMultiplier();
+        out[offset + DAMAGE] = spell.getDamage() * school.getDamageMultiplier()
+                * spell.getRarity().getPowerModifier() * difficulty.getDamageMultiplier();
+        out[offset + COOLDOWN] = spell.getCooldown() * school.getCooldownMultiplier()
+                * spell.getCastType().getCooldownMultiplier() * difficulty.getCooldownMultiplier();
+        out[offset + RANGE] = spell.getRange();
+        out[offset + AOE_RADIUS] = spell.getAoeRadius();
+    }
+
+    public DifficultyPreset getDifficulty() {
+        return difficulty;
+    }
+
+    public float getManaCost(Spell spell) {
+        return get(spell, MANA_COST);
+    }
+
+    public float getDamage(Spell spell) {
+        return get(spell, DAMAGE);
+    }
+
+    public float getCooldown(Spell spell) {
+        return get(spell, COOLDOWN);
+    }
+
+    public float getRange(Spell spell) {
+        return get(spell, RANGE);
+    }
+
+    public float getAoeRadius(Spell spell) {
+        return get(spell, AOE_RADIUS);
+    }
+
+    private float get(Spell spell, int field) {
+        int offset = spell.getRawId() * STRIDE;
+        if (offset >= 0 && offset < stats.length) {
+            return stats[offset + field];
+        }
+
+        // Not registered (or registered after this table was baked): compute it on the spot
+        float[] single = new float[STRIDE];
+        bake(spell, difficulty, single, 0);
+        return single[field];
+    }
+}
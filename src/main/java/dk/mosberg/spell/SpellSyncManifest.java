@@ -0,0 +1,103 @@
+package dk.mosberg.spell;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.objects.Object2LongLinkedOpenHashMap;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.util.Identifier;
+
+/**
+ * Per-spell content hashes of one resolved spell set, used to sync it to clients.
+ *
+ * <p>
+ * Each spell is hashed over its {@link SpellBundle} encoding, and the set hash combines those in id
+ * order. Clients report the set hash they hold; {@link #delta(SpellSyncManifest)} then sends only
+ * what differs from that set. {@link SpellRegistry} keeps the current and the previous manifest.
+ */
+public final class SpellSyncManifest {
+    static final SpellSyncManifest EMPTY = new SpellSyncManifest(Map.of());
+
+    private final List<Spell> spells;
+    private final Object2LongLinkedOpenHashMap<Identifier> spellHashes;
+    private final long hash;
+    private byte[] full; // compressed lazily, then shared by every full sync
+
+    SpellSyncManifest(Map<Identifier, Spell> resolved) {
+        List<Spell> sorted = new ArrayList<>(resolved.values());
+        sorted.sort(Comparator.comparing(spell -> spell.getId().toString()));
+        this.spells = List.copyOf(sorted);
+        this.spellHashes = new Object2LongLinkedOpenHashMap<>(sorted.size());
+
+        Hasher setHasher = Hashing.murmur3_128().newHasher();
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        try {
+            for (Spell spell : sorted) {
+                buf.clear();
+                SpellBundle.writeSpell(buf, spell);
+                long spellHash = Hashing.murmur3_128()
+                        .hashBytes(buf.array(), buf.arrayOffset(), buf.writerIndex()).asLong();
+                spellHashes.put(spell.getId(), spellHash);
+                setHasher.putLong(spellHash);
+            }
+        } finally {
+            buf.release();
+        }
+
+        // 0 is reserved on the wire for "no spells cached"
+        long combined = setHasher.putInt(sorted.size()).hash().asLong();
+        this.hash = combined != 0L ? combined : 1L;
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    public int size() {
+        return spells.size();
+    }
+
+    /**
+     * The whole set, compressed.
+     */
+    public synchronized Optional<byte[]> full() {
+        if (full == null) {
+            full = SpellRegistry.compressSpells(spells).orElse(null);
+        }
+        return Optional.ofNullable(full);
+    }
+
+    /**
+     * What a client holding {@code base} needs to end up with this set.
+     */
+    public Optional<Delta> delta(SpellSyncManifest base) {
+        List<Spell> changed = new ArrayList<>();
+        for (Spell spell : spells) {
+            Identifier id = spell.getId();
+            if (!base.spellHashes.containsKey(id)
+                    || base.spellHashes.getLong(id) != spellHashes.getLong(id)) {
+                changed.add(spell);
+            }
+        }
+        List<Identifier> removed = new ArrayList<>();
+        for (Identifier id : base.spellHashes.keySet()) {
+            if (!spellHashes.containsKey(id)) {
+                removed.add(id);
+            }
+        }
+        return SpellRegistry.compressSpells(changed)
+                .map(data -> new Delta(data, List.copyOf(removed), changed.size()));
+    }
+
+    /**
+     * @param spells Added and changed spells, compressed
+     * @param changed Number of spells in {@code spells}
+     */
+    public record Delta(byte[] spells, List<Identifier> removed, int changed) {
+    }
+}
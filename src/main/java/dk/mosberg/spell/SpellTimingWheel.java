@@ -0,0 +1,178 @@
+package dk.mosberg.spell;
+
+/**
+ * Hierarchical timing wheel keyed by server tick.
+ *
+ * <p>
+ * Four levels of 64 slots each cover 1, 64, 4096 and 262144 ticks per slot, about nine days in
+ * all; later deadlines wait in the top level and are re-filed as it turns. Each slot is an
+ * intrusive doubly linked list, so scheduling and cancelling are O(1). {@link #advance()} only
+ * touches the slot that comes due plus, every 64 ticks, one slot of a higher level whose tasks are
+ * re-filed closer to their deadline; nothing is done per pending task per tick.
+ *
+ * <p>
+ * Not thread-safe; used from the server thread.
+ */
+public final class SpellTimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * A scheduled action. Cancel it with {@link #cancel()}.
+     */
+    public static final class Task {
+        private final SpellTimingWheel wheel;
+        private final Runnable action;
+        private final long deadline;
+        private Task prev;
+        private Task next;
+        private int level = -1; // -1 when not filed in a slot
+        private int slot;
+        private boolean done;
+
+        private Task(SpellTimingWheel wheel, long deadline, Runnable action) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.action = action;
+        }
+
+        /**
+         * Ticks until this task runs; 0 once it is due, has run or was cancelled.
+         */
+        public long remainingTicks() {
+            return done ? 0 : Math.max(0, deadline - wheel.now);
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Stops the task from running. Does nothing if it already ran or was cancelled.
+         */
+        public void cancel() {
+            if (done) {
+                return;
+            }
+            done = true;
+            wheel.size--;
+            if (level >= 0) {
+                wheel.unlink(this);
+            }
+        }
+    }
+
+    private final Task[][] slots = new Task[LEVELS][SLOTS];
+    private long now;
+    private int size;
+
+    /**
+     * Runs {@code action} after {@code delayTicks} calls to {@link #advance()}, at least one.
+     */
+    public Task schedule(long delayTicks, Runnable action) {
+        Task task = new Task(this, now + Math.max(1, delayTicks), action);
+        size++;
+        file(task);
+        return task;
+    }
+
+    /**
+     * Moves the wheel one tick forward and runs the tasks that came due, in no particular order.
+     * Tasks may schedule and cancel other tasks while running.
+     */
+    public void advance() {
+        now++;
+
+        // Re-file the higher-level slots that just came into range, top level first
+        int top = 0;
+        while (top + 1 < LEVELS && (now & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level >= 1; level--) {
+            Task task = detach(level, (int) (now >>> (SLOT_BITS * level)) & SLOT_MASK);
+            while (task != null) {
+                Task next = task.next;
+                task.next = null;
+                file(task);
+                task = next;
+            }
+        }
+
+        Task task = detach(0, (int) now & SLOT_MASK);
+        while (task != null) {
+            Task next = task.next;
+            task.next = null;
+            if (!task.done) {
+                task.done = true;
+                size--;
+                task.action.run();
+            }
+            task = next;
+        }
+    }
+
+    /**
+     * Tasks scheduled and not yet run or cancelled.
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTick() {
+        return now;
+    }
+
+    private void file(Task task) {
+        // A task re-filed on the tick it is due goes into the slot advance() is about to run.
+        // Deltas stay below SLOTS so nothing lands a full turn early in the slot being run.
+        long deadline = Math.max(task.deadline, now);
+        int level = 0;
+        while (level < LEVELS - 1 && (deadline >>> (SLOT_BITS * level))
+                - (now >>> (SLOT_BITS * level)) >= SLOTS) {
+            level++;
+        }
+        long slotTime = deadline >>> (SLOT_BITS * level);
+        if (level == LEVELS - 1 && slotTime - (now >>> (SLOT_BITS * level)) >= SLOTS) {
+            // Beyond the top level: park in the slot that turns last and re-file from there
+            slotTime = (now >>> (SLOT_BITS * level)) + SLOTS - 1;
+        }
+
+        task.level = level;
+        task.slot = (int) slotTime & SLOT_MASK;
+        task.prev = null;
+        task.next = slots[level][task.slot];
+        if (task.next != null) {
+            task.next.prev = task;
+        }
+        slots[level][task.slot] = task;
+    }
+
+    private void unlink(Task task) {
+        if (task.prev != null) {
+            task.prev.next = task.next;
+        } else {
+            slots[task.level][task.slot] = task.next;
+        }
+        if (task.next != null) {
+            task.next.prev = task.prev;
+        }
+        task.prev = null;
+        task.next = null;
+        task.level = -1;
+    }
+
+    /**
+     * Empties a slot and returns its former list, with every task marked as unfiled.
+     */
+    private Task detach(int level, int slot) {
+        Task head = slots[level][slot];
+        slots[level][slot] = null;
+        for (Task task = head; task != null; task = task.next) {
+            task.level = -1;
+            task.prev = null;
+        }
+        return head;
+    }
+}